@@ -2,6 +2,8 @@ package com.xiaofan;
 
 import com.xiaofan.api.*;
 
+import java.util.Arrays;
+
 /**
  * GLFW 按键常量（避免依赖 LWJGL）
  */
@@ -20,15 +22,46 @@ public class AutoSleepController {
     private static final long SLEEP_END_TIME = 23450L;    // 早上6点
     
     // 搜索床的范围（以玩家为中心）
-    private static final int SEARCH_RANGE = 8;
+    static final int SEARCH_RANGE = 8;
+    
+    // 搜索范围内的偏移量，按到中心的距离平方从近到远排列（索引未覆盖时逐格扫描用）
+    private static final int[] SCAN_DX;
+    private static final int[] SCAN_DY;
+    private static final int[] SCAN_DZ;
+    
+    static {
+        int side = SEARCH_RANGE * 2 + 1;
+        long[] order = new long[side * side * side];
+        int n = 0;
+        for (int x = -SEARCH_RANGE; x <= SEARCH_RANGE; x++) {
+            for (int y = -SEARCH_RANGE; y <= SEARCH_RANGE; y++) {
+                for (int z = -SEARCH_RANGE; z <= SEARCH_RANGE; z++) {
+                    // 高 32 位为距离平方，低 32 位为在立方体中的序号
+                    order[n] = ((long) (x * x + y * y + z * z) << 32) | n;
+                    n++;
+                }
+            }
+        }
+        Arrays.sort(order);
+        SCAN_DX = new int[n];
+        SCAN_DY = new int[n];
+        SCAN_DZ = new int[n];
+        for (int i = 0; i < n; i++) {
+            int index = (int) order[i];
+            SCAN_DX[i] = index / (side * side) - SEARCH_RANGE;
+            SCAN_DY[i] = index / side % side - SEARCH_RANGE;
+            SCAN_DZ[i] = index % side - SEARCH_RANGE;
+        }
+    }
     
     // 防止频繁尝试睡觉的冷却时间（tick数，20 tick = 1秒）
     private static final int COOLDOWN_TICKS = 40; // 2秒
     
     private static boolean enabled = false; // 开关状态
     private static boolean initialized = false;
-    private static int cooldownCounter = 0;
+    private static TimerWheel.Timeout cooldown; // 冷却定时器，注册在共享时间轮上
     private static boolean lastSleepAttemptFailed = false;
+    private static final BedIndex bedIndex = new BedIndex(); // 已加载区块里的床
     
     /**
      * 初始化自动睡觉控制器
@@ -46,6 +79,11 @@ public class AutoSleepController {
         // 注册 HOME 键监听（GLFW_KEY_HOME = 268）
         version.getKeyInputHandler().registerKeyPress(GLFWKeys.GLFW_KEY_HOME, AutoSleepController::toggle);
         
+        TimerWheel.getInstance().initialize();
+        
+        // 区块加载/卸载和方块变化时更新床的索引
+        bedIndex.register(version.getChunkEventHandler());
+        
         // 使用抽象接口注册客户端 Tick 事件
         version.getTickHandler().registerClientTick(AutoSleepController::onClientTick);
         
@@ -84,21 +122,23 @@ public class AutoSleepController {
      * 客户端 Tick 事件处理
      */
     private static void onClientTick() {
-        // 如果未启用，直接返回
-        if (!enabled) {
-            cooldownCounter = 0;
-            lastSleepAttemptFailed = false;
+        IMinecraftVersion version = VersionProvider.getVersion();
+        if (version == null) {
             return;
         }
         
-        // 冷却时间计数
-        if (cooldownCounter > 0) {
-            cooldownCounter--;
+        // 索引在关闭时也保持更新，开启后可以立即找到床
+        bedIndex.tick(version.getBlockInteractor(), version.getWorldTimeProvider().isWorldPresent());
+        
+        // 如果未启用，直接返回
+        if (!enabled) {
+            cancelCooldown();
+            lastSleepAttemptFailed = false;
             return;
         }
         
-        IMinecraftVersion version = VersionProvider.getVersion();
-        if (version == null) {
+        // 冷却中
+        if (isCoolingDown()) {
             return;
         }
         
@@ -134,19 +174,19 @@ public class AutoSleepController {
         
         // 如果上次尝试失败，增加冷却时间
         if (lastSleepAttemptFailed) {
-            cooldownCounter = COOLDOWN_TICKS * 2; // 失败后等待更长时间
+            startCooldown(COOLDOWN_TICKS * 2); // 失败后等待更长时间
             lastSleepAttemptFailed = false;
             return;
         }
         
         // 尝试找床并睡觉
-        int[] playerPos = playerProvider.getPlayerPosition();
-        if (playerPos == null || playerPos.length < 3) {
+        long playerPos = playerProvider.getPlayerPackedPosition();
+        if (playerPos == PackedBlockPos.NONE) {
             return;
         }
         
-        int[] bedPos = findNearbyBed(playerPos, blockInteractor, SEARCH_RANGE);
-        if (bedPos != null) {
+        long bedPos = findNearbyBed(playerPos, blockInteractor);
+        if (bedPos != PackedBlockPos.NONE) {
             try {
                 // 计算距离
                 double distance = calculateDistance(playerPos, bedPos);
@@ -159,7 +199,7 @@ public class AutoSleepController {
                 // 尝试在床上睡觉
                 if (distance <= 3.0) {
                     logger.info("[自动睡觉] 尝试在床 ({}, {}, {}) 上睡觉，距离: {} 格", 
-                        bedPos[0], bedPos[1], bedPos[2], String.format("%.1f", distance));
+                        PackedBlockPos.getX(bedPos), PackedBlockPos.getY(bedPos), PackedBlockPos.getZ(bedPos), String.format("%.1f", distance));
                     
                     // 使用抽象接口与床交互
                     IBlockInteractor.InteractionResult result = blockInteractor.interactWithBlock(bedPos);
@@ -177,76 +217,85 @@ public class AutoSleepController {
                 }
                 
                 // 设置冷却时间
-                cooldownCounter = COOLDOWN_TICKS;
+                startCooldown(COOLDOWN_TICKS);
                 
             } catch (Exception e) {
                 logger.error("[自动睡觉] 处理睡觉逻辑时发生错误", e);
                 lastSleepAttemptFailed = true;
-                cooldownCounter = COOLDOWN_TICKS;
+                startCooldown(COOLDOWN_TICKS);
             }
         } else {
             // 没有找到床
-            if (cooldownCounter == 0) {
-                logger.debug("[自动睡觉] 附近没有找到床（搜索范围：{}格）", SEARCH_RANGE);
-                cooldownCounter = COOLDOWN_TICKS * 3; // 没有床时等待更长时间
-            }
+            logger.debug("[自动睡觉] 附近没有找到床（搜索范围：{}格）", SEARCH_RANGE);
+            startCooldown(COOLDOWN_TICKS * 3); // 没有床时等待更长时间
         }
     }
     
+    /**
+     * 开始冷却，冷却期间不尝试睡觉
+     */
+    private static void startCooldown(int ticks) {
+        cancelCooldown();
+        cooldown = TimerWheel.getInstance().scheduleTicks(ticks, () -> {});
+    }
+    
+    private static void cancelCooldown() {
+        if (cooldown != null) {
+            cooldown.cancel();
+            cooldown = null;
+        }
+    }
+    
+    private static boolean isCoolingDown() {
+        return cooldown != null && cooldown.isPending();
+    }
+    
     /**
      * 在玩家附近查找床
-     * @param playerPos 玩家位置 [x, y, z]
+     * 附近的区块都已扫描时查询床的索引，否则从近到远逐格扫描，找到第一张床就停止
+     * @param playerPos 玩家位置（压缩坐标）
      * @param blockInteractor 方块交互器
-     * @param searchRange 搜索范围
-     * @return 床的位置 [x, y, z]，如果没找到返回 null
+     * @return 床的位置（压缩坐标），如果没找到返回 PackedBlockPos.NONE
      */
-    private static int[] findNearbyBed(int[] playerPos, IBlockInteractor blockInteractor, int searchRange) {
-        if (playerPos == null || playerPos.length < 3 || blockInteractor == null) {
-            return null;
-        }
-        
-        int[] closestBed = null;
-        double closestDistance = Double.MAX_VALUE;
-        
-        // 在搜索范围内查找床
-        for (int x = -searchRange; x <= searchRange; x++) {
-            for (int y = -searchRange; y <= searchRange; y++) {
-                for (int z = -searchRange; z <= searchRange; z++) {
-                    int[] checkPos = new int[]{
-                        playerPos[0] + x,
-                        playerPos[1] + y,
-                        playerPos[2] + z
-                    };
-                    
-                    BlockInfo blockInfo = blockInteractor.getBlockState(checkPos);
-                    if (blockInfo != null && blockInteractor.isBed(blockInfo)) {
-                        // 检查床是否可用（没有被占用等）
-                        // 注意：在客户端可能无法完全检查占用状态
-                        
-                        double distance = calculateDistance(playerPos, checkPos);
-                        if (distance < closestDistance) {
-                            closestDistance = distance;
-                            closestBed = checkPos;
-                        }
-                    }
-                }
-            }
+    private static long findNearbyBed(long playerPos, IBlockInteractor blockInteractor) {
+        if (playerPos == PackedBlockPos.NONE || blockInteractor == null) {
+            return PackedBlockPos.NONE;
         }
         
-        return closestBed;
+        // 检查床是否可用（没有被占用等）
+        // 注意：在客户端可能无法完全检查占用状态
+        if (bedIndex.covers(playerPos, SEARCH_RANGE)) {
+            long[] beds = bedIndex.nearest(playerPos, SEARCH_RANGE, 1);
+            return beds.length > 0 ? beds[0] : PackedBlockPos.NONE;
+        }
+        return scanNearbyBed(playerPos, blockInteractor);
+    }
+    
+    /**
+     * 按距离从近到远逐格扫描，第一张床就是最近的床
+     */
+    static long scanNearbyBed(long playerPos, IBlockInteractor blockInteractor) {
+        for (int i = 0; i < SCAN_DX.length; i++) {
+            long checkPos = PackedBlockPos.offset(playerPos, SCAN_DX[i], SCAN_DY[i], SCAN_DZ[i]);
+            BlockInfo blockInfo = blockInteractor.getBlockState(checkPos);
+            if (blockInfo != null && blockInfo.isBed()) {
+                return checkPos;
+            }
+        }
+        return PackedBlockPos.NONE;
     }
     
     /**
      * 计算两点之间的距离
      */
-    private static double calculateDistance(int[] pos1, int[] pos2) {
-        if (pos1 == null || pos2 == null || pos1.length < 3 || pos2.length < 3) {
+    private static double calculateDistance(long pos1, long pos2) {
+        if (pos1 == PackedBlockPos.NONE || pos2 == PackedBlockPos.NONE) {
             return Double.MAX_VALUE;
         }
         
-        double dx = pos1[0] - pos2[0];
-        double dy = pos1[1] - pos2[1];
-        double dz = pos1[2] - pos2[2];
+        double dx = PackedBlockPos.getX(pos1) - PackedBlockPos.getX(pos2);
+        double dy = PackedBlockPos.getY(pos1) - PackedBlockPos.getY(pos2);
+        double dz = PackedBlockPos.getZ(pos1) - PackedBlockPos.getZ(pos2);
         
         return Math.sqrt(dx * dx + dy * dy + dz * dz);
     }
@@ -0,0 +1,222 @@
+package com.xiaofan;
+
+import com.xiaofan.api.BlockInfo;
+import com.xiaofan.api.IBlockInteractor;
+import com.xiaofan.api.IChunkEventHandler;
+import com.xiaofan.api.PackedBlockPos;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 床的位置索引（按区块）
+ * 区块加载后排队扫描一次（跳过不含床的区块段），之后由方块变化事件增量更新，区块卸载时移除；
+ * 查找附近的床只需遍历几个区块里已知的床，不再逐格扫描
+ *
+ * 所有方法都在客户端主线程上调用
+ */
+final class BedIndex {
+    // 每个 tick 最多扫描的新加载区块数，避免进入世界时一次扫描几百个区块
+    private static final int SCANS_PER_TICK = 8;
+
+    private final Map<Long, Beds> beds = new HashMap<>();
+    private final ArrayDeque<Long> pendingScans = new ArrayDeque<>();
+    private final Set<Long> pending = new HashSet<>();
+    private final Set<Long> scanned = new HashSet<>();     // 已加载且已扫描的区块
+
+    /**
+     * 注册区块和方块事件
+     */
+    void register(IChunkEventHandler chunkEventHandler) {
+        chunkEventHandler.registerChunkLoad(this::onChunkLoad);
+        chunkEventHandler.registerChunkUnload(this::onChunkUnload);
+        chunkEventHandler.registerBlockChange(this::onBlockChange);
+    }
+
+    /**
+     * 扫描排队的区块，由客户端 tick 调用
+     * @param worldPresent 世界是否存在，离开世界时清空索引
+     */
+    void tick(IBlockInteractor blockInteractor, boolean worldPresent) {
+        if (!worldPresent) {
+            clear();
+            return;
+        }
+        for (int i = 0; i < SCANS_PER_TICK && !pendingScans.isEmpty(); i++) {
+            long chunk = pendingScans.poll();
+            pending.remove(chunk);
+            scanChunk(blockInteractor, chunk);
+        }
+    }
+
+    private void onChunkLoad(int chunkX, int chunkZ) {
+        long chunk = chunkKey(chunkX, chunkZ);
+        beds.remove(chunk);
+        scanned.remove(chunk);
+        if (pending.add(chunk)) {
+            pendingScans.add(chunk);
+        }
+    }
+
+    private void onChunkUnload(int chunkX, int chunkZ) {
+        long chunk = chunkKey(chunkX, chunkZ);
+        beds.remove(chunk);
+        scanned.remove(chunk);
+        if (pending.remove(chunk)) {
+            pendingScans.remove(chunk);
+        }
+    }
+
+    private void onBlockChange(long packedPos, BlockInfo oldBlock, BlockInfo newBlock) {
+        if (newBlock.isBed()) {
+            beds.computeIfAbsent(chunkOf(packedPos), k -> new Beds()).add(packedPos);
+        } else if (oldBlock.isBed()) {
+            Beds chunkBeds = beds.get(chunkOf(packedPos));
+            if (chunkBeds != null && chunkBeds.remove(packedPos) && chunkBeds.size == 0) {
+                beds.remove(chunkOf(packedPos));
+            }
+        }
+    }
+
+    private void scanChunk(IBlockInteractor blockInteractor, long chunk) {
+        int minX = (int) chunk << 4;
+        int minZ = (int) (chunk >> 32) << 4;
+        Beds chunkBeds = new Beds();
+        blockInteractor.findBlocks(
+            PackedBlockPos.pack(minX, PackedBlockPos.MIN_Y, minZ),
+            PackedBlockPos.pack(minX + 15, PackedBlockPos.MAX_Y, minZ + 15),
+            BlockInfo::isBed,
+            chunkBeds::add);
+        if (chunkBeds.size > 0) {
+            beds.put(chunk, chunkBeds);
+        }
+        scanned.add(chunk);
+    }
+
+    /**
+     * 搜索范围内的区块是否都已扫描（否则索引里可能缺少床）
+     */
+    boolean covers(long pos, int range) {
+        int px = PackedBlockPos.getX(pos);
+        int pz = PackedBlockPos.getZ(pos);
+        for (int chunkX = (px - range) >> 4; chunkX <= (px + range) >> 4; chunkX++) {
+            for (int chunkZ = (pz - range) >> 4; chunkZ <= (pz + range) >> 4; chunkZ++) {
+                if (!scanned.contains(chunkKey(chunkX, chunkZ))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 查找离 pos 最近的 k 张床
+     * @param pos 中心位置（压缩坐标）
+     * @param range 搜索范围（各坐标轴方向上的最大距离）
+     * @param k 最多返回几个
+     * @return 按距离从近到远排列的床的位置（压缩坐标）
+     */
+    long[] nearest(long pos, int range, int k) {
+        int px = PackedBlockPos.getX(pos);
+        int py = PackedBlockPos.getY(pos);
+        int pz = PackedBlockPos.getZ(pos);
+        long[] found = new long[k];
+        long[] foundDistance = new long[k];
+        int count = 0;
+
+        for (int chunkX = (px - range) >> 4; chunkX <= (px + range) >> 4; chunkX++) {
+            for (int chunkZ = (pz - range) >> 4; chunkZ <= (pz + range) >> 4; chunkZ++) {
+                Beds chunkBeds = beds.get(chunkKey(chunkX, chunkZ));
+                if (chunkBeds == null) {
+                    continue;
+                }
+                for (int i = 0; i < chunkBeds.size; i++) {
+                    long bed = chunkBeds.positions[i];
+                    int dx = PackedBlockPos.getX(bed) - px;
+                    int dy = PackedBlockPos.getY(bed) - py;
+                    int dz = PackedBlockPos.getZ(bed) - pz;
+                    if (Math.abs(dx) > range || Math.abs(dy) > range || Math.abs(dz) > range) {
+                        continue;
+                    }
+                    long distance = (long) dx * dx + (long) dy * dy + (long) dz * dz;
+                    if (count == k && distance >= foundDistance[k - 1]) {
+                        continue;
+                    }
+                    // 插入排序，k 很小
+                    int j = count < k ? count++ : k - 1;
+                    while (j > 0 && foundDistance[j - 1] > distance) {
+                        found[j] = found[j - 1];
+                        foundDistance[j] = foundDistance[j - 1];
+                        j--;
+                    }
+                    found[j] = bed;
+                    foundDistance[j] = distance;
+                }
+            }
+        }
+        return count == k ? found : Arrays.copyOf(found, count);
+    }
+
+    /**
+     * 已知的床的数量
+     */
+    int size() {
+        int size = 0;
+        for (Beds chunkBeds : beds.values()) {
+            size += chunkBeds.size;
+        }
+        return size;
+    }
+
+    void clear() {
+        beds.clear();
+        scanned.clear();
+        pendingScans.clear();
+        pending.clear();
+    }
+
+    private static long chunkOf(long packedPos) {
+        return chunkKey(PackedBlockPos.getX(packedPos) >> 4, PackedBlockPos.getZ(packedPos) >> 4);
+    }
+
+    /**
+     * 区块坐标的键（与 ChunkPos.asLong 相同）
+     */
+    private static long chunkKey(int chunkX, int chunkZ) {
+        return (chunkX & 0xFFFFFFFFL) | ((chunkZ & 0xFFFFFFFFL) << 32);
+    }
+
+    /**
+     * 一个区块里的床
+     */
+    private static final class Beds {
+        long[] positions = new long[4];
+        int size;
+
+        void add(long pos) {
+            for (int i = 0; i < size; i++) {
+                if (positions[i] == pos) {
+                    return;
+                }
+            }
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+            }
+            positions[size++] = pos;
+        }
+
+        boolean remove(long pos) {
+            for (int i = 0; i < size; i++) {
+                if (positions[i] == pos) {
+                    positions[i] = positions[--size];
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package com.xiaofan;
+
+import com.xiaofan.api.BlockInfo;
+import com.xiaofan.api.IBlockInteractor;
+import com.xiaofan.api.IChunkEventHandler;
+import com.xiaofan.api.IMinecraftVersion;
+import com.xiaofan.api.IPlayerProvider;
+import com.xiaofan.api.PackedBlockPos;
+import com.xiaofan.api.SectionSnapshot;
+import com.xiaofan.api.VersionProvider;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.LongConsumer;
+import java.util.function.Predicate;
+
+/**
+ * 异步方块搜索服务
+ * findNearest 在客户端线程上只处理与搜索球相交的区块段：调色板里没有目标方块的区块段直接跳过，
+ * 其余区块段用 snapshotSection 复制一份（只复制调色板和下标数组，不逐格读取）；
+ * 逐格查找和距离比较都在后台线程池上进行，通过 CompletableFuture 返回结果
+ *
+ * 每个区块段的匹配位置按区块版本缓存：区块加载、卸载或其中的方块变化时版本改变，缓存随之失效，
+ * 没有变化的区块段再次搜索时不需要重新复制。缓存以条件对象为键，调用者应复用同一个条件（如 byName 返回的条件）
+ */
+public final class BlockSearch {
+    /**
+     * 最大搜索半径
+     */
+    public static final int MAX_RADIUS = 64;
+
+    // latestNearest 的结果超过这个时间后重新搜索
+    private static final long REFRESH_NANOS = 1_000_000_000L;
+    private static final int SCAN_PARALLELISM = 2;
+
+    private static final BlockSearch INSTANCE = new BlockSearch();
+
+    private final ForkJoinPool scanPool = new ForkJoinPool(SCAN_PARALLELISM);
+    // 以下三个字段只在客户端线程上访问（区块列中的区块段结果由后台线程写入）
+    private final Map<Long, Long> chunkVersions = new HashMap<>();     // 没有记录的区块版本为 0
+    private long nextVersion = 1;
+    private final Map<Predicate<BlockInfo>, Map<Long, ColumnCache>> cache = new HashMap<>();
+    private final Map<Predicate<BlockInfo>, Map<Integer, Latest>> latest = new ConcurrentHashMap<>();
+    private final Map<String, Predicate<BlockInfo>> nameFilters = new ConcurrentHashMap<>();
+    private volatile boolean running = false;
+
+    private BlockSearch() {
+    }
+
+    public static BlockSearch getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 注册区块事件和客户端 tick 事件（可重复调用）
+     */
+    public synchronized void initialize() {
+        if (running) {
+            return;
+        }
+
+        IMinecraftVersion version = VersionProvider.getVersion();
+        if (version == null) {
+            return;
+        }
+
+        IChunkEventHandler chunkEventHandler = version.getChunkEventHandler();
+        chunkEventHandler.registerChunkLoad((chunkX, chunkZ) -> invalidate(chunkKey(chunkX, chunkZ)));
+        chunkEventHandler.registerChunkUnload((chunkX, chunkZ) -> evict(chunkKey(chunkX, chunkZ)));
+        chunkEventHandler.registerBlockChange((packedPos, oldBlock, newBlock) -> invalidate(chunkOf(packedPos)));
+        version.getTickHandler().registerClientTick(this::onClientTick);
+        running = true;
+        version.getLogger().info("[方块搜索] 方块搜索服务已启动");
+    }
+
+    /**
+     * 按方块名称匹配的条件（如 "chest" 或 "minecraft:chest"，不区分大小写）
+     * 同一个名称总是返回同一个条件对象，可以命中缓存
+     */
+    public Predicate<BlockInfo> byName(String name) {
+        String n = name.trim().toLowerCase();
+        String key = n.indexOf(':') >= 0 ? n : "minecraft:" + n;
+        return nameFilters.computeIfAbsent(key, k -> info -> info.getBlockKey().equals(k));
+    }
+
+    /**
+     * 查找离玩家最近的满足条件的方块
+     * @param filter 条件
+     * @param radius 搜索半径（球形，最大 MAX_RADIUS）
+     * @return 方块位置（压缩坐标），没有找到或玩家不存在时为 PackedBlockPos.NONE
+     */
+    public CompletableFuture<Long> findNearest(Predicate<BlockInfo> filter, int radius) {
+        IMinecraftVersion version = VersionProvider.getVersion();
+        if (version == null) {
+            return CompletableFuture.completedFuture(PackedBlockPos.NONE);
+        }
+
+        int r = Math.max(0, Math.min(radius, MAX_RADIUS));
+        CompletableFuture<Long> result = new CompletableFuture<>();
+        IPlayerProvider playerProvider = version.getPlayerProvider();
+        Runnable snapshot = () -> {
+            try {
+                long center = playerProvider.getPlayerPackedPosition();
+                if (center == PackedBlockPos.NONE) {
+                    result.complete(PackedBlockPos.NONE);
+                    return;
+                }
+                List<long[]> candidates = new ArrayList<>();
+                List<PendingSection> pending = new ArrayList<>();
+                collect(version.getBlockInteractor(), filter, center, r, candidates, pending);
+                scanPool.execute(() -> {
+                    try {
+                        scan(pending, filter, candidates);
+                        result.complete(nearest(candidates, center, r));
+                    } catch (Exception e) {
+                        result.completeExceptionally(e);
+                    }
+                });
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        };
+
+        if (playerProvider.isOnMainThread()) {
+            snapshot.run();
+        } else {
+            playerProvider.executeOnMainThread(snapshot);
+        }
+        return result;
+    }
+
+    /**
+     * 最近一次搜索的结果（不等待）
+     * 结果超过 1 秒或还没有搜索过时在后台开始新的搜索，本次仍返回旧结果
+     * @return 方块位置（压缩坐标），没有找到或还没有结果时为 PackedBlockPos.NONE
+     */
+    public long latestNearest(Predicate<BlockInfo> filter, int radius) {
+        Latest entry = latestEntry(filter, radius);
+        if (!entry.isFresh()) {
+            refresh(entry, filter, radius);
+        }
+        return entry.position;
+    }
+
+    /**
+     * 最近一次搜索的结果是否在 1 秒内
+     */
+    public boolean hasFreshResult(Predicate<BlockInfo> filter, int radius) {
+        return latestEntry(filter, radius).isFresh();
+    }
+
+    /**
+     * 开始搜索并在完成后更新最近结果；已有搜索在进行时返回它
+     */
+    public CompletableFuture<Long> refresh(Predicate<BlockInfo> filter, int radius) {
+        return refresh(latestEntry(filter, radius), filter, radius);
+    }
+
+    private Latest latestEntry(Predicate<BlockInfo> filter, int radius) {
+        return latest.computeIfAbsent(filter, f -> new ConcurrentHashMap<>()).computeIfAbsent(radius, r -> new Latest());
+    }
+
+    private synchronized CompletableFuture<Long> refresh(Latest entry, Predicate<BlockInfo> filter, int radius) {
+        CompletableFuture<Long> inFlight = entry.inFlight;
+        if (inFlight != null && !inFlight.isDone()) {
+            return inFlight;
+        }
+        CompletableFuture<Long> search = findNearest(filter, radius);
+        entry.inFlight = search;
+        return search.whenComplete((pos, error) -> {
+            // 出错时按没有找到处理，避免每次调用都立即重试
+            entry.position = error == null ? pos : PackedBlockPos.NONE;
+            entry.completedNanos = System.nanoTime();
+        });
+    }
+
+    /**
+     * 收集搜索球内的区块段（在客户端线程上调用）
+     * 缓存有效的区块段把匹配位置放入 candidates，其余区块段复制快照放入 pending，由后台线程查找
+     */
+    private void collect(IBlockInteractor blockInteractor, Predicate<BlockInfo> filter, long center, int r,
+                         List<long[]> candidates, List<PendingSection> pending) {
+        int cx = PackedBlockPos.getX(center);
+        int cy = PackedBlockPos.getY(center);
+        int cz = PackedBlockPos.getZ(center);
+        long limit = (long) r * r;
+        int minSection = Math.max(cy - r, PackedBlockPos.MIN_Y) >> 4;
+        int maxSection = Math.min(cy + r, PackedBlockPos.MAX_Y) >> 4;
+        Map<Long, ColumnCache> columns = cache.computeIfAbsent(filter, f -> new HashMap<>());
+
+        for (int chunkX = (cx - r) >> 4; chunkX <= (cx + r) >> 4; chunkX++) {
+            int dx = axisDistance(cx, chunkX << 4);
+            for (int chunkZ = (cz - r) >> 4; chunkZ <= (cz + r) >> 4; chunkZ++) {
+                int dz = axisDistance(cz, chunkZ << 4);
+                if ((long) dx * dx + (long) dz * dz > limit) {
+                    continue;
+                }
+                long chunk = chunkKey(chunkX, chunkZ);
+                long version = chunkVersions.getOrDefault(chunk, 0L);
+                ColumnCache column = columns.get(chunk);
+                if (column == null || column.version != version) {
+                    column = new ColumnCache(version);
+                    columns.put(chunk, column);
+                }
+
+                for (int sectionY = minSection; sectionY <= maxSection; sectionY++) {
+                    int dy = axisDistance(cy, sectionY << 4);
+                    if ((long) dx * dx + (long) dy * dy + (long) dz * dz > limit) {
+                        continue;
+                    }
+                    long[] matches = column.sections.get(sectionY);
+                    if (matches == null) {
+                        SectionSnapshot snapshot = blockInteractor.snapshotSection(chunkX, sectionY, chunkZ, filter);
+                        if (snapshot == SectionSnapshot.EMPTY) {
+                            column.sections.put(sectionY, LongBuffer.EMPTY);
+                        } else if (snapshot != null) {
+                            pending.add(new PendingSection(column, sectionY, snapshot));
+                        }
+                    } else if (matches.length > 0) {
+                        candidates.add(matches);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 在快照中逐格查找，结果写入区块列缓存并加入 candidates（在后台线程上调用）
+     * 查找期间区块版本改变时，旧的区块列已被替换，写入它不影响之后的搜索
+     */
+    private static void scan(List<PendingSection> pending, Predicate<BlockInfo> filter, List<long[]> candidates) {
+        LongBuffer collector = new LongBuffer();
+        for (PendingSection section : pending) {
+            collector.clear();
+            section.snapshot.findBlocks(filter, collector);
+            long[] matches = collector.toArray();
+            section.column.sections.put(section.sectionY, matches);
+            if (matches.length > 0) {
+                candidates.add(matches);
+            }
+        }
+    }
+
+    /**
+     * 坐标到 [start, start + 15] 区间的距离
+     */
+    private static int axisDistance(int value, int start) {
+        return value < start ? start - value : Math.max(0, value - (start + 15));
+    }
+
+    /**
+     * 找出半径内最近的位置（在后台线程上调用）
+     */
+    private static long nearest(List<long[]> candidates, long center, int r) {
+        int cx = PackedBlockPos.getX(center);
+        int cy = PackedBlockPos.getY(center);
+        int cz = PackedBlockPos.getZ(center);
+        long limit = (long) r * r;
+        long nearest = PackedBlockPos.NONE;
+        long nearestDistance = Long.MAX_VALUE;
+
+        for (long[] matches : candidates) {
+            for (long pos : matches) {
+                long dx = PackedBlockPos.getX(pos) - cx;
+                long dy = PackedBlockPos.getY(pos) - cy;
+                long dz = PackedBlockPos.getZ(pos) - cz;
+                long distance = dx * dx + dy * dy + dz * dz;
+                if (distance <= limit && distance < nearestDistance) {
+                    nearestDistance = distance;
+                    nearest = pos;
+                }
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * 离开世界时清空所有缓存
+     */
+    private void onClientTick() {
+        IMinecraftVersion version = VersionProvider.getVersion();
+        if (version != null && !version.getWorldTimeProvider().isWorldPresent() && !chunkVersions.isEmpty()) {
+            chunkVersions.clear();
+            cache.clear();
+            latest.clear();
+        }
+    }
+
+    private void invalidate(long chunk) {
+        chunkVersions.put(chunk, nextVersion++);
+    }
+
+    private void evict(long chunk) {
+        chunkVersions.remove(chunk);
+        for (Map<Long, ColumnCache> columns : cache.values()) {
+            columns.remove(chunk);
+        }
+    }
+
+    private static long chunkOf(long packedPos) {
+        return chunkKey(PackedBlockPos.getX(packedPos) >> 4, PackedBlockPos.getZ(packedPos) >> 4);
+    }
+
+    private static long chunkKey(int chunkX, int chunkZ) {
+        return (chunkX & 0xFFFFFFFFL) | ((chunkZ & 0xFFFFFFFFL) << 32);
+    }
+
+    /**
+     * 一个区块列中各区块段的匹配位置（客户端线程读取，后台线程写入）
+     */
+    private static final class ColumnCache {
+        final long version;
+        final Map<Integer, long[]> sections = new ConcurrentHashMap<>();
+
+        ColumnCache(long version) {
+            this.version = version;
+        }
+    }
+
+    /**
+     * 复制了快照、等待后台线程查找的区块段
+     */
+    private static final class PendingSection {
+        final ColumnCache column;
+        final int sectionY;
+        final SectionSnapshot snapshot;
+
+        PendingSection(ColumnCache column, int sectionY, SectionSnapshot snapshot) {
+            this.column = column;
+            this.sectionY = sectionY;
+            this.snapshot = snapshot;
+        }
+    }
+
+    /**
+     * 收集匹配位置的缓冲区（每次后台查找一个）
+     */
+    private static final class LongBuffer implements LongConsumer {
+        private static final long[] EMPTY = new long[0];
+        private long[] values = new long[64];
+        private int size;
+
+        @Override
+        public void accept(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        long[] toArray() {
+            return size == 0 ? EMPTY : Arrays.copyOf(values, size);
+        }
+    }
+
+    /**
+     * 某个条件和半径最近一次搜索的结果
+     */
+    private static final class Latest {
+        volatile long position = PackedBlockPos.NONE;
+        volatile long completedNanos;
+        volatile CompletableFuture<Long> inFlight;
+
+        boolean isFresh() {
+            return completedNanos != 0 && System.nanoTime() - completedNanos < REFRESH_NANOS;
+        }
+    }
+}
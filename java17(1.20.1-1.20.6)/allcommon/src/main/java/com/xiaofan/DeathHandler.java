@@ -106,9 +106,13 @@ public class DeathHandler {
             try {
                 if (baritoneExecutor.isBaritoneLoaded()) {
                     // 通过抽象接口执行 stop 命令
-                    baritoneExecutor.executeCommand("stop");
-                    logger.info("[死亡处理] 已执行 Baritone stop 命令");
-                    playerProvider.sendSystemMessage("§7[死亡处理] 已停止所有 Baritone 任务和宏");
+                    BaritoneCommandResult result = baritoneExecutor.executeCommand("stop");
+                    if (result.isSuccess()) {
+                        logger.info("[死亡处理] 已执行 Baritone stop 命令");
+                        playerProvider.sendSystemMessage("§7[死亡处理] 已停止所有 Baritone 任务和宏");
+                    } else {
+                        logger.warn("[死亡处理] 执行 Baritone stop 命令失败: {}", result);
+                    }
                 } else {
                     logger.debug("[死亡处理] Baritone 未加载，跳过 stop 命令");
                 }
@@ -0,0 +1,236 @@
+package com.xiaofan;
+
+import com.xiaofan.api.IMinecraftVersion;
+import com.xiaofan.api.VersionProvider;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 共享的分层时间轮
+ * 宏的 wait、循环暂停、自动睡觉的冷却等定时任务都注册到这里，不再各自轮询
+ *
+ * 时间轮以 50ms（一个游戏 tick）为一格，由客户端 tick 事件推进；每次推进按实际经过的时间计算格数，
+ * 客户端卡顿时会一次补齐错过的格子。共 4 层、每层 64 格，添加和取消都是 O(1)
+ *
+ * 回调在客户端线程上执行，应尽快返回
+ */
+public final class TimerWheel {
+    public static final long TICK_MILLIS = 50;
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    private static final long MAX_SPAN = 1L << (SLOT_BITS * LEVELS); // 超出范围的定时器先放在最高层，下沉时重新计算位置
+
+    private static final TimerWheel INSTANCE = new TimerWheel();
+
+    private final Timeout[][] buckets = new Timeout[LEVELS][SLOTS];
+    private final long startNanos = System.nanoTime();
+    private long currentTick;
+    private int pendingCount;
+    private int firedLastTick;
+    private long totalFired;
+    private volatile boolean running = false;
+
+    private TimerWheel() {
+    }
+
+    public static TimerWheel getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 注册客户端 tick 事件，开始推进时间轮（可重复调用）
+     */
+    public synchronized void initialize() {
+        if (running) {
+            return;
+        }
+
+        IMinecraftVersion version = VersionProvider.getVersion();
+        if (version == null) {
+            return;
+        }
+
+        version.getTickHandler().registerClientTick(this::advance);
+        running = true;
+        version.getLogger().info("[定时器] 时间轮已启动");
+    }
+
+    /**
+     * 时间轮是否已在推进（未启动时注册的定时器不会触发）
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 在指定毫秒后执行任务（按 50ms 向上取整）
+     */
+    public Timeout schedule(long delayMillis, Runnable task) {
+        long ticks = delayMillis <= 0 ? 0 : (delayMillis - 1) / TICK_MILLIS + 1;
+        return scheduleTicks(ticks, task);
+    }
+
+    /**
+     * 在指定 tick 数后执行任务
+     */
+    public synchronized Timeout scheduleTicks(long ticks, Runnable task) {
+        long deadline = ticks >= Long.MAX_VALUE - currentTick ? Long.MAX_VALUE : currentTick + Math.max(1, ticks);
+        Timeout timeout = new Timeout(this, deadline, task);
+        add(timeout);
+        pendingCount++;
+        return timeout;
+    }
+
+    /**
+     * 等待触发的定时器数量
+     */
+    public synchronized int getPendingCount() {
+        return pendingCount;
+    }
+
+    /**
+     * 最近一次推进时触发的定时器数量
+     */
+    public synchronized int getFiredLastTick() {
+        return firedLastTick;
+    }
+
+    /**
+     * 启动以来触发的定时器总数
+     */
+    public synchronized long getTotalFired() {
+        return totalFired;
+    }
+
+    /**
+     * 推进时间轮并执行到期的任务，由客户端 tick 调用
+     */
+    void advance() {
+        List<Timeout> due = new ArrayList<>();
+        synchronized (this) {
+            long target = (System.nanoTime() - startNanos) / (TICK_MILLIS * 1_000_000L);
+            while (currentTick < target) {
+                currentTick++;
+                cascade(1);
+                int slot = (int) (currentTick & SLOT_MASK);
+                for (Timeout t = buckets[0][slot]; t != null; t = t.next) {
+                    t.state = Timeout.FIRED;
+                    due.add(t);
+                }
+                buckets[0][slot] = null;
+            }
+            pendingCount -= due.size();
+            firedLastTick = due.size();
+            totalFired += due.size();
+        }
+
+        for (Timeout timeout : due) {
+            try {
+                timeout.task.run();
+            } catch (Exception e) {
+                VersionProvider.getVersion().getLogger().error("[定时器] 执行定时任务时出错", e);
+            }
+        }
+    }
+
+    /**
+     * 低层转完一圈时，把上一层当前格的定时器下沉到更低的层
+     */
+    private void cascade(int level) {
+        if (level >= LEVELS || (currentTick & ((1L << (SLOT_BITS * level)) - 1)) != 0) {
+            return;
+        }
+        cascade(level + 1);
+
+        int slot = (int) ((currentTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+        Timeout t = buckets[level][slot];
+        buckets[level][slot] = null;
+        while (t != null) {
+            Timeout next = t.next;
+            t.prev = null;
+            t.next = null;
+            add(t);
+            t = next;
+        }
+    }
+
+    private void add(Timeout timeout) {
+        long delta = Math.max(0, timeout.deadline - currentTick);
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        long position = delta >= MAX_SPAN ? currentTick + MAX_SPAN - 1 : timeout.deadline;
+        int slot = (int) ((position >>> (SLOT_BITS * level)) & SLOT_MASK);
+
+        timeout.level = level;
+        timeout.slot = slot;
+        timeout.next = buckets[level][slot];
+        if (timeout.next != null) {
+            timeout.next.prev = timeout;
+        }
+        buckets[level][slot] = timeout;
+    }
+
+    private synchronized boolean cancel(Timeout timeout) {
+        if (timeout.state != Timeout.PENDING) {
+            return false;
+        }
+        timeout.state = Timeout.CANCELLED;
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            buckets[timeout.level][timeout.slot] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        pendingCount--;
+        return true;
+    }
+
+    /**
+     * 已注册的定时器
+     */
+    public static final class Timeout {
+        private static final int PENDING = 0;
+        private static final int FIRED = 1;
+        private static final int CANCELLED = 2;
+
+        private final TimerWheel wheel;
+        private final long deadline;
+        private final Runnable task;
+        private volatile int state = PENDING;
+        private int level;
+        private int slot;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(TimerWheel wheel, long deadline, Runnable task) {
+            this.wheel = wheel;
+            this.deadline = deadline;
+            this.task = task;
+        }
+
+        /**
+         * 取消定时器
+         * @return 是否取消成功（已触发或已取消时返回 false）
+         */
+        public boolean cancel() {
+            return wheel.cancel(this);
+        }
+
+        /**
+         * 是否仍在等待触发
+         */
+        public boolean isPending() {
+            return state == PENDING;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.xiaofan.api;
+
+/**
+ * Baritone 命令的分派结果
+ * 只表示命令是否被 Baritone 接受，命令启动的任务何时结束见 IBaritoneExecutor.executeAsync
+ */
+public final class BaritoneCommandResult {
+    /**
+     * 分派状态
+     */
+    public enum Status {
+        SUCCESS,            // Baritone 已执行命令
+        NOT_AVAILABLE,      // 玩家未进入世界或 Baritone 未加载
+        UNKNOWN_COMMAND,    // Baritone 没有这个命令
+        ERROR               // 执行时出现异常或等待主线程超时
+    }
+
+    private static final BaritoneCommandResult SUCCESS = new BaritoneCommandResult(Status.SUCCESS, null);
+
+    private final Status status;
+    private final String message;   // 失败原因，成功时为 null
+
+    private BaritoneCommandResult(Status status, String message) {
+        this.status = status;
+        this.message = message;
+    }
+
+    public static BaritoneCommandResult success() {
+        return SUCCESS;
+    }
+
+    public static BaritoneCommandResult failure(Status status, String message) {
+        return new BaritoneCommandResult(status, message);
+    }
+
+    /**
+     * 是否成功
+     */
+    public boolean isSuccess() {
+        return status == Status.SUCCESS;
+    }
+
+    /**
+     * 获取分派状态
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * 获取失败原因，成功时为 null
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return message == null ? status.name() : status + ": " + message;
+    }
+}
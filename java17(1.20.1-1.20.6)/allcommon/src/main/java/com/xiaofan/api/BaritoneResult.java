@@ -0,0 +1,23 @@
+package com.xiaofan.api;
+
+/**
+ * Baritone 命令的执行结果
+ */
+public enum BaritoneResult {
+    /**
+     * 正常结束（到达目标或进程自行结束）
+     */
+    COMPLETED,
+    /**
+     * 失败（无法寻路、命令没有启动任何任务、玩家离开世界或 Baritone 不可用）
+     */
+    FAILED,
+    /**
+     * 被 #stop 或新的 Baritone 命令中止
+     */
+    CANCELLED,
+    /**
+     * 超过最长等待时间仍未结束，Baritone 可能仍在执行
+     */
+    TIMEOUT
+}
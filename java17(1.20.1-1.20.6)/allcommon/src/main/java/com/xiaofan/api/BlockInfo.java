@@ -3,16 +3,21 @@ package com.xiaofan.api;
 /**
  * 方块信息数据类
  * 用于在不同版本之间传递方块信息
+ *
+ * 每种方块（Block）只有一个实例，由版本实现缓存并在 getBlockState 中重复返回，
+ * 注册表键、名称和是否为床在创建时计算一次；可以用 == 比较两个 BlockInfo 是否是同一种方块
  */
-public class BlockInfo {
+public final class BlockInfo {
     private final Object blockObject;  // 实际的 Block 对象（版本特定）
     private final String blockKey;     // 方块注册表键（如 "minecraft:bed"）
     private final String blockName;    // 方块名称（如 "bed"）
+    private final boolean bed;         // 是否是床
     
-    public BlockInfo(Object blockObject, String blockKey, String blockName) {
+    public BlockInfo(Object blockObject, String blockKey, String blockName, boolean bed) {
         this.blockObject = blockObject;
-        this.blockKey = blockKey;
-        this.blockName = blockName;
+        this.blockKey = blockKey.intern();
+        this.blockName = blockName.intern();
+        this.bed = bed;
     }
     
     /**
@@ -35,5 +40,12 @@ public class BlockInfo {
     public String getBlockName() {
         return blockName;
     }
+    
+    /**
+     * 是否是床
+     */
+    public boolean isBed() {
+        return bed;
+    }
 }
 
@@ -0,0 +1,104 @@
+package com.xiaofan.api;
+
+import java.util.function.Predicate;
+
+/**
+ * 区域方块数据类
+ * IBlockInteractor.getBlockRegion 一次读取的长方体区域。每个格子只存一个调色板下标（short），
+ * 相同方块共享调色板中的同一个 BlockInfo
+ *
+ * 调色板下标 0 固定为 null，表示该格子没有读取（区块未加载，或所在区块段不含要找的方块而被跳过）
+ */
+public final class BlockRegion {
+    private final int minX, minY, minZ;
+    private final int sizeX, sizeY, sizeZ;
+    private final BlockInfo[] palette;
+    private final short[] ids;         // 下标顺序：x 最快，其次 z，最后 y
+
+    public BlockRegion(int minX, int minY, int minZ, int sizeX, int sizeY, int sizeZ, BlockInfo[] palette, short[] ids) {
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        this.sizeZ = sizeZ;
+        this.palette = palette;
+        this.ids = ids;
+    }
+
+    public int getMinX() {
+        return minX;
+    }
+
+    public int getMinY() {
+        return minY;
+    }
+
+    public int getMinZ() {
+        return minZ;
+    }
+
+    public int getSizeX() {
+        return sizeX;
+    }
+
+    public int getSizeY() {
+        return sizeY;
+    }
+
+    public int getSizeZ() {
+        return sizeZ;
+    }
+
+    /**
+     * 格子总数
+     */
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * 格子的下标
+     * @param x 世界坐标，调用者保证在区域内
+     */
+    public int indexOf(int x, int y, int z) {
+        return ((y - minY) * sizeZ + (z - minZ)) * sizeX + (x - minX);
+    }
+
+    /**
+     * 格子的压缩坐标
+     */
+    public long getPackedPos(int index) {
+        int x = index % sizeX;
+        int z = index / sizeX % sizeZ;
+        int y = index / (sizeX * sizeZ);
+        return PackedBlockPos.pack(minX + x, minY + y, minZ + z);
+    }
+
+    /**
+     * 格子的调色板下标
+     */
+    public int getPaletteId(int index) {
+        return ids[index];
+    }
+
+    /**
+     * 格子的方块
+     * @return 方块信息，未读取时返回 null
+     */
+    public BlockInfo getBlock(int index) {
+        return palette[ids[index]];
+    }
+
+    /**
+     * 调色板中满足条件的方块
+     * @return 按调色板下标的标记，可以用 mask[getPaletteId(i)] 判断格子；调色板下标 0 总是 false
+     */
+    public boolean[] matchPalette(Predicate<BlockInfo> filter) {
+        boolean[] mask = new boolean[palette.length];
+        for (int i = 1; i < palette.length; i++) {
+            mask[i] = filter.test(palette[i]);
+        }
+        return mask;
+    }
+}
@@ -1,16 +1,20 @@
 package com.xiaofan.api;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Baritone 执行器接口
  * 用于执行 Baritone 命令
  */
 public interface IBaritoneExecutor {
     /**
-     * 执行 Baritone 命令（非阻塞）
+     * 执行 Baritone 命令（不等待命令启动的任务结束）
+     * 命令在主游戏线程上直接交给 Baritone 的命令管理器，不经过聊天栏；
+     * 从其他线程调用时等待主线程执行完毕
      * @param command 命令内容（不包含 # 前缀）
-     * @return 是否成功发送命令
+     * @return 分派结果
      */
-    boolean executeCommand(String command);
+    BaritoneCommandResult executeCommand(String command);
     
     /**
      * 检查是否是阻塞命令（需要等待执行完成）
@@ -21,11 +25,21 @@ public interface IBaritoneExecutor {
     
     /**
      * 执行阻塞的 Baritone 命令，等待执行完成
+     * 等待期间调用线程被中断时停止 Baritone 并返回（保留中断状态）
      * @param command 命令内容（不包含 # 前缀）
      * @param targetPos 目标位置 [x, y, z]（用于 goto 等命令），可为 null
      */
     void executeBlockingCommand(String command, int[] targetPos);
     
+    /**
+     * 异步执行 Baritone 命令，不占用调用线程
+     * 结果在客户端线程上完成；超过最长等待时间（5 分钟）时结果为 TIMEOUT。
+     * 取消返回的 future 会执行 stop 命令停止该命令启动的任务
+     * @param command 命令内容（不包含 # 前缀）
+     * @return 命令启动的任务结束时完成
+     */
+    CompletableFuture<BaritoneResult> executeAsync(String command);
+    
     /**
      * 检查 Baritone 是否已加载
      * @return 是否已加载
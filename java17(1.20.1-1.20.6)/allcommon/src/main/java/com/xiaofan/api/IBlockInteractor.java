@@ -1,10 +1,18 @@
 package com.xiaofan.api;
 
+import java.util.function.LongConsumer;
+import java.util.function.Predicate;
+
 /**
  * 方块交互器接口
  * 抽象方块交互相关的操作
  */
 public interface IBlockInteractor {
+    /**
+     * getBlockRegion 一次最多读取的格子数（128 x 128 x 64）
+     */
+    int MAX_REGION_VOLUME = 1 << 20;
+    
     /**
      * 获取方块状态
      * @param pos 方块位置 [x, y, z]
@@ -12,6 +20,47 @@ public interface IBlockInteractor {
      */
     BlockInfo getBlockState(int[] pos);
     
+    /**
+     * 获取方块状态（不分配坐标对象，用于逐格扫描等热点路径）
+     * @param packedPos 压缩坐标，见 {@link PackedBlockPos}
+     * @return 方块信息（每种方块共享同一个实例），如果无法获取返回 null
+     */
+    BlockInfo getBlockState(long packedPos);
+    
+    /**
+     * 批量读取一个长方体区域内的方块（两个角都包含在内，y 方向裁剪到建筑高度内）
+     * 不在主线程调用时会切换到主线程读取一次再返回；按区块段读取，
+     * 区块段的调色板中没有满足 filter 的方块时整个区块段跳过不读
+     * @param fromPos 一个角（压缩坐标）
+     * @param toPos 对角（压缩坐标）
+     * @param filter 要找的方块，为 null 时读取所有区块段
+     * @return 区域方块，世界不存在或裁剪后的区域超过 MAX_REGION_VOLUME 个格子时返回 null
+     */
+    BlockRegion getBlockRegion(long fromPos, long toPos, Predicate<BlockInfo> filter);
+    
+    /**
+     * 在长方体区域内查找满足条件的方块（两个角都包含在内，y 方向裁剪到建筑高度内）
+     * 与 getBlockRegion 一样按区块段读取并跳过不含目标方块的区块段，但不分配区域数组，只回调找到的位置；
+     * 不在主线程调用时会切换到主线程执行，onMatch 总是在主线程上调用
+     * @param fromPos 一个角（压缩坐标）
+     * @param toPos 对角（压缩坐标）
+     * @param filter 要找的方块
+     * @param onMatch 每个找到的位置（压缩坐标）
+     */
+    void findBlocks(long fromPos, long toPos, Predicate<BlockInfo> filter, LongConsumer onMatch);
+    
+    /**
+     * 复制一个区块段，供后台线程逐格查找（必须在主线程调用）
+     * 只检查调色板并复制方块数据，不逐格读取；调色板中没有满足 filter 的方块时不复制
+     * @param chunkX 区块 x 坐标
+     * @param sectionY 区块段 y 坐标（方块 y >> 4）
+     * @param chunkZ 区块 z 坐标
+     * @param filter 要找的方块
+     * @return 区块段快照；调色板中没有要找的方块时返回 SectionSnapshot.EMPTY，
+     *         世界不存在、区块未加载或区块段在建筑高度外时返回 null
+     */
+    SectionSnapshot snapshotSection(int chunkX, int sectionY, int chunkZ, Predicate<BlockInfo> filter);
+    
     /**
      * 检查方块是否是床
      * @param blockInfo 方块信息
@@ -26,6 +75,13 @@ public interface IBlockInteractor {
      */
     InteractionResult interactWithBlock(int[] pos);
     
+    /**
+     * 尝试与方块交互
+     * @param packedPos 压缩坐标，见 {@link PackedBlockPos}
+     * @return 交互结果
+     */
+    InteractionResult interactWithBlock(long packedPos);
+    
     /**
      * 交互结果枚举
      */
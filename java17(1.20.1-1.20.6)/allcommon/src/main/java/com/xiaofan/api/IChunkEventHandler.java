@@ -0,0 +1,46 @@
+package com.xiaofan.api;
+
+/**
+ * 区块事件处理器接口
+ * 用于注册客户端区块加载/卸载和方块变化回调，回调都在客户端主线程上调用
+ */
+public interface IChunkEventHandler {
+    /**
+     * 注册区块加载监听器（区块数据从服务器收到后调用）
+     * @param onLoad 区块加载回调
+     */
+    void registerChunkLoad(ChunkListener onLoad);
+    
+    /**
+     * 注册区块卸载监听器
+     * @param onUnload 区块卸载回调
+     */
+    void registerChunkUnload(ChunkListener onUnload);
+    
+    /**
+     * 注册方块变化监听器（只在方块种类变化时调用，同一方块的状态变化不调用）
+     * @param onChange 方块变化回调
+     */
+    void registerBlockChange(BlockChangeListener onChange);
+    
+    /**
+     * 区块回调
+     */
+    @FunctionalInterface
+    interface ChunkListener {
+        void onChunk(int chunkX, int chunkZ);
+    }
+    
+    /**
+     * 方块变化回调
+     */
+    @FunctionalInterface
+    interface BlockChangeListener {
+        /**
+         * @param packedPos 方块位置（压缩坐标）
+         * @param oldBlock 原来的方块
+         * @param newBlock 新的方块
+         */
+        void onBlockChange(long packedPos, BlockInfo oldBlock, BlockInfo newBlock);
+    }
+}
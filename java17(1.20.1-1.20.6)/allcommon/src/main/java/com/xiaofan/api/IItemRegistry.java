@@ -32,5 +32,25 @@ public interface IItemRegistry {
      * @return 工具材质，如果不是工具或无法识别返回 null
      */
     String getToolMaterial(ItemInfo itemInfo);
+    
+    /**
+     * 重新构建物品分类表（遍历注册表中的所有物品及其标签）
+     * 标签在客户端收到服务器同步的标签后才绑定，应在 registerTagsUpdated 的回调中调用
+     */
+    void rebuildClassificationTable();
+    
+    /**
+     * 注册标签更新监听器
+     * 进入服务器（标签在登录之后才同步）和服务器 /reload 后调用，回调在客户端主线程上调用
+     * @param onUpdated 标签更新回调
+     */
+    void registerTagsUpdated(Runnable onUpdated);
+    
+    /**
+     * 获取物品分类（查表）
+     * @param itemInfo 物品信息
+     * @return 物品分类，无法识别时返回 ItemClassification.NONE
+     */
+    ItemClassification getClassification(ItemInfo itemInfo);
 }
 
@@ -72,6 +72,11 @@ public interface IMinecraftVersion {
      */
     ITickHandler getTickHandler();
     
+    /**
+     * 获取区块事件处理器
+     */
+    IChunkEventHandler getChunkEventHandler();
+    
     /**
      * 获取 Baritone 执行器
      */
@@ -11,6 +11,12 @@ public interface IPlayerProvider {
      */
     int[] getPlayerPosition();
     
+    /**
+     * 获取玩家位置（压缩坐标，不分配数组）
+     * @return 压缩坐标，见 {@link PackedBlockPos}；如果玩家不存在返回 {@link PackedBlockPos#NONE}
+     */
+    long getPlayerPackedPosition();
+    
     /**
      * 检查玩家是否存在
      */
@@ -0,0 +1,63 @@
+package com.xiaofan.api;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * 物品分类数据类
+ * 由物品注册表在进入世界时为每种物品预先计算：是否为工具、工具种类、材质和物品标签
+ */
+public final class ItemClassification {
+    /**
+     * 无法识别的物品
+     */
+    public static final ItemClassification NONE = new ItemClassification(false, null, null, Collections.emptySet());
+
+    private final boolean tool;
+    private final String toolKind;     // 工具种类（如 "pickaxe"），不是工具或无法识别时为 null
+    private final String material;     // 材质（如 "diamond"），无法识别时为 null
+    private final Set<String> tags;    // 物品标签（如 "minecraft:logs"）
+
+    public ItemClassification(boolean tool, String toolKind, String material, Set<String> tags) {
+        this.tool = tool;
+        this.toolKind = toolKind;
+        this.material = material;
+        this.tags = tags;
+    }
+
+    /**
+     * 是否是工具类物品（镐、斧、铲、锄、剑等）
+     */
+    public boolean isTool() {
+        return tool;
+    }
+
+    /**
+     * 获取工具种类（"pickaxe"、"axe"、"shovel"、"hoe"、"sword"）
+     */
+    public String getToolKind() {
+        return toolKind;
+    }
+
+    /**
+     * 获取材质（如 "diamond", "iron", "netherite"）
+     */
+    public String getMaterial() {
+        return material;
+    }
+
+    /**
+     * 获取物品标签（不可修改）
+     */
+    public Set<String> getTags() {
+        return tags;
+    }
+
+    /**
+     * 是否带有指定标签
+     * @param tag 标签（如 "minecraft:logs"）
+     */
+    public boolean hasTag(String tag) {
+        return tags.contains(tag);
+    }
+}
@@ -0,0 +1,73 @@
+package com.xiaofan.api;
+
+/**
+ * 压缩方块坐标工具类
+ * 把 [x, y, z] 压缩为一个 long，位布局与 Minecraft 的 BlockPos.asLong 相同
+ * （x 占高 26 位，z 占中间 26 位，y 占低 12 位），版本实现可以直接传给 BlockPos.of / MutableBlockPos.set
+ */
+public final class PackedBlockPos {
+    private static final int X_BITS = 26;
+    private static final int Z_BITS = 26;
+    private static final int Y_BITS = 12;
+    private static final int Z_SHIFT = Y_BITS;
+    private static final int X_SHIFT = Y_BITS + Z_BITS;
+    private static final long X_MASK = (1L << X_BITS) - 1;
+    private static final long Z_MASK = (1L << Z_BITS) - 1;
+    private static final long Y_MASK = (1L << Y_BITS) - 1;
+
+    /**
+     * 可以表示的 y 范围（覆盖任何世界的建筑高度）
+     */
+    public static final int MIN_Y = -(1 << (Y_BITS - 1));
+    public static final int MAX_Y = (1 << (Y_BITS - 1)) - 1;
+
+    /**
+     * 表示“没有位置”（如玩家不存在），不会与世界边界内的任何坐标冲突
+     */
+    public static final long NONE = Long.MIN_VALUE;
+
+    private PackedBlockPos() {
+    }
+
+    /**
+     * 压缩坐标
+     */
+    public static long pack(int x, int y, int z) {
+        return ((x & X_MASK) << X_SHIFT) | ((z & Z_MASK) << Z_SHIFT) | (y & Y_MASK);
+    }
+
+    public static int getX(long packed) {
+        return (int) (packed >> X_SHIFT);
+    }
+
+    public static int getY(long packed) {
+        return (int) (packed << (64 - Y_BITS) >> (64 - Y_BITS));
+    }
+
+    public static int getZ(long packed) {
+        return (int) (packed << (64 - Z_SHIFT - Z_BITS) >> (64 - Z_BITS));
+    }
+
+    /**
+     * 偏移坐标
+     */
+    public static long offset(long packed, int dx, int dy, int dz) {
+        return pack(getX(packed) + dx, getY(packed) + dy, getZ(packed) + dz);
+    }
+
+    /**
+     * 从 [x, y, z] 数组压缩
+     * @return 压缩坐标，数组为 null 或长度不足时返回 NONE
+     */
+    public static long fromArray(int[] pos) {
+        return pos == null || pos.length < 3 ? NONE : pack(pos[0], pos[1], pos[2]);
+    }
+
+    /**
+     * 解压为 [x, y, z] 数组（只用于日志等非热点路径）
+     * @return 坐标数组，packed 为 NONE 时返回 null
+     */
+    public static int[] toArray(long packed) {
+        return packed == NONE ? null : new int[]{getX(packed), getY(packed), getZ(packed)};
+    }
+}
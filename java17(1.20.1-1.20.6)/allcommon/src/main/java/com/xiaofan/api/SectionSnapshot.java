@@ -0,0 +1,24 @@
+package com.xiaofan.api;
+
+import java.util.function.LongConsumer;
+import java.util.function.Predicate;
+
+/**
+ * 区块段快照
+ * IBlockInteractor.snapshotSection 在主线程上复制的一个 16x16x16 区块段，之后与世界无关，可以在任意线程上读取
+ */
+@FunctionalInterface
+public interface SectionSnapshot {
+    /**
+     * 不含要找的方块的区块段
+     */
+    SectionSnapshot EMPTY = (filter, onMatch) -> {
+    };
+
+    /**
+     * 在快照中查找满足条件的方块
+     * @param filter 要找的方块
+     * @param onMatch 每个找到的位置（压缩坐标）
+     */
+    void findBlocks(Predicate<BlockInfo> filter, LongConsumer onMatch);
+}
@@ -1,5 +1,7 @@
 package com.xiaofan.macro;
 
+import com.xiaofan.BlockSearch;
+import com.xiaofan.TimerWheel;
 import com.xiaofan.api.*;
 
 import java.io.File;
@@ -7,8 +9,12 @@ import java.io.IOException;
 import java.nio.file.*;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Baritone 自动任务管理器
@@ -18,16 +24,25 @@ import java.util.concurrent.Executors;
  */
 public class BaritoneTaskManager {
     private static final String MACRO_FOLDER_NAME = "do";
+    // 宏文件并行加载的线程数上限
+    static final int LOAD_PARALLELISM = Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors()));
     private static BaritoneTaskManager instance;
     
     private final Map<String, Macro> macros = new ConcurrentHashMap<>();
     private final Map<String, MacroExecutor> runningExecutors = new ConcurrentHashMap<>();
     private final Map<String, String> macroCurrentCommands = new ConcurrentHashMap<>(); // 跟踪每个宏当前执行的命令类型
-    private final ExecutorService executorService = Executors.newCachedThreadPool();
+    private final Map<String, LoadedFile> loadedFiles = new ConcurrentHashMap<>(); // 已加载宏文件的状态
+    private final ExecutorService executorService = MacroThreads.newExecutor(); // 虚拟线程模式下为每任务一个虚拟线程
+    private final ForkJoinPool loadPool = new ForkJoinPool(LOAD_PARALLELISM);
+    private final AtomicReference<WorldSnapshot> snapshot = new AtomicReference<>(WorldSnapshot.EMPTY); // 每 tick 发布
+    private final ConditionFeed conditionFeed = new ConditionFeed();
+    private final MacroScheduler scheduler = new MacroScheduler(conditionFeed);
     private File macroFolder;
+    private MacroCache macroCache;
     private WatchService watchService;
     private Thread watchThread;
     private boolean isInitialized = false;
+    private volatile boolean tagsUpdated = false; // 标签已同步，下一个 tick 重建物品分类表
     
     // 定义冲突命令组（同一组内的命令不能同时执行）
     private static final Map<String, Set<String>> CONFLICT_GROUPS = new HashMap<>();
@@ -88,12 +103,23 @@ public class BaritoneTaskManager {
             macroFolder.mkdirs();
             getLogger().info("[Baritone任务] 已创建宏文件夹: {}", macroFolder.getAbsolutePath());
         }
+        macroCache = new MacroCache(macroFolder);
+        if (MacroSettings.VIRTUAL_THREADS) {
+            if (MacroThreads.isVirtual()) {
+                getLogger().info("[Baritone任务] 宏在虚拟线程上执行");
+            } else {
+                getLogger().warn("[Baritone任务] 当前 JVM 不支持虚拟线程（需要 Java 21+），宏在平台线程上执行");
+            }
+        }
         
         // 启动文件监听
         startFileWatcher();
         
         // 注册客户端 tick 事件（使用抽象接口）
+        TimerWheel.getInstance().initialize();
+        BlockSearch.getInstance().initialize();
         version.getTickHandler().registerClientTick(this::onClientTick);
+        version.getItemRegistry().registerTagsUpdated(() -> tagsUpdated = true);
         
         isInitialized = true;
         getLogger().info("[Baritone任务] 任务管理器已初始化");
@@ -105,10 +131,25 @@ public class BaritoneTaskManager {
      */
     private void onClientTick() {
         IMinecraftVersion version = getVersion();
-        IPlayerProvider playerProvider = version.getPlayerProvider();
-        IWorldTimeProvider worldTimeProvider = version.getWorldTimeProvider();
+        WorldSnapshot previous = snapshot.get();
+        
+        // 标签同步后重建物品分类表（进入服务器时标签在登录之后才到达，/reload 后会重新同步），
+        // 背包索引中的标签随之过时，本次采集重建背包索引
+        boolean rebuildInventory = tagsUpdated;
+        if (rebuildInventory) {
+            tagsUpdated = false;
+            try {
+                version.getItemRegistry().rebuildClassificationTable();
+            } catch (Exception e) {
+                getLogger().error("[Baritone任务] 构建物品分类表时出错", e);
+            }
+        }
+        
+        // 采集世界状态快照，供各执行器的条件判断读取
+        WorldSnapshot current = WorldSnapshot.capture(version, previous, rebuildInventory);
+        snapshot.set(current);
         
-        if (!playerProvider.isPlayerPresent() || !worldTimeProvider.isWorldPresent()) {
+        if (!current.playerPresent || !current.worldPresent) {
             return;
         }
         
@@ -116,6 +157,26 @@ public class BaritoneTaskManager {
         for (MacroExecutor executor : new ArrayList<>(runningExecutors.values())) {
             executor.onTick();
         }
+        
+        // 通知 if 条件发生变化的宏
+        conditionFeed.tick(current);
+        
+        // tick 调度模式下推进所有宏
+        scheduler.tick();
+    }
+    
+    /**
+     * 获取最近一次 tick 采集的世界状态快照
+     */
+    WorldSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+    
+    /**
+     * 获取 if 条件订阅
+     */
+    ConditionFeed getConditionFeed() {
+        return conditionFeed;
     }
     
     /**
@@ -133,11 +194,14 @@ public class BaritoneTaskManager {
      */
     public void loadMacro(String macroName, Macro macro) {
         macros.put(macroName, macro);
+        loadedFiles.remove(macroName);
         getLogger().info("[Baritone任务] 已加载宏: {}", macroName);
     }
     
     /**
      * 加载所有宏文件
+     * 在有界的 ForkJoinPool 上并行解析，每个文件解析完成后立即放入 macros，
+     * 单个文件失败不影响其他文件
      */
     private void loadAllMacros() {
         if (macroFolder == null || !macroFolder.exists()) {
@@ -149,16 +213,84 @@ public class BaritoneTaskManager {
             return;
         }
         
+        long startTime = System.nanoTime();
+        long hitsBefore = macroCache.getHitCount();
+        long missesBefore = macroCache.getMissCount();
+        
+        List<Callable<Boolean>> tasks = new ArrayList<>(files.length);
         for (File file : files) {
-            try {
-                String macroName = file.getName().replace(".txt", "");
-                Macro macro = MacroParser.parse(file);
-                macros.put(macroName, macro);
-                getLogger().info("[Baritone任务] 已加载宏: {}", macroName);
-            } catch (Exception e) {
-                getLogger().error("[Baritone任务] 加载宏文件失败: " + file.getName(), e);
+            tasks.add(() -> loadMacroFile(file));
+        }
+        
+        int loaded = 0;
+        try {
+            for (Future<Boolean> future : loadPool.invokeAll(tasks)) {
+                if (future.get()) {
+                    loaded++;
+                }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            getLogger().error("[Baritone任务] 加载宏文件时出错", e);
         }
+        
+        long elapsedMs = (System.nanoTime() - startTime) / 1_000_000;
+        getLogger().info("[Baritone任务] 已加载 {}/{} 个宏文件，耗时 {} ms（并行度 {}）",
+            loaded, files.length, elapsedMs, loadPool.getParallelism());
+        getLogger().info("[Baritone任务] 宏缓存命中 {} 个，未命中 {} 个（累计命中 {}，未命中 {}）",
+            macroCache.getHitCount() - hitsBefore, macroCache.getMissCount() - missesBefore,
+            macroCache.getHitCount(), macroCache.getMissCount());
+    }
+    
+    /**
+     * 加载单个宏文件并发布到 macros
+     * @return 是否加载成功
+     */
+    private boolean loadMacroFile(File file) {
+        try {
+            String macroName = file.getName().replace(".txt", "");
+            reloadMacroFile(file);
+            getLogger().info("[Baritone任务] 已加载宏: {}", macroName);
+            return true;
+        } catch (Exception e) {
+            getLogger().error("[Baritone任务] 加载宏文件失败: " + file.getName(), e);
+            return false;
+        }
+    }
+    
+    /**
+     * 读取宏文件并在内容变化时重新加载
+     * 内容哈希与当前已加载的版本相同时跳过解析
+     * @return 是否重新解析了宏（false 表示内容未变化）
+     */
+    private boolean reloadMacroFile(File file) throws IOException {
+        String macroName = file.getName().replace(".txt", "");
+        long lastModified = file.lastModified();
+        long length = file.length();
+        byte[] hash = MacroCache.contentHash(file.toPath());
+        
+        LoadedFile previous = loadedFiles.get(macroName);
+        boolean unchanged = previous != null && Arrays.equals(previous.hash, hash) && macros.containsKey(macroName);
+        if (!unchanged) {
+            macros.put(macroName, macroCache.load(file, hash, macros.get(macroName)));
+        }
+        loadedFiles.put(macroName, new LoadedFile(hash, lastModified, length));
+        return !unchanged;
+    }
+    
+    /**
+     * 获取宏缓存命中次数
+     */
+    public long getCacheHitCount() {
+        return macroCache != null ? macroCache.getHitCount() : 0;
+    }
+    
+    /**
+     * 获取宏缓存未命中次数
+     */
+    public long getCacheMissCount() {
+        return macroCache != null ? macroCache.getMissCount() : 0;
     }
     
     /**
@@ -173,50 +305,7 @@ public class BaritoneTaskManager {
                 StandardWatchEventKinds.ENTRY_MODIFY,
                 StandardWatchEventKinds.ENTRY_DELETE);
             
-            watchThread = new Thread(() -> {
-                try {
-                    while (isInitialized) {
-                        WatchKey key = watchService.take();
-                        for (WatchEvent<?> event : key.pollEvents()) {
-                            WatchEvent.Kind<?> kind = event.kind();
-                            if (kind == StandardWatchEventKinds.OVERFLOW) {
-                                continue;
-                            }
-                            
-                            @SuppressWarnings("unchecked")
-                            WatchEvent<Path> ev = (WatchEvent<Path>) event;
-                            Path fileName = ev.context();
-                            
-                            if (fileName.toString().endsWith(".txt")) {
-                                String macroName = fileName.toString().replace(".txt", "");
-                                
-                                if (kind == StandardWatchEventKinds.ENTRY_DELETE) {
-                                    macros.remove(macroName);
-                                    stopMacro(macroName);
-                                    getLogger().info("[Baritone任务] 已删除宏: {}", macroName);
-                                } else {
-                                    // 重新加载宏
-                                    File file = new File(macroFolder, fileName.toString());
-                                    if (file.exists()) {
-                                        try {
-                                            Macro macro = MacroParser.parse(file);
-                                            macros.put(macroName, macro);
-                                            getLogger().info("[Baritone任务] 已重新加载宏: {}", macroName);
-                                        } catch (Exception e) {
-                                            getLogger().error("[Baritone任务] 重新加载宏失败: " + macroName, e);
-                                        }
-                                    }
-                                }
-                            }
-                        }
-                        key.reset();
-                    }
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                } catch (Exception e) {
-                    getLogger().error("[Baritone任务] 文件监听器错误", e);
-                }
-            }, "BaritoneMacroWatcher");
+            watchThread = new Thread(this::runFileWatcher, "BaritoneMacroWatcher");
             watchThread.setDaemon(true);
             watchThread.start();
             
@@ -225,6 +314,114 @@ public class BaritoneTaskManager {
         }
     }
     
+    /**
+     * 文件监听循环
+     * 编辑器保存一次文件通常会产生多个事件，同一文件的事件在防抖窗口内合并，
+     * 窗口内没有新事件后才处理；事件溢出（OVERFLOW）时增量扫描文件夹找出变化的文件
+     */
+    private void runFileWatcher() {
+        Map<String, Long> pendingChanges = new HashMap<>(); // 文件名 -> 处理截止时间（纳秒）
+        long debounceNanos = TimeUnit.MILLISECONDS.toNanos(MacroSettings.RELOAD_DEBOUNCE_MS);
+        try {
+            while (isInitialized) {
+                WatchKey key;
+                if (pendingChanges.isEmpty()) {
+                    key = watchService.take();
+                } else {
+                    long nextDeadline = Collections.min(pendingChanges.values());
+                    key = watchService.poll(Math.max(0, nextDeadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                }
+                
+                if (key != null) {
+                    long deadline = System.nanoTime() + debounceNanos;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            getLogger().warn("[Baritone任务] 文件监听事件溢出，重新扫描宏文件夹");
+                            for (String fileName : findChangedMacroFiles()) {
+                                pendingChanges.put(fileName, deadline);
+                            }
+                            continue;
+                        }
+                        
+                        String fileName = event.context().toString();
+                        if (fileName.endsWith(".txt")) {
+                            pendingChanges.put(fileName, deadline);
+                        }
+                    }
+                    key.reset();
+                }
+                
+                long now = System.nanoTime();
+                Iterator<Map.Entry<String, Long>> it = pendingChanges.entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry<String, Long> entry = it.next();
+                    if (entry.getValue() - now <= 0) {
+                        it.remove();
+                        applyFileChange(entry.getKey());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // 任务管理器已关闭
+        } catch (Exception e) {
+            getLogger().error("[Baritone任务] 文件监听器错误", e);
+        }
+    }
+    
+    /**
+     * 处理一个宏文件的变化（防抖窗口结束后调用）
+     */
+    private void applyFileChange(String fileName) {
+        String macroName = fileName.replace(".txt", "");
+        File file = new File(macroFolder, fileName);
+        
+        if (!file.exists()) {
+            macros.remove(macroName);
+            loadedFiles.remove(macroName);
+            macroCache.invalidate(macroName);
+            stopMacro(macroName);
+            getLogger().info("[Baritone任务] 已删除宏: {}", macroName);
+            return;
+        }
+        
+        try {
+            if (reloadMacroFile(file)) {
+                getLogger().info("[Baritone任务] 已重新加载宏: {}", macroName);
+            } else {
+                getLogger().debug("[Baritone任务] 宏文件内容未变化，跳过重新加载: {}", macroName);
+            }
+        } catch (Exception e) {
+            getLogger().error("[Baritone任务] 重新加载宏失败: " + macroName, e);
+        }
+    }
+    
+    /**
+     * 扫描宏文件夹，找出修改时间或大小与已加载状态不同的文件，以及已被删除的文件
+     */
+    private List<String> findChangedMacroFiles() {
+        List<String> changed = new ArrayList<>();
+        Set<String> present = new HashSet<>();
+        File[] files = macroFolder.listFiles((dir, name) -> name.endsWith(".txt"));
+        if (files != null) {
+            for (File file : files) {
+                String macroName = file.getName().replace(".txt", "");
+                present.add(macroName);
+                LoadedFile state = loadedFiles.get(macroName);
+                if (state == null || state.lastModified != file.lastModified() || state.length != file.length()) {
+                    changed.add(file.getName());
+                }
+            }
+        }
+        for (String macroName : loadedFiles.keySet()) {
+            if (!present.contains(macroName)) {
+                changed.add(macroName + ".txt");
+            }
+        }
+        return changed;
+    }
+    
     /**
      * 启动宏
      * @param macroName 宏名称
@@ -245,7 +442,11 @@ public class BaritoneTaskManager {
         MacroExecutor executor = new MacroExecutor(macroName, macro);
         runningExecutors.put(macroName, executor);
         
-        executorService.submit(executor);
+        if (MacroSettings.TICK_SCHEDULER) {
+            executor.startOn(scheduler);
+        } else {
+            executorService.submit(executor);
+        }
         getLogger().info("[Baritone任务] 已启动宏: {}", macroName);
     }
     
@@ -262,11 +463,13 @@ public class BaritoneTaskManager {
     
     /**
      * 从运行列表中移除宏（由 MacroExecutor 在完成时调用）
+     * 按对象移除：停止后的执行器可能在同名宏重新启动之后才结束（tick 调度模式下在下一个 tick），
+     * 这时运行列表中已经是新的执行器，不能把它移除
+     * @param executor 结束的执行器
      */
-    public void removeRunningMacro(String macroName) {
-        MacroExecutor executor = runningExecutors.remove(macroName);
-        macroCurrentCommands.remove(macroName);
-        if (executor != null) {
+    public void removeRunningMacro(String macroName, MacroExecutor executor) {
+        if (runningExecutors.remove(macroName, executor)) {
+            macroCurrentCommands.remove(macroName);
             getLogger().info("[Baritone任务] 宏执行完成，已从运行列表移除: {}", macroName);
         }
     }
@@ -403,48 +606,40 @@ public class BaritoneTaskManager {
         }
         
         executorService.shutdown();
+        loadPool.shutdown();
         getLogger().info("[Baritone任务] 任务管理器已关闭");
     }
     
     /**
      * 获取当前游戏时间（刻）
-     * 返回服务器世界时间，不是客户端本地时间
+     * 返回服务器世界时间，不是客户端本地时间；读取最近一次 tick 的快照
      */
     public static long getCurrentTime() {
-        if (!VersionProvider.isInitialized()) {
-            return 0;
-        }
-        
-        IMinecraftVersion version = VersionProvider.getVersion();
-        IWorldTimeProvider worldTimeProvider = version.getWorldTimeProvider();
-        
-        if (!worldTimeProvider.isWorldPresent()) {
-            return 0;
-        }
-        
-        long dayTime = worldTimeProvider.getDayTime();
-        version.getLogger().debug("[时间检查] 一天内时间={}", dayTime);
-        
-        return dayTime;
+        return getInstance().getSnapshot().dayTime;
     }
     
     /**
-     * 获取玩家当前位置
+     * 获取玩家当前位置（读取最近一次 tick 的快照）
      * @return 玩家位置 [x, y, z]，如果玩家不存在返回 null
      */
     public static int[] getPlayerPosition() {
-        if (!VersionProvider.isInitialized()) {
-            return null;
-        }
-        
-        IMinecraftVersion version = VersionProvider.getVersion();
-        IPlayerProvider playerProvider = version.getPlayerProvider();
+        return getInstance().getSnapshot().positionArray();
+    }
+    
+    /**
+     * 已加载宏文件的状态
+     * 修改时间和大小用于溢出后的快速扫描，内容哈希用于判断是否需要重新解析
+     */
+    private static final class LoadedFile {
+        final byte[] hash;
+        final long lastModified;
+        final long length;
         
-        if (!playerProvider.isPlayerPresent()) {
-            return null;
+        LoadedFile(byte[] hash, long lastModified, long length) {
+            this.hash = hash;
+            this.lastModified = lastModified;
+            this.length = length;
         }
-        
-        return playerProvider.getPlayerPosition();
     }
 }
 
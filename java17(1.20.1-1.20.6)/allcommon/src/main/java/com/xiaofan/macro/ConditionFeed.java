@@ -0,0 +1,85 @@
+package com.xiaofan.macro;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * if 条件订阅
+ * 条件响应模式下，循环执行的宏在一轮结束后不再定时重新执行，而是订阅本轮顶层 if 条件的结果，
+ * 任一条件的真假发生变化时才继续下一轮
+ *
+ * 每个客户端 tick 用当前的世界状态快照对所有订阅求值；
+ * 没有订阅时什么也不做。订阅在第一次变化时通知并自动取消
+ */
+class ConditionFeed {
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 订阅条件变化
+     * @param baseline 本轮各条件的判断结果
+     * @param onChange 任一条件结果与 baseline 不同时调用（在客户端线程上，只调用一次）
+     */
+    Subscription subscribe(Map<IfStatement, Boolean> baseline, Runnable onChange) {
+        Subscription subscription = new Subscription(this, new LinkedHashMap<>(baseline), onChange);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * 对所有订阅求值，由客户端 tick 调用（玩家和世界存在时）
+     */
+    void tick(WorldSnapshot snapshot) {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+
+        long dayTime = snapshot.dayTime;
+        long pos = snapshot.position;
+
+        for (Subscription subscription : subscriptions) {
+            if (subscription.changed(dayTime, pos) && subscriptions.remove(subscription)) {
+                subscription.onChange.run();
+            }
+        }
+    }
+
+    /**
+     * 当前订阅数量
+     */
+    int getSubscriptionCount() {
+        return subscriptions.size();
+    }
+
+    /**
+     * 一次订阅
+     */
+    static final class Subscription {
+        private final ConditionFeed feed;
+        private final Map<IfStatement, Boolean> baseline;
+        private final Runnable onChange;
+
+        private Subscription(ConditionFeed feed, Map<IfStatement, Boolean> baseline, Runnable onChange) {
+            this.feed = feed;
+            this.baseline = baseline;
+            this.onChange = onChange;
+        }
+
+        private boolean changed(long dayTime, long pos) {
+            for (Map.Entry<IfStatement, Boolean> entry : baseline.entrySet()) {
+                if (entry.getKey().test(dayTime, pos) != entry.getValue()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * 取消订阅
+         */
+        void cancel() {
+            feed.subscriptions.remove(this);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.xiaofan.macro;
+
+import com.xiaofan.api.IItemRegistry;
+import com.xiaofan.api.ItemClassification;
+import com.xiaofan.api.ItemInfo;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 背包索引
+ * 按物品名称（小写）和物品标签汇总数量，并记录是否为工具及工具材料（来自物品注册表的分类表）。
+ * 在采集世界状态快照时构建，背包槽位没有变化时沿用上一个索引，
+ * check 物品条件只需一次哈希查找，不再每次遍历所有槽位
+ */
+final class InventoryIndex {
+    static final InventoryIndex EMPTY = new InventoryIndex(Collections.emptyMap(), Collections.emptyMap());
+
+    private final Map<String, Entry> entries;
+    private final Map<String, Integer> tagCounts;
+
+    private InventoryIndex(Map<String, Entry> entries, Map<String, Integer> tagCounts) {
+        this.entries = entries;
+        this.tagCounts = tagCounts;
+    }
+
+    /**
+     * 根据各槽位的物品构建索引
+     * @param inventory 按槽位的物品，空槽位为 null
+     */
+    static InventoryIndex build(ItemInfo[] inventory, IItemRegistry itemRegistry) {
+        Map<String, Entry> entries = new HashMap<>();
+        Map<String, Integer> tagCounts = new HashMap<>();
+        for (ItemInfo itemInfo : inventory) {
+            if (itemInfo == null) {
+                continue;
+            }
+            String name = itemInfo.getItemName().toLowerCase();
+            Entry entry = entries.get(name);
+            if (entry == null) {
+                ItemClassification classification = itemRegistry.getClassification(itemInfo);
+                entry = new Entry(itemInfo.getItemName(), classification);
+                entries.put(name, entry);
+            }
+            entry.count += itemInfo.getCount();
+            for (String tag : entry.tags) {
+                tagCounts.merge(tag, itemInfo.getCount(), Integer::sum);
+            }
+        }
+        return entries.isEmpty() ? EMPTY : new InventoryIndex(entries, tagCounts);
+    }
+
+    /**
+     * 按名称（小写）查找
+     * @return 物品汇总，背包中没有时返回 null
+     */
+    Entry get(String nameLower) {
+        return entries.get(nameLower);
+    }
+
+    /**
+     * 带有指定标签的物品总数
+     * @param tag 标签（如 "minecraft:logs"）
+     */
+    int countTag(String tag) {
+        return tagCounts.getOrDefault(tag, 0);
+    }
+
+    /**
+     * 所有物品汇总（用于工具的模糊匹配）
+     */
+    Collection<Entry> entries() {
+        return entries.values();
+    }
+
+    /**
+     * 同一种物品在背包中的汇总
+     */
+    static final class Entry {
+        final String name;      // 物品名称（原始大小写）
+        final boolean tool;
+        final String material;  // 工具材料，非工具为 null
+        final Set<String> tags;
+        int count;              // 只在构建时累加
+
+        private Entry(String name, ItemClassification classification) {
+            this.name = name;
+            this.tool = classification.isTool();
+            this.material = tool ? classification.getMaterial() : null;
+            this.tags = classification.getTags();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.xiaofan.macro;
+
+import java.util.List;
+
+/**
+ * 宏文件块结构索引
+ * 用一次栈扫描为每个 if / fun / fan_main: 预先计算匹配位置，
+ * 解析器据此直接定位分支和函数体，每行只访问常数次，嵌套深度不受调用栈限制
+ */
+final class MacroBlockIndex {
+    /**
+     * if 行：匹配的 end 行下标；若缺少 end，则为关闭它的 fun / fan_main: 行下标或行数
+     * fun / fan_main: 行：块结束位置（下一个 fun / fan_main: 行下标或行数）
+     * 其他行：-1
+     */
+    final int[] endAt;
+
+    /**
+     * if 行：同层第一个 else 行下标，没有 else 时为 -1
+     */
+    final int[] elseAt;
+
+    /**
+     * if 行：是否缺少 end
+     */
+    final boolean[] unterminated;
+
+    private MacroBlockIndex(int size) {
+        endAt = new int[size];
+        elseAt = new int[size];
+        unterminated = new boolean[size];
+    }
+
+    /**
+     * 构建块结构索引
+     */
+    static MacroBlockIndex build(List<MacroLexer.Line> lines) {
+        int size = lines.size();
+        MacroBlockIndex index = new MacroBlockIndex(size);
+        int[] stack = new int[16];
+        int depth = 0;
+        int openBlock = -1; // 当前未关闭的 fun / fan_main: 行
+
+        for (int i = 0; i < size; i++) {
+            index.endAt[i] = -1;
+            index.elseAt[i] = -1;
+            switch (lines.get(i).kind) {
+                case IF:
+                    if (depth == stack.length) {
+                        int[] grown = new int[stack.length * 2];
+                        System.arraycopy(stack, 0, grown, 0, depth);
+                        stack = grown;
+                    }
+                    stack[depth++] = i;
+                    break;
+                case ELSE:
+                    if (depth > 0 && index.elseAt[stack[depth - 1]] < 0) {
+                        index.elseAt[stack[depth - 1]] = i;
+                    }
+                    break;
+                case END:
+                    if (depth > 0) {
+                        index.endAt[stack[--depth]] = i;
+                    }
+                    break;
+                case MAIN:
+                case FUN:
+                    // if 不能跨越函数边界，未关闭的 if 在这里结束
+                    while (depth > 0) {
+                        int open = stack[--depth];
+                        index.endAt[open] = i;
+                        index.unterminated[open] = true;
+                    }
+                    if (openBlock >= 0) {
+                        index.endAt[openBlock] = i;
+                    }
+                    openBlock = i;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        while (depth > 0) {
+            int open = stack[--depth];
+            index.endAt[open] = size;
+            index.unterminated[open] = true;
+        }
+        if (openBlock >= 0) {
+            index.endAt[openBlock] = size;
+        }
+        return index;
+    }
+}
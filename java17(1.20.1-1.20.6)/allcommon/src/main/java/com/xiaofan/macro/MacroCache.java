@@ -0,0 +1,418 @@
+package com.xiaofan.macro;
+
+import com.xiaofan.BlockSearch;
+import com.xiaofan.api.ILogger;
+import com.xiaofan.api.VersionProvider;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 已解析宏的持久化缓存
+ * 每个宏文件对应 .cache 目录下的一个二进制文件，保存解析后的语法树和源文件内容哈希，
+ * 启动时源文件未变化则直接从缓存还原，跳过解析
+ *
+ * 缓存文件格式：
+ * [MAGIC][FORMAT_VERSION][MacroParser.GRAMMAR_VERSION][内容哈希 32 字节][语法树和块指纹]
+ * 格式或解析器版本不一致时缓存自动失效
+ */
+class MacroCache {
+    static final String CACHE_FOLDER_NAME = ".cache";
+    private static final String CACHE_SUFFIX = ".bin";
+    private static final int MAGIC = 0x464D4331; // "FMC1"
+    private static final int FORMAT_VERSION = 4;
+    private static final int HASH_LENGTH = 32;
+
+    // 命令标签
+    private static final byte TAG_DO = 1;
+    private static final byte TAG_WAIT = 2;
+    private static final byte TAG_CHECK = 3;
+    private static final byte TAG_RUN = 4;
+    private static final byte TAG_IF = 5;
+
+    private final File cacheFolder;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    MacroCache(File macroFolder) {
+        this.cacheFolder = new File(macroFolder, CACHE_FOLDER_NAME);
+    }
+
+    private static ILogger getLogger() {
+        return VersionProvider.getVersion().getLogger();
+    }
+
+    /**
+     * 加载宏：源文件内容未变化时从缓存读取，否则重新解析并写入缓存
+     */
+    Macro load(File file) throws IOException {
+        return load(file, contentHash(file.toPath()), null);
+    }
+
+    /**
+     * 加载宏（已计算内容哈希）
+     * 缓存未命中时边读边解析，文件内容不会整个读入内存
+     * @param hash 源文件内容哈希，见 contentHash
+     * @param previous 同一文件上一次的解析结果，缓存未命中时用于增量解析，可为 null
+     */
+    Macro load(File file, byte[] hash, Macro previous) throws IOException {
+        String macroName = file.getName().replace(".txt", "");
+        File cacheFile = getCacheFile(macroName);
+        Macro cached = read(cacheFile, hash);
+        if (cached != null) {
+            cached.name = macroName;
+            hits.incrementAndGet();
+            getLogger().debug("[宏缓存] 命中: {}", macroName);
+            return cached;
+        }
+
+        misses.incrementAndGet();
+        // 解析时同时计算哈希：文件在计算哈希之后又被修改时，缓存按实际解析的内容保存
+        MessageDigest digest = newDigest();
+        Macro macro;
+        try (Reader reader = new InputStreamReader(
+                new DigestInputStream(Files.newInputStream(file.toPath()), digest), StandardCharsets.UTF_8)) {
+            macro = MacroParser.parse(macroName, reader, previous);
+        }
+        write(cacheFile, digest.digest(), macro);
+        return macro;
+    }
+
+    /**
+     * 删除宏对应的缓存文件
+     */
+    void invalidate(String macroName) {
+        File cacheFile = getCacheFile(macroName);
+        if (cacheFile.exists() && !cacheFile.delete()) {
+            getLogger().warn("[宏缓存] 删除缓存文件失败: {}", cacheFile.getName());
+        }
+    }
+
+    long getHitCount() {
+        return hits.get();
+    }
+
+    long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * 计算文件内容哈希（SHA-256），按块读取，不把整个文件读入内存
+     */
+    static byte[] contentHash(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[8192];
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+            }
+        }
+        return digest.digest();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 不可用", e);
+        }
+    }
+
+    private File getCacheFile(String macroName) {
+        return new File(cacheFolder, macroName + CACHE_SUFFIX);
+    }
+
+    // ==================== 读取 ====================
+
+    private Macro read(File cacheFile, byte[] expectedHash) {
+        if (!cacheFile.isFile()) {
+            return null;
+        }
+        // 整个读入堆内存，不使用内存映射：Windows 上存在映射的文件在 GC 解除映射前不能被替换或删除，
+        // 之后热重载写入缓存和 invalidate 都会失败
+        try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // 读满为止
+            }
+            buffer.flip();
+
+            if (buffer.remaining() < 12 + HASH_LENGTH
+                    || buffer.getInt() != MAGIC
+                    || buffer.getInt() != FORMAT_VERSION
+                    || buffer.getInt() != MacroParser.GRAMMAR_VERSION) {
+                return null;
+            }
+            byte[] hash = new byte[HASH_LENGTH];
+            buffer.get(hash);
+            if (!Arrays.equals(hash, expectedHash)) {
+                return null;
+            }
+            return readMacro(buffer);
+        } catch (Exception | StackOverflowError e) {
+            getLogger().warn("[宏缓存] 读取缓存失败，将重新解析: {} ({})", cacheFile.getName(), e.toString());
+            return null;
+        }
+    }
+
+    private static Macro readMacro(ByteBuffer in) {
+        Macro macro = new Macro();
+        macro.name = readString(in);
+        macro.commands = readCommands(in);
+        macro.mainFingerprint = in.getLong();
+        int functionCount = in.getInt();
+        for (int i = 0; i < functionCount; i++) {
+            Function func = new Function();
+            func.name = readString(in);
+            func.isBackground = in.get() != 0;
+            func.startIndex = in.getInt();
+            func.endIndex = in.getInt();
+            if (in.get() != 0) {
+                func.pendingBody = readLines(in);
+            } else {
+                func.commands = readCommands(in);
+            }
+            macro.functions.put(func.name, func);
+        }
+        int fingerprintCount = in.getInt();
+        for (int i = 0; i < fingerprintCount; i++) {
+            macro.functionFingerprints.put(readString(in), in.getLong());
+        }
+        return macro;
+    }
+
+    private static List<MacroCommand> readCommands(ByteBuffer in) {
+        int count = in.getInt();
+        List<MacroCommand> commands = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            commands.add(readCommand(in));
+        }
+        return commands;
+    }
+
+    private static MacroCommand readCommand(ByteBuffer in) {
+        byte tag = in.get();
+        switch (tag) {
+            case TAG_DO: {
+                DoCommand cmd = new DoCommand();
+                cmd.content = readString(in);
+                return cmd;
+            }
+            case TAG_WAIT: {
+                WaitCommand cmd = new WaitCommand();
+                cmd.content = readString(in);
+                return cmd;
+            }
+            case TAG_CHECK: {
+                CheckCommand cmd = new CheckCommand();
+                cmd.type = readEnum(in, CheckCommand.Type.values());
+                cmd.action = readString(in);
+                cmd.itemName = readString(in);
+                cmd.itemType = readString(in);
+                cmd.quantity = in.get() != 0 ? in.getInt() : null;
+                cmd.x = in.getInt();
+                cmd.y = in.getInt();
+                cmd.z = in.getInt();
+                cmd.time = in.getLong();
+                return cmd;
+            }
+            case TAG_RUN: {
+                RunCommand cmd = new RunCommand();
+                cmd.macroName = readString(in);
+                return cmd;
+            }
+            case TAG_IF: {
+                IfStatement stmt = new IfStatement();
+                stmt.type = readEnum(in, IfStatement.Type.values());
+                stmt.x = in.getInt();
+                stmt.y = in.getInt();
+                stmt.z = in.getInt();
+                stmt.time = in.getLong();
+                stmt.timeComparison = readEnum(in, IfStatement.TimeComparison.values());
+                stmt.blockName = readString(in);
+                stmt.radius = in.getInt();
+                if (stmt.blockName != null) {
+                    // 条件对象不能序列化，按方块名称重新取得（byName 对同一名称返回同一对象）
+                    stmt.blockFilter = BlockSearch.getInstance().byName(stmt.blockName);
+                }
+                stmt.ifCommands = readCommands(in);
+                stmt.elseCommands = readCommands(in);
+                return stmt;
+            }
+            default:
+                throw new IllegalStateException("未知的命令标签: " + tag);
+        }
+    }
+
+    private static List<MacroLexer.Line> readLines(ByteBuffer in) {
+        int count = in.getInt();
+        List<MacroLexer.Line> lines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int lineNumber = in.getInt();
+            String text = readString(in);
+            lines.add(new MacroLexer.Line(MacroLexer.classify(text), text, lineNumber));
+        }
+        return lines;
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static <E extends Enum<E>> E readEnum(ByteBuffer in, E[] values) {
+        int ordinal = in.get();
+        return ordinal < 0 ? null : values[ordinal];
+    }
+
+    // ==================== 写入 ====================
+
+    private void write(File cacheFile, byte[] hash, Macro macro) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(MacroParser.GRAMMAR_VERSION);
+            out.write(hash);
+            writeMacro(out, macro);
+            out.flush();
+
+            if (!cacheFolder.exists() && !cacheFolder.mkdirs()) {
+                return;
+            }
+            // 先写临时文件再替换，避免其他线程读到写了一半的缓存
+            Path tmp = Files.createTempFile(cacheFolder.toPath(), cacheFile.getName(), ".tmp");
+            try {
+                Files.write(tmp, bytes.toByteArray());
+                Files.move(tmp, cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (Exception | StackOverflowError e) {
+            getLogger().warn("[宏缓存] 写入缓存失败: {} ({})", cacheFile.getName(), e.toString());
+        }
+    }
+
+    private static void writeMacro(DataOutputStream out, Macro macro) throws IOException {
+        writeString(out, macro.name);
+        writeCommands(out, macro.commands);
+        out.writeLong(macro.mainFingerprint);
+        out.writeInt(macro.functions.size());
+        for (Function func : macro.functions.values()) {
+            writeString(out, func.name);
+            out.writeByte(func.isBackground ? 1 : 0);
+            out.writeInt(func.startIndex);
+            out.writeInt(func.endIndex);
+            // 尚未解析的延迟函数体保存源码行，从缓存还原后仍保持延迟解析
+            List<MacroLexer.Line> pendingBody = func.pendingBody;
+            out.writeByte(pendingBody != null ? 1 : 0);
+            if (pendingBody != null) {
+                writeLines(out, pendingBody);
+            } else {
+                writeCommands(out, func.commands);
+            }
+        }
+        out.writeInt(macro.functionFingerprints.size());
+        for (Map.Entry<String, Long> entry : macro.functionFingerprints.entrySet()) {
+            writeString(out, entry.getKey());
+            out.writeLong(entry.getValue());
+        }
+    }
+
+    private static void writeCommands(DataOutputStream out, List<MacroCommand> commands) throws IOException {
+        out.writeInt(commands.size());
+        for (MacroCommand cmd : commands) {
+            writeCommand(out, cmd);
+        }
+    }
+
+    private static void writeCommand(DataOutputStream out, MacroCommand command) throws IOException {
+        if (command instanceof DoCommand cmd) {
+            out.writeByte(TAG_DO);
+            writeString(out, cmd.content);
+        } else if (command instanceof WaitCommand cmd) {
+            out.writeByte(TAG_WAIT);
+            writeString(out, cmd.content);
+        } else if (command instanceof CheckCommand cmd) {
+            out.writeByte(TAG_CHECK);
+            writeEnum(out, cmd.type);
+            writeString(out, cmd.action);
+            writeString(out, cmd.itemName);
+            writeString(out, cmd.itemType);
+            out.writeByte(cmd.quantity != null ? 1 : 0);
+            if (cmd.quantity != null) {
+                out.writeInt(cmd.quantity);
+            }
+            out.writeInt(cmd.x);
+            out.writeInt(cmd.y);
+            out.writeInt(cmd.z);
+            out.writeLong(cmd.time);
+        } else if (command instanceof RunCommand cmd) {
+            out.writeByte(TAG_RUN);
+            writeString(out, cmd.macroName);
+        } else if (command instanceof IfStatement stmt) {
+            out.writeByte(TAG_IF);
+            writeEnum(out, stmt.type);
+            out.writeInt(stmt.x);
+            out.writeInt(stmt.y);
+            out.writeInt(stmt.z);
+            out.writeLong(stmt.time);
+            writeEnum(out, stmt.timeComparison);
+            writeString(out, stmt.blockName);
+            out.writeInt(stmt.radius);
+            writeCommands(out, stmt.ifCommands);
+            writeCommands(out, stmt.elseCommands);
+        } else {
+            throw new IOException("无法缓存的命令类型: " + command.getClass().getSimpleName());
+        }
+    }
+
+    private static void writeLines(DataOutputStream out, List<MacroLexer.Line> lines) throws IOException {
+        out.writeInt(lines.size());
+        for (MacroLexer.Line line : lines) {
+            out.writeInt(line.lineNumber);
+            writeString(out, line.text);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeEnum(DataOutputStream out, Enum<?> value) throws IOException {
+        out.writeByte(value == null ? -1 : value.ordinal());
+    }
+}
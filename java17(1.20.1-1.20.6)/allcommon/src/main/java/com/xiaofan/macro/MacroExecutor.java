@@ -1,12 +1,21 @@
 package com.xiaofan.macro;
 
+import com.xiaofan.BlockSearch;
+import com.xiaofan.TimerWheel;
 import com.xiaofan.api.*;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.regex.Pattern;
-import java.util.regex.Matcher;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * 宏执行器
@@ -15,9 +24,12 @@ import java.util.regex.Matcher;
  * 此代码已迁移到 allcommon，使用抽象接口，可在 1.20.1-1.20.6 版本间复用
  */
 public class MacroExecutor implements Runnable {
+    private static final long BLOCK_SEARCH_TIMEOUT_SECONDS = 5; // 等待 block near 方块搜索的最长时间
+    
     private final String macroName;
     private final Macro macro;
     private final AtomicBoolean stopped = new AtomicBoolean(false);
+    private final Set<Runnable> stopListeners = ConcurrentHashMap.newKeySet(); // stop() 时调用，唤醒等待中的线程和 Fiber
     
     public MacroExecutor(String macroName, Macro macro) {
         this.macroName = macroName;
@@ -43,11 +55,37 @@ public class MacroExecutor implements Runnable {
             logToChatAndLogger("[宏执行] 执行宏时出错: " + macroName + " - " + e.getMessage());
             getLogger().error("[宏执行] 执行宏时出错: " + macroName, e);
         } finally {
-            logToChatAndLogger("[宏执行] 宏执行结束: " + macroName);
-            getLogger().info("[宏执行] 宏执行结束: {}", macroName);
-            
-            BaritoneTaskManager.getInstance().removeRunningMacro(macroName);
+            finish();
+        }
+    }
+    
+    /**
+     * 在协作式调度器上启动（tick 调度模式），不占用线程
+     */
+    void startOn(MacroScheduler scheduler) {
+        logToChatAndLogger("[宏执行] 开始执行宏: " + macroName);
+        getLogger().info("[宏执行] 开始执行宏: {}", macroName);
+        
+        if (!announceMacro(macro)) {
+            finish();
+            return;
         }
+        boolean loop = hasConditional(macro.commands);
+        if (loop) {
+            logToChatAndLogger("[宏执行] 宏包含条件语句，将循环执行");
+            getLogger().info("[宏执行] 宏包含条件语句，将循环执行");
+        }
+        scheduler.startMacro(this, macro.commands, loop);
+    }
+    
+    /**
+     * 宏执行结束，从运行列表中移除
+     */
+    void finish() {
+        logToChatAndLogger("[宏执行] 宏执行结束: " + macroName);
+        getLogger().info("[宏执行] 宏执行结束: {}", macroName);
+        
+        BaritoneTaskManager.getInstance().removeRunningMacro(macroName, this);
     }
     
     /**
@@ -63,48 +101,34 @@ public class MacroExecutor implements Runnable {
      * 执行宏
      */
     private void executeMacro(Macro macro) {
-        String macroInfo = String.format("[宏执行] 宏包含 %d 个命令", macro.commands.size());
-        logToChatAndLogger(macroInfo);
-        getLogger().info("[宏执行] 宏包含 {} 个命令", macro.commands.size());
-        
-        if (macro.commands.isEmpty()) {
-            logToChatAndLogger("[宏执行] 宏文件没有解析出任何命令，请检查宏文件格式");
-            getLogger().warn("[宏执行] 宏文件没有解析出任何命令，请检查宏文件格式");
+        if (!announceMacro(macro)) {
             return;
         }
         
-        boolean hasConditional = macro.commands.stream()
-            .anyMatch(cmd -> cmd instanceof IfStatement);
-        
-        if (hasConditional) {
+        if (hasConditional(macro.commands)) {
             logToChatAndLogger("[宏执行] 宏包含条件语句，将循环执行");
             getLogger().info("[宏执行] 宏包含条件语句，将循环执行");
+            Map<IfStatement, Boolean> conditions = new LinkedHashMap<>();
             while (!stopped.get()) {
+                conditions.clear();
                 for (int i = 0; i < macro.commands.size(); i++) {
                     if (stopped.get()) {
                         getLogger().info("[宏执行] 宏已被停止，停止执行剩余命令");
                         return;
                     }
                     MacroCommand cmd = macro.commands.get(i);
-                    String cmdInfo = String.format("[宏执行] 执行第 %d 个命令: %s", i + 1, cmd.getClass().getSimpleName());
-                    logToChatAndLogger(cmdInfo);
-                    getLogger().info("[宏执行] 执行第 {} 个命令: {}", i + 1, cmd.getClass().getSimpleName());
+                    logCommand(i, cmd, true);
                     try {
-                        cmd.execute(this);
-                        if (cmd instanceof IfStatement) {
-                            try {
-                                Thread.sleep(100);
-                            } catch (InterruptedException e) {
-                                Thread.currentThread().interrupt();
-                                return;
-                            }
-                        }
+                        executeLoopedCommand(cmd, conditions);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
                     } catch (Exception e) {
                         getLogger().error("[宏执行] 执行命令时出错", e);
                     }
                 }
                 try {
-                    Thread.sleep(500);
+                    pauseAfterPass(conditions);
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
                     return;
@@ -117,7 +141,7 @@ public class MacroExecutor implements Runnable {
                     break;
                 }
                 MacroCommand cmd = macro.commands.get(i);
-                getLogger().info("[宏执行] 执行第 {} 个命令: {}", i + 1, cmd.getClass().getSimpleName());
+                logCommand(i, cmd, false);
                 try {
                     cmd.execute(this);
                 } catch (Exception e) {
@@ -128,92 +152,143 @@ public class MacroExecutor implements Runnable {
     }
     
     /**
-     * 执行 do 命令
+     * 输出宏的命令数量，宏为空时给出提示
+     * @return 宏是否包含命令
      */
-    public void executeDoCommand(String content) {
-        if (stopped.get()) {
-            return;
-        }
+    private boolean announceMacro(Macro macro) {
+        String macroInfo = String.format("[宏执行] 宏包含 %d 个命令", macro.commands.size());
+        logToChatAndLogger(macroInfo);
+        getLogger().info("[宏执行] 宏包含 {} 个命令", macro.commands.size());
         
-        if (content.startsWith("fun ")) {
-            String funcName = content.substring(4).trim();
-            if (funcName.startsWith("\"") && funcName.endsWith("\"")) {
-                funcName = funcName.substring(1, funcName.length() - 1);
-            } else if (funcName.endsWith("\"")) {
-                int quoteStart = funcName.indexOf("\"");
-                if (quoteStart >= 0) {
-                    funcName = funcName.substring(quoteStart + 1, funcName.length() - 1);
-                }
-            }
-            callFunction(funcName);
-            return;
+        if (macro.commands.isEmpty()) {
+            logToChatAndLogger("[宏执行] 宏文件没有解析出任何命令，请检查宏文件格式");
+            getLogger().warn("[宏执行] 宏文件没有解析出任何命令，请检查宏文件格式");
+            return false;
         }
-        
-        if (content.equals("end")) {
-            logToChatAndLogger("[宏执行] 执行 end 命令，停止当前执行上下文");
-            getLogger().info("[宏执行] 执行 end 命令，停止当前执行上下文");
-            stop();
-            return;
+        return true;
+    }
+    
+    /**
+     * 命令列表是否包含条件语句（包含时循环执行）
+     */
+    static boolean hasConditional(List<MacroCommand> commands) {
+        return commands.stream().anyMatch(cmd -> cmd instanceof IfStatement);
+    }
+    
+    /**
+     * 输出正在执行的顶层命令
+     */
+    void logCommand(int index, MacroCommand cmd, boolean toChat) {
+        if (toChat) {
+            logToChatAndLogger(String.format("[宏执行] 执行第 %d 个命令: %s", index + 1, cmd.getClass().getSimpleName()));
         }
-        
-        if (content.startsWith("wait")) {
-            String waitContent = content.substring(4).trim();
-            executeWaitCommand(waitContent);
+        getLogger().info("[宏执行] 执行第 {} 个命令: {}", index + 1, cmd.getClass().getSimpleName());
+    }
+    
+    /**
+     * 执行编译后的指令
+     */
+    void executeInstruction(MacroInstruction instruction) {
+        if (stopped.get()) {
             return;
         }
+        instruction.execute(this);
+    }
+    
+    /**
+     * 执行 end 命令
+     */
+    void executeEnd() {
+        logToChatAndLogger("[宏执行] 执行 end 命令，停止当前执行上下文");
+        getLogger().info("[宏执行] 执行 end 命令，停止当前执行上下文");
+        stop();
+    }
+    
+    /**
+     * 报告无法执行的指令
+     */
+    void reportInvalid(String message, boolean toChat) {
+        getLogger().warn(message);
+        if (toChat) {
+            logToChatAndLogger(message);
+        }
+    }
+    
+    /**
+     * 执行 Baritone 命令
+     * @param blocking 是否等待执行完成
+     * @param targetPos goto 命令的目标坐标，可为 null
+     */
+    void executeBaritoneCommand(String baritoneCmd, boolean blocking, int[] targetPos) {
+        IMinecraftVersion version = getVersion();
+        IBaritoneExecutor baritoneExecutor = version.getBaritoneExecutor();
         
-        if (content.startsWith("/")) {
-            String command = content.substring(1).trim();
-            executeMinecraftCommand(command);
+        if (!baritoneExecutor.isBaritoneLoaded()) {
+            getLogger().warn("[宏执行] Baritone 未加载，无法执行命令");
             return;
         }
         
-        if (content.startsWith("#")) {
-            String baritoneCmd = content.substring(1).trim();
-            IMinecraftVersion version = getVersion();
-            IBaritoneExecutor baritoneExecutor = version.getBaritoneExecutor();
-            
-            if (!baritoneExecutor.isBaritoneLoaded()) {
-                getLogger().warn("[宏执行] Baritone 未加载，无法执行命令");
-                return;
+        if (blocking) {
+            logToChatAndLogger("[宏执行] 检测到阻塞命令: " + baritoneCmd + "，将等待执行完成");
+            getLogger().info("[宏执行] 检测到阻塞命令: {}，将等待执行完成", baritoneCmd);
+            if (targetPos != null) {
+                getLogger().info("[宏执行] 解析到目标坐标: ({}, {}, {})", targetPos[0], targetPos[1], targetPos[2]);
             }
             
-            boolean isBlocking = baritoneExecutor.isBlockingCommand(baritoneCmd);
-            if (isBlocking) {
-                logToChatAndLogger("[宏执行] 检测到阻塞命令: " + baritoneCmd + "，将等待执行完成");
-                getLogger().info("[宏执行] 检测到阻塞命令: {}，将等待执行完成", baritoneCmd);
-                
-                int[] targetPos = null;
-                String cmd = baritoneCmd.trim().toLowerCase();
-                if (cmd.startsWith("goto ")) {
-                    String[] parts = baritoneCmd.trim().split("\\s+");
-                    if (parts.length >= 4) {
-                        try {
-                            int x = Integer.parseInt(parts[1]);
-                            int y = Integer.parseInt(parts[2]);
-                            int z = Integer.parseInt(parts[3]);
-                            targetPos = new int[]{x, y, z};
-                            getLogger().info("[宏执行] 解析到目标坐标: ({}, {}, {})", x, y, z);
-                        } catch (NumberFormatException e) {
-                            getLogger().warn("[宏执行] 无法解析 goto 命令的坐标: {}", baritoneCmd);
-                        }
-                    }
-                }
-                
+            // 宏停止时中断等待，执行器会取消正在执行的 Baritone 任务
+            Thread thread = Thread.currentThread();
+            Runnable interrupt = thread::interrupt;
+            addStopListener(interrupt);
+            try {
                 baritoneExecutor.executeBlockingCommand(baritoneCmd, targetPos);
-                BaritoneTaskManager.getInstance().clearMacroCommand(macroName);
-            } else {
-                baritoneExecutor.executeCommand(baritoneCmd);
+            } finally {
+                removeStopListener(interrupt);
             }
+            BaritoneTaskManager.getInstance().clearMacroCommand(macroName);
         } else {
-            getLogger().warn("[宏执行] 未知命令: {}", content);
+            BaritoneCommandResult result = baritoneExecutor.executeCommand(baritoneCmd);
+            if (!result.isSuccess()) {
+                getLogger().warn("[宏执行] Baritone 命令 {} 执行失败: {}", baritoneCmd, result);
+            }
+        }
+    }
+    
+    /**
+     * 异步执行阻塞的 Baritone 命令（tick 调度模式），不占用线程
+     * @param targetPos goto 命令的目标坐标（只用于日志），可为 null
+     * @return 命令启动的任务结束时完成
+     */
+    CompletableFuture<BaritoneResult> executeBaritoneAsync(String baritoneCmd, int[] targetPos) {
+        if (stopped.get()) {
+            return CompletableFuture.completedFuture(BaritoneResult.CANCELLED);
+        }
+        IBaritoneExecutor baritoneExecutor = getVersion().getBaritoneExecutor();
+        if (!baritoneExecutor.isBaritoneLoaded()) {
+            getLogger().warn("[宏执行] Baritone 未加载，无法执行命令");
+            return CompletableFuture.completedFuture(BaritoneResult.FAILED);
         }
+        
+        logToChatAndLogger("[宏执行] 检测到阻塞命令: " + baritoneCmd + "，将等待执行完成");
+        getLogger().info("[宏执行] 检测到阻塞命令: {}，将等待执行完成", baritoneCmd);
+        if (targetPos != null) {
+            getLogger().info("[宏执行] 解析到目标坐标: ({}, {}, {})", targetPos[0], targetPos[1], targetPos[2]);
+        }
+        
+        // 返回执行器的 future 本身而不是 whenComplete 的派生阶段，调用者取消时才能停止 Baritone
+        CompletableFuture<BaritoneResult> future = baritoneExecutor.executeAsync(baritoneCmd);
+        future.whenComplete((result, error) -> {
+            BaritoneTaskManager.getInstance().clearMacroCommand(macroName);
+            if (result != null && result != BaritoneResult.COMPLETED) {
+                getLogger().warn("[宏执行] Baritone 命令 {} 结束: {}", baritoneCmd, result);
+            }
+        });
+        return future;
     }
     
     /**
      * 执行原版 Minecraft 命令
      */
-    private void executeMinecraftCommand(String command) {
+    void executeMinecraftCommand(String command) {
         if (stopped.get()) {
             return;
         }
@@ -274,7 +349,29 @@ public class MacroExecutor implements Runnable {
     /**
      * 调用函数
      */
-    private void callFunction(String funcName) {
+    void callFunction(String funcName) {
+        Function func = resolveFunction(funcName);
+        if (func == null) {
+            return;
+        }
+        
+        if (func.isBackground) {
+            MacroThreads.start("MacroFunction-" + funcName, () -> {
+                getLogger().info("[宏执行] 函数 {} 在后台线程开始执行", funcName);
+                executeFunctionCommands(func);
+                getLogger().info("[宏执行] 函数 {} 在后台线程执行完成", funcName);
+            });
+        } else {
+            getLogger().info("[宏执行] 函数 {} 在主线程执行", funcName);
+            executeFunctionCommands(func);
+        }
+    }
+    
+    /**
+     * 查找要调用的函数
+     * @return 函数，不存在时返回 null
+     */
+    Function resolveFunction(String funcName) {
         logToChatAndLogger("[宏执行] 尝试调用函数: " + funcName);
         logToChatAndLogger("[宏执行] 当前宏包含的函数: " + macro.functions.keySet());
         getLogger().info("[宏执行] 尝试调用函数: {}", funcName);
@@ -284,65 +381,49 @@ public class MacroExecutor implements Runnable {
         if (func == null) {
             logToChatAndLogger("[宏执行] 函数不存在: " + funcName + "，可用函数: " + macro.functions.keySet());
             getLogger().warn("[宏执行] 函数不存在: {}，可用函数: {}", funcName, macro.functions.keySet());
-            return;
+            return null;
         }
         
         String funcInfo = String.format("[宏执行] 调用函数: %s (后台执行: %s)，函数包含 %d 个命令", 
-            funcName, func.isBackground, func.commands.size());
+            funcName, func.isBackground, func.getCommands().size());
         logToChatAndLogger(funcInfo);
-        getLogger().info("[宏执行] 调用函数: {} (后台执行: {})，函数包含 {} 个命令", funcName, func.isBackground, func.commands.size());
+        getLogger().info("[宏执行] 调用函数: {} (后台执行: {})，函数包含 {} 个命令", funcName, func.isBackground, func.getCommands().size());
         
         func.functions = macro.functions;
-        
-        if (func.isBackground) {
-            new Thread(() -> {
-                getLogger().info("[宏执行] 函数 {} 在后台线程开始执行", funcName);
-                executeFunctionCommands(func);
-                getLogger().info("[宏执行] 函数 {} 在后台线程执行完成", funcName);
-            }, "MacroFunction-" + funcName).start();
-        } else {
-            getLogger().info("[宏执行] 函数 {} 在主线程执行", funcName);
-            executeFunctionCommands(func);
-        }
+        return func;
     }
     
     /**
      * 执行函数命令
      */
     private void executeFunctionCommands(Function func) {
-        boolean hasConditional = func.commands.stream()
-            .anyMatch(cmd -> cmd instanceof IfStatement);
-        
-        if (hasConditional) {
+        if (hasConditional(func.getCommands())) {
             getLogger().info("[宏执行] 函数 {} 包含条件语句，将循环执行", func.name);
+            Map<IfStatement, Boolean> conditions = new LinkedHashMap<>();
             while (!stopped.get()) {
-                for (MacroCommand cmd : func.commands) {
+                conditions.clear();
+                for (MacroCommand cmd : func.getCommands()) {
                     if (stopped.get()) {
                         return;
                     }
                     try {
-                        cmd.execute(this);
-                        if (cmd instanceof IfStatement) {
-                            try {
-                                Thread.sleep(100);
-                            } catch (InterruptedException e) {
-                                Thread.currentThread().interrupt();
-                                return;
-                            }
-                        }
+                        executeLoopedCommand(cmd, conditions);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
                     } catch (Exception e) {
                         getLogger().error("[宏执行] 函数 " + func.name + " 执行命令时出错", e);
                     }
                 }
                 try {
-                    Thread.sleep(500);
+                    pauseAfterPass(conditions);
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
                     return;
                 }
             }
         } else {
-            for (MacroCommand cmd : func.commands) {
+            for (MacroCommand cmd : func.getCommands()) {
                 if (stopped.get()) {
                     break;
                 }
@@ -356,89 +437,85 @@ public class MacroExecutor implements Runnable {
     }
     
     /**
-     * 执行 wait 命令
+     * 执行循环体中的一个顶层命令
+     * 条件响应模式下记录 if 条件的结果，供一轮结束后订阅；否则每个 if 之后暂停 100ms
      */
-    public void executeWaitCommand(String content) {
-        if (stopped.get()) {
+    private void executeLoopedCommand(MacroCommand cmd, Map<IfStatement, Boolean> conditions) throws InterruptedException {
+        if (!(cmd instanceof IfStatement ifStmt)) {
+            cmd.execute(this);
+        } else if (MacroSettings.REACTIVE_CONDITIONS) {
+            List<MacroCommand> branch = selectBranch(ifStmt);
+            conditions.put(ifStmt, branch == ifStmt.ifCommands);
+            executeBranch(branch);
+        } else {
+            cmd.execute(this);
+            awaitStop(100);
+        }
+    }
+    
+    /**
+     * 一轮循环结束后暂停
+     * 条件响应模式下挂起到本轮任一 if 条件的结果发生变化，否则固定暂停 500ms
+     */
+    private void pauseAfterPass(Map<IfStatement, Boolean> conditions) throws InterruptedException {
+        if (conditions.isEmpty()) {
+            awaitStop(500);
             return;
         }
         
+        Thread thread = Thread.currentThread();
+        AtomicBoolean changed = new AtomicBoolean(false);
+        ConditionFeed.Subscription subscription = BaritoneTaskManager.getInstance().getConditionFeed()
+            .subscribe(conditions, () -> {
+                changed.set(true);
+                LockSupport.unpark(thread);
+            });
         try {
-            content = content.trim();
-            
-            if (content.isEmpty()) {
-                logToChatAndLogger("[宏执行] 执行 wait 命令，将一直阻塞直到宏结束");
-                getLogger().info("[宏执行] 执行 wait 命令，将一直阻塞直到宏结束");
-                
-                while (!stopped.get()) {
-                    try {
-                        Thread.sleep(100);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        getLogger().warn("[宏执行] wait 命令被中断");
-                        break;
-                    }
-                }
-                
-                logToChatAndLogger("[宏执行] wait 命令结束（宏已停止）");
-                getLogger().info("[宏执行] wait 命令结束（宏已停止）");
-                return;
-            }
-            
-            long waitTimeMs = 0;
-            Pattern pattern = Pattern.compile("^(\\d+)([smh])$");
-            Matcher matcher = pattern.matcher(content);
-            
-            if (matcher.matches()) {
-                long value = Long.parseLong(matcher.group(1));
-                String unit = matcher.group(2);
-                
-                switch (unit) {
-                    case "s":
-                        waitTimeMs = value * 1000;
-                        break;
-                    case "m":
-                        waitTimeMs = value * 60 * 1000;
-                        break;
-                    case "h":
-                        waitTimeMs = value * 60 * 60 * 1000;
-                        break;
-                    default:
-                        getLogger().warn("[宏执行] wait 命令格式错误: {}", content);
-                        logToChatAndLogger("[宏执行] wait 命令格式错误: " + content);
-                        return;
-                }
-                
-                logToChatAndLogger(String.format("[宏执行] 执行 wait 命令，将阻塞 %d%s", value, unit));
-                getLogger().info("[宏执行] 执行 wait 命令，将阻塞 {}ms ({} {})", waitTimeMs, value, unit);
-                
-                long startTime = System.currentTimeMillis();
-                while (!stopped.get() && (System.currentTimeMillis() - startTime) < waitTimeMs) {
-                    try {
-                        long remaining = waitTimeMs - (System.currentTimeMillis() - startTime);
-                        Thread.sleep(Math.min(100, remaining));
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        getLogger().warn("[宏执行] wait 命令被中断");
-                        break;
-                    }
-                }
-                
-                if (stopped.get()) {
-                    logToChatAndLogger("[宏执行] wait 命令提前结束（宏已停止）");
-                    getLogger().info("[宏执行] wait 命令提前结束（宏已停止）");
-                } else {
-                    logToChatAndLogger("[宏执行] wait 命令完成");
-                    getLogger().info("[宏执行] wait 命令完成");
-                }
-            } else {
-                getLogger().warn("[宏执行] wait 命令格式错误: {}，正确格式: wait、wait xs、wait xm、wait xh", content);
-                logToChatAndLogger("[宏执行] wait 命令格式错误: " + content + "，正确格式: wait、wait xs、wait xm、wait xh");
-            }
-            
-        } catch (Exception e) {
-            getLogger().error("[宏执行] 执行 wait 命令时出错", e);
-            logToChatAndLogger("[宏执行] 执行 wait 命令时出错: " + e.getMessage());
+            parkUntil(changed, 0);
+        } finally {
+            subscription.cancel();
+        }
+    }
+    
+    /**
+     * 一直等待直到宏结束（wait 不带参数）
+     */
+    void waitUntilStopped() {
+        logToChatAndLogger("[宏执行] 执行 wait 命令，将一直阻塞直到宏结束");
+        getLogger().info("[宏执行] 执行 wait 命令，将一直阻塞直到宏结束");
+        
+        try {
+            awaitStop(-1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            getLogger().warn("[宏执行] wait 命令被中断");
+        }
+        
+        logToChatAndLogger("[宏执行] wait 命令结束（宏已停止）");
+        getLogger().info("[宏执行] wait 命令结束（宏已停止）");
+    }
+    
+    /**
+     * 执行定时 wait 命令
+     */
+    void executeWait(MacroInstruction.Wait wait) {
+        long waitTimeMs = wait.millis;
+        logToChatAndLogger(String.format("[宏执行] 执行 wait 命令，将阻塞 %d%s", wait.value, wait.unit));
+        getLogger().info("[宏执行] 执行 wait 命令，将阻塞 {}ms ({} {})", waitTimeMs, wait.value, wait.unit);
+        
+        try {
+            awaitStop(waitTimeMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            getLogger().warn("[宏执行] wait 命令被中断");
+        }
+        
+        if (stopped.get()) {
+            logToChatAndLogger("[宏执行] wait 命令提前结束（宏已停止）");
+            getLogger().info("[宏执行] wait 命令提前结束（宏已停止）");
+        } else {
+            logToChatAndLogger("[宏执行] wait 命令完成");
+            getLogger().info("[宏执行] wait 命令完成");
         }
     }
     
@@ -450,6 +527,18 @@ public class MacroExecutor implements Runnable {
             return;
         }
         
+        MacroInstruction action = evaluateCheck(cmd);
+        if (action != null) {
+            executeInstruction(action);
+        }
+    }
+    
+    /**
+     * 判断 check 条件
+     * 动作为 end 时直接停止宏
+     * @return 条件满足时要执行的动作，否则返回 null
+     */
+    MacroInstruction evaluateCheck(CheckCommand cmd) {
         try {
             boolean condition = false;
             
@@ -472,28 +561,23 @@ public class MacroExecutor implements Runnable {
                 logToChatAndLogger(String.format("[宏执行] check 条件满足，执行动作: %s", cmd.action));
                 getLogger().info("[宏执行] check 条件满足，执行动作: {}", cmd.action);
                 
-                String actionToExecute = cmd.action;
-                if (actionToExecute.startsWith("do ")) {
-                    actionToExecute = actionToExecute.substring(3).trim();
-                }
-                
-                if (actionToExecute.equals("end")) {
+                MacroInstruction action = cmd.actionInstruction();
+                if (action instanceof MacroInstruction.End) {
                     logToChatAndLogger("[宏执行] check 条件满足，执行 end 命令，停止整个宏");
                     getLogger().info("[宏执行] check 条件满足，执行 end 命令，停止整个宏");
                     stop();
-                    return;
+                    return null;
                 }
-                
-                executeDoCommand(actionToExecute);
-            } else {
-                logToChatAndLogger("[宏执行] check 条件不满足，继续执行下一个命令");
-                getLogger().info("[宏执行] check 条件不满足，继续执行下一个命令");
+                return action;
             }
             
+            logToChatAndLogger("[宏执行] check 条件不满足，继续执行下一个命令");
+            getLogger().info("[宏执行] check 条件不满足，继续执行下一个命令");
         } catch (Exception e) {
             getLogger().error("[宏执行] 执行 check 命令时出错", e);
             logToChatAndLogger("[宏执行] 执行 check 命令时出错: " + e.getMessage());
         }
+        return null;
     }
     
     /**
@@ -526,16 +610,38 @@ public class MacroExecutor implements Runnable {
      * 执行 IfStatement
      */
     public void executeIfStatement(IfStatement ifStmt) {
+        executeBranch(selectBranch(ifStmt));
+    }
+    
+    /**
+     * 执行 if 语句选中的分支
+     */
+    private void executeBranch(List<MacroCommand> commandsToExecute) {
+        for (MacroCommand cmd : commandsToExecute) {
+            if (stopped.get()) {
+                getLogger().info("[宏执行] IfStatement 分支执行被停止（遇到 end 命令）");
+                break;
+            }
+            String branchCmdInfo = "[宏执行] 执行 IfStatement 分支中的命令: " + cmd.getClass().getSimpleName();
+            logToChatAndLogger(branchCmdInfo);
+            getLogger().info("[宏执行] 执行 IfStatement 分支中的命令: {}", cmd.getClass().getSimpleName());
+            cmd.execute(this);
+        }
+        
+        logBranchFinished();
+    }
+    
+    /**
+     * 判断 if 条件并选择要执行的分支
+     */
+    List<MacroCommand> selectBranch(IfStatement ifStmt) {
         boolean condition = false;
-        IMinecraftVersion version = getVersion();
         
         if (ifStmt.type == IfStatement.Type.POSITION) {
             int[] pos = BaritoneTaskManager.getPlayerPosition();
             if (pos != null) {
-                int tolerance = 2;
-                condition = Math.abs(pos[0] - ifStmt.x) <= tolerance 
-                        && Math.abs(pos[1] - ifStmt.y) <= tolerance 
-                        && Math.abs(pos[2] - ifStmt.z) <= tolerance;
+                int tolerance = IfStatement.POSITION_TOLERANCE;
+                condition = ifStmt.test(0, PackedBlockPos.fromArray(pos));
                 String coordInfo = String.format("[宏执行] 坐标检查: 目标=(%d,%d,%d), 当前位置=(%d,%d,%d), 容差=%d, 结果=%s", 
                     ifStmt.x, ifStmt.y, ifStmt.z, pos[0], pos[1], pos[2], tolerance, condition);
                 logToChatAndLogger(coordInfo);
@@ -546,24 +652,22 @@ public class MacroExecutor implements Runnable {
             }
         } else if (ifStmt.type == IfStatement.Type.TIME) {
             long currentTime = BaritoneTaskManager.getCurrentTime();
-            long tolerance = 50;
-            
-            switch (ifStmt.timeComparison) {
-                case EQUAL:
-                    condition = Math.abs(currentTime - ifStmt.time) <= tolerance;
-                    break;
-                case GREATER_EQUAL:
-                    condition = currentTime >= (ifStmt.time - tolerance);
-                    break;
-                case LESS_EQUAL:
-                    condition = currentTime <= (ifStmt.time + tolerance);
-                    break;
-            }
+            long tolerance = IfStatement.TIME_TOLERANCE;
+            condition = ifStmt.test(currentTime, PackedBlockPos.NONE);
             String timeInfo = String.format("[宏执行] 时间检查: 目标=%d, 当前时间=%d, 容差=%d, 结果=%s", 
                 ifStmt.time, currentTime, tolerance, condition);
             logToChatAndLogger(timeInfo);
             getLogger().info("[宏执行] 时间检查: 目标={}, 当前时间={}, 容差={}, 结果={}", 
                 ifStmt.time, currentTime, tolerance, condition);
+        } else if (ifStmt.type == IfStatement.Type.BLOCK_NEAR) {
+            long found = findBlockNear(ifStmt);
+            condition = found != PackedBlockPos.NONE;
+            String foundAt = condition ? String.format("(%d,%d,%d)", 
+                PackedBlockPos.getX(found), PackedBlockPos.getY(found), PackedBlockPos.getZ(found)) : "无";
+            logToChatAndLogger(String.format("[宏执行] 方块检查: 方块=%s, 半径=%d, 最近位置=%s, 结果=%s", 
+                ifStmt.blockName, ifStmt.radius, foundAt, condition));
+            getLogger().info("[宏执行] 方块检查: 方块={}, 半径={}, 最近位置={}, 结果={}", 
+                ifStmt.blockName, ifStmt.radius, foundAt, condition);
         }
         
         List<MacroCommand> commandsToExecute = condition ? ifStmt.ifCommands : ifStmt.elseCommands;
@@ -572,18 +676,34 @@ public class MacroExecutor implements Runnable {
         logToChatAndLogger(ifInfo);
         getLogger().info("[宏执行] IfStatement 条件={}, 将执行 {} 个命令 (if分支: {}, else分支: {})", 
             condition, commandsToExecute.size(), ifStmt.ifCommands.size(), ifStmt.elseCommands.size());
-        
-        for (MacroCommand cmd : commandsToExecute) {
-            if (stopped.get()) {
-                getLogger().info("[宏执行] IfStatement 分支执行被停止（遇到 end 命令）");
-                break;
-            }
-            String branchCmdInfo = "[宏执行] 执行 IfStatement 分支中的命令: " + cmd.getClass().getSimpleName();
-            logToChatAndLogger(branchCmdInfo);
-            getLogger().info("[宏执行] 执行 IfStatement 分支中的命令: {}", cmd.getClass().getSimpleName());
-            cmd.execute(this);
+        return commandsToExecute;
+    }
+    
+    /**
+     * 查找 block near 条件的方块
+     * 在宏线程上等待后台搜索完成；在客户端线程上（tick 调度模式）不等待，
+     * 调度器会先等到搜索结果刷新后再判断这个 if
+     * @return 最近的方块位置（压缩坐标），没有找到时返回 PackedBlockPos.NONE
+     */
+    private long findBlockNear(IfStatement ifStmt) {
+        BlockSearch search = BlockSearch.getInstance();
+        if (getVersion().getPlayerProvider().isOnMainThread()) {
+            return search.latestNearest(ifStmt.blockFilter, ifStmt.radius);
         }
-        
+        try {
+            return search.refresh(ifStmt.blockFilter, ifStmt.radius).get(BLOCK_SEARCH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            getLogger().warn("[宏执行] 方块搜索失败: {}", e.toString());
+        }
+        return PackedBlockPos.NONE;
+    }
+    
+    /**
+     * 输出 if 分支执行完成
+     */
+    void logBranchFinished() {
         logToChatAndLogger("[宏执行] IfStatement 分支执行完成，继续执行后续命令");
         getLogger().info("[宏执行] IfStatement 分支执行完成，继续执行后续命令");
     }
@@ -593,57 +713,50 @@ public class MacroExecutor implements Runnable {
      */
     private boolean checkItem(CheckCommand cmd) {
         try {
-            IMinecraftVersion version = getVersion();
-            IPlayerProvider playerProvider = version.getPlayerProvider();
-            IItemRegistry itemRegistry = version.getItemRegistry();
+            WorldSnapshot snapshot = BaritoneTaskManager.getInstance().getSnapshot();
             
-            if (!playerProvider.isPlayerPresent()) {
+            if (!snapshot.playerPresent) {
                 return false;
             }
             
             int totalCount = 0;
             String itemNameLower = cmd.itemName.toLowerCase();
             boolean isToolCheck = cmd.itemType != null && !cmd.itemType.isEmpty();
+            String tag = parseItemTag(itemNameLower);
             
-            int inventorySize = playerProvider.getInventorySize();
-            for (int i = 0; i < inventorySize; i++) {
-                ItemInfo itemInfo = playerProvider.getItemInSlot(i);
-                if (itemInfo == null || itemInfo.isEmpty()) {
-                    continue;
-                }
-                
-                String itemName = itemInfo.getItemName();
-                String itemNameLowerActual = itemName.toLowerCase();
-                
-                boolean nameMatches = false;
-                
+            if (tag != null) {
+                // 按物品标签匹配，如 item = #minecraft:logs
                 if (isToolCheck) {
-                    nameMatches = itemNameLowerActual.equals(itemNameLower) || 
-                                 itemNameLowerActual.contains(itemNameLower) ||
-                                 itemNameLower.contains(itemNameLowerActual);
+                    for (InventoryIndex.Entry entry : snapshot.inventory.entries()) {
+                        if (entry.tags.contains(tag) && entry.tool
+                                && entry.material != null && entry.material.equalsIgnoreCase(cmd.itemType)) {
+                            totalCount += entry.count;
+                        }
+                    }
                 } else {
-                    nameMatches = itemNameLowerActual.equals(itemNameLower);
+                    totalCount = snapshot.inventory.countTag(tag);
                 }
-                
-                if (nameMatches) {
-                    if (isToolCheck) {
-                        boolean isTool = itemRegistry.isToolItem(itemInfo);
-                        if (!isTool) {
-                            throw new IllegalArgumentException("物品类型错误: " + itemName + " 不是工具类物品，不能指定 type");
-                        }
-                        
-                        String toolMaterial = itemRegistry.getToolMaterial(itemInfo);
-                        if (toolMaterial == null || !toolMaterial.equalsIgnoreCase(cmd.itemType)) {
-                            continue;
-                        }
-                    } else {
-                        boolean isTool = itemRegistry.isToolItem(itemInfo);
-                        if (isTool) {
-                            continue;
-                        }
+            } else if (isToolCheck) {
+                // 工具按名称模糊匹配（包含关系），只需遍历背包中不同的物品
+                for (InventoryIndex.Entry entry : snapshot.inventory.entries()) {
+                    String itemNameLowerActual = entry.name.toLowerCase();
+                    boolean nameMatches = itemNameLowerActual.equals(itemNameLower) || 
+                                         itemNameLowerActual.contains(itemNameLower) ||
+                                         itemNameLower.contains(itemNameLowerActual);
+                    if (!nameMatches) {
+                        continue;
+                    }
+                    if (!entry.tool) {
+                        throw new IllegalArgumentException("物品类型错误: " + entry.name + " 不是工具类物品，不能指定 type");
+                    }
+                    if (entry.material != null && entry.material.equalsIgnoreCase(cmd.itemType)) {
+                        totalCount += entry.count;
                     }
-                    
-                    totalCount += itemInfo.getCount();
+                }
+            } else {
+                InventoryIndex.Entry entry = snapshot.inventory.get(itemNameLower);
+                if (entry != null && !entry.tool) {
+                    totalCount = entry.count;
                 }
             }
             
@@ -670,36 +783,32 @@ public class MacroExecutor implements Runnable {
      */
     private boolean checkNotHaveItem(CheckCommand cmd) {
         try {
-            IMinecraftVersion version = getVersion();
-            IPlayerProvider playerProvider = version.getPlayerProvider();
+            WorldSnapshot snapshot = BaritoneTaskManager.getInstance().getSnapshot();
             
-            if (!playerProvider.isPlayerPresent()) {
+            if (!snapshot.playerPresent) {
                 return true;
             }
             
             String itemNameLower = cmd.itemName.toLowerCase();
-            
-            int inventorySize = playerProvider.getInventorySize();
-            for (int i = 0; i < inventorySize; i++) {
-                ItemInfo itemInfo = playerProvider.getItemInSlot(i);
-                if (itemInfo == null || itemInfo.isEmpty()) {
-                    continue;
-                }
-                
-                String itemName = itemInfo.getItemName();
-                String itemNameLowerActual = itemName.toLowerCase();
-                
-                boolean nameMatches = itemNameLowerActual.equals(itemNameLower);
-                
-                if (nameMatches) {
-                    logToChatAndLogger(String.format("[宏执行] nothave 检查: 需要没有 %s, 但找到了 %s (数量=%d), 结果=false", 
-                        cmd.itemName, itemName, itemInfo.getCount()));
-                    getLogger().info("[宏执行] nothave 检查: 需要没有 {}, 但找到了 {} (数量={}), 结果=false", 
-                        cmd.itemName, itemName, itemInfo.getCount());
+            String tag = parseItemTag(itemNameLower);
+            if (tag != null) {
+                int count = snapshot.inventory.countTag(tag);
+                if (count > 0) {
+                    logToChatAndLogger(String.format("[宏执行] nothave 检查: 需要没有 %s, 但找到了 %d 个, 结果=false", cmd.itemName, count));
+                    getLogger().info("[宏执行] nothave 检查: 需要没有 {}, 但找到了 {} 个, 结果=false", cmd.itemName, count);
                     return false;
                 }
             }
             
+            InventoryIndex.Entry entry = tag == null ? snapshot.inventory.get(itemNameLower) : null;
+            if (entry != null) {
+                logToChatAndLogger(String.format("[宏执行] nothave 检查: 需要没有 %s, 但找到了 %s (数量=%d), 结果=false", 
+                    cmd.itemName, entry.name, entry.count));
+                getLogger().info("[宏执行] nothave 检查: 需要没有 {}, 但找到了 {} (数量={}), 结果=false", 
+                    cmd.itemName, entry.name, entry.count);
+                return false;
+            }
+            
             logToChatAndLogger(String.format("[宏执行] nothave 检查: 需要没有 %s, 背包中没有, 结果=true", cmd.itemName));
             getLogger().info("[宏执行] nothave 检查: 需要没有 {}, 背包中没有, 结果=true", cmd.itemName);
             return true;
@@ -710,19 +819,24 @@ public class MacroExecutor implements Runnable {
         }
     }
     
+    /**
+     * 解析物品标签写法（#minecraft:logs，省略命名空间时为 minecraft）
+     * @return 标签，不是标签写法时返回 null
+     */
+    private static String parseItemTag(String itemNameLower) {
+        if (!itemNameLower.startsWith("#")) {
+            return null;
+        }
+        String tag = itemNameLower.substring(1).trim();
+        return tag.indexOf(':') >= 0 ? tag : "minecraft:" + tag;
+    }
+    
     /**
      * 检查位置
      */
     private boolean checkPosition(CheckCommand cmd) {
         try {
-            IMinecraftVersion version = getVersion();
-            IPlayerProvider playerProvider = version.getPlayerProvider();
-            
-            if (!playerProvider.isPlayerPresent()) {
-                return false;
-            }
-            
-            int[] pos = playerProvider.getPlayerPosition();
+            int[] pos = BaritoneTaskManager.getPlayerPosition();
             if (pos == null) {
                 return false;
             }
@@ -750,14 +864,13 @@ public class MacroExecutor implements Runnable {
      */
     private boolean checkTime(CheckCommand cmd) {
         try {
-            IMinecraftVersion version = getVersion();
-            IWorldTimeProvider worldTimeProvider = version.getWorldTimeProvider();
+            WorldSnapshot snapshot = BaritoneTaskManager.getInstance().getSnapshot();
             
-            if (!worldTimeProvider.isWorldPresent()) {
+            if (!snapshot.worldPresent) {
                 return false;
             }
             
-            long currentTime = worldTimeProvider.getDayTime();
+            long currentTime = snapshot.dayTime;
             int timeTolerance = 50;
             
             boolean result = Math.abs(currentTime - cmd.time) <= timeTolerance;
@@ -782,11 +895,90 @@ public class MacroExecutor implements Runnable {
         // 可以在这里检查时间条件等
     }
     
+    /**
+     * 阻塞指定时间，宏停止时立即返回
+     * 到期由共享时间轮唤醒，线程在等待期间挂起，只在到期或停止时被唤醒一次
+     * 时间轮尚未启动时按自身的截止时间挂起
+     * @param millis 等待时间，小于 0 表示一直等待直到宏停止
+     * @return 是否因宏停止而返回
+     */
+    private boolean awaitStop(long millis) throws InterruptedException {
+        Thread thread = Thread.currentThread();
+        AtomicBoolean due = new AtomicBoolean(millis == 0);
+        TimerWheel wheel = TimerWheel.getInstance();
+        TimerWheel.Timeout timeout = null;
+        long deadline = 0;
+        if (millis > 0) {
+            if (wheel.isRunning()) {
+                timeout = wheel.schedule(millis, () -> {
+                    due.set(true);
+                    LockSupport.unpark(thread);
+                });
+            } else {
+                deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+            }
+        }
+        
+        try {
+            parkUntil(due, deadline);
+            return stopped.get();
+        } finally {
+            if (timeout != null) {
+                timeout.cancel();
+            }
+        }
+    }
+    
+    /**
+     * 挂起当前线程，直到 signal 被设置（设置方负责 unpark）、宏停止或到达截止时间
+     * @param deadline System.nanoTime() 截止时间，0 表示不限
+     */
+    private void parkUntil(AtomicBoolean signal, long deadline) throws InterruptedException {
+        Thread thread = Thread.currentThread();
+        Runnable wake = () -> LockSupport.unpark(thread);
+        addStopListener(wake);
+        try {
+            while (!stopped.get() && !signal.get()) {
+                if (deadline != 0) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return;
+                    }
+                    LockSupport.parkNanos(this, remaining);
+                } else {
+                    LockSupport.park(this);
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            removeStopListener(wake);
+        }
+    }
+    
+    /**
+     * 注册停止监听器，宏停止时调用（注册时已停止则立即调用）
+     */
+    void addStopListener(Runnable listener) {
+        stopListeners.add(listener);
+        if (stopped.get()) {
+            listener.run();
+        }
+    }
+    
+    void removeStopListener(Runnable listener) {
+        stopListeners.remove(listener);
+    }
+    
     /**
      * 停止执行
      */
     public void stop() {
         stopped.set(true);
+        for (Runnable listener : stopListeners) {
+            listener.run();
+        }
         BaritoneTaskManager.getInstance().clearMacroCommand(macroName);
     }
     
@@ -0,0 +1,258 @@
+package com.xiaofan.macro;
+
+import com.xiaofan.api.ILogger;
+import com.xiaofan.api.VersionProvider;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 宏指令
+ * do / wait 命令和 check 动作编译后的形式：命令类型和参数在编译时一次性确定，
+ * 执行时直接分派到 MacroExecutor，不再每次重复做前缀判断、参数拆分和阻塞命令识别
+ *
+ * 编译结果缓存在命令对象上（见 DoCommand、WaitCommand、CheckCommand），每个命令只编译一次
+ */
+abstract class MacroInstruction {
+    private static final Pattern WAIT_PATTERN = Pattern.compile("^(\\d+)([smh])$");
+
+    /**
+     * 执行指令
+     */
+    abstract void execute(MacroExecutor executor);
+
+    private static ILogger getLogger() {
+        return VersionProvider.getVersion().getLogger();
+    }
+
+    /**
+     * 编译 do 命令内容
+     */
+    static MacroInstruction compile(String content) {
+        if (content.startsWith("fun ")) {
+            String funcName = content.substring(4).trim();
+            if (funcName.startsWith("\"") && funcName.endsWith("\"")) {
+                funcName = funcName.substring(1, funcName.length() - 1);
+            } else if (funcName.endsWith("\"")) {
+                int quoteStart = funcName.indexOf("\"");
+                if (quoteStart >= 0) {
+                    funcName = funcName.substring(quoteStart + 1, funcName.length() - 1);
+                }
+            }
+            return new CallFunction(funcName);
+        }
+
+        if (content.equals("end")) {
+            return End.INSTANCE;
+        }
+
+        if (content.startsWith("wait")) {
+            return compileWait(content.substring(4));
+        }
+
+        if (content.startsWith("/")) {
+            return new ChatCommand(content.substring(1).trim());
+        }
+
+        if (content.startsWith("#")) {
+            String baritoneCmd = content.substring(1).trim();
+            if (!VersionProvider.getVersion().getBaritoneExecutor().isBlockingCommand(baritoneCmd)) {
+                return new BaritoneCommand(baritoneCmd);
+            }
+            if (baritoneCmd.toLowerCase().startsWith("goto ")) {
+                String[] parts = baritoneCmd.split("\\s+");
+                if (parts.length >= 4) {
+                    try {
+                        return new BaritoneGoto(baritoneCmd,
+                            Integer.parseInt(parts[1]), Integer.parseInt(parts[2]), Integer.parseInt(parts[3]));
+                    } catch (NumberFormatException e) {
+                        getLogger().warn("[宏执行] 无法解析 goto 命令的坐标: {}", baritoneCmd);
+                    }
+                }
+            }
+            return new BaritoneBlocking(baritoneCmd);
+        }
+
+        return new Invalid("[宏执行] 未知命令: " + content, false);
+    }
+
+    /**
+     * 编译 wait 命令参数（空字符串表示一直等待，否则是 "xs"、"xm"、"xh" 格式）
+     */
+    static MacroInstruction compileWait(String content) {
+        content = content.trim();
+        if (content.isEmpty()) {
+            return WaitForever.INSTANCE;
+        }
+
+        Matcher matcher = WAIT_PATTERN.matcher(content);
+        if (!matcher.matches()) {
+            return new Invalid("[宏执行] wait 命令格式错误: " + content + "，正确格式: wait、wait xs、wait xm、wait xh", true);
+        }
+
+        try {
+            long value = Long.parseLong(matcher.group(1));
+            String unit = matcher.group(2);
+            long unitMs = unit.equals("s") ? 1000L : unit.equals("m") ? 60 * 1000L : 60 * 60 * 1000L;
+            return new Wait(Math.multiplyExact(value, unitMs), value, unit);
+        } catch (ArithmeticException | NumberFormatException e) {
+            return new Invalid("[宏执行] wait 命令格式错误: " + content, true);
+        }
+    }
+
+    /**
+     * 编译 check 命令的动作（可带 "do " 前缀）
+     */
+    static MacroInstruction compileAction(String action) {
+        if (action.startsWith("do ")) {
+            action = action.substring(3).trim();
+        }
+        return compile(action);
+    }
+
+    /**
+     * 调用函数：do fun "name"
+     */
+    static final class CallFunction extends MacroInstruction {
+        final String name;
+
+        CallFunction(String name) {
+            this.name = name;
+        }
+
+        @Override
+        void execute(MacroExecutor executor) {
+            executor.callFunction(name);
+        }
+    }
+
+    /**
+     * 结束当前执行上下文：do end
+     */
+    static final class End extends MacroInstruction {
+        static final End INSTANCE = new End();
+
+        @Override
+        void execute(MacroExecutor executor) {
+            executor.executeEnd();
+        }
+    }
+
+    /**
+     * 定时等待：wait xs / xm / xh
+     */
+    static final class Wait extends MacroInstruction {
+        final long millis;
+        final long value;   // 原始数值和单位，用于日志
+        final String unit;
+
+        Wait(long millis, long value, String unit) {
+            this.millis = millis;
+            this.value = value;
+            this.unit = unit;
+        }
+
+        @Override
+        void execute(MacroExecutor executor) {
+            executor.executeWait(this);
+        }
+    }
+
+    /**
+     * 一直等待直到宏结束：wait
+     */
+    static final class WaitForever extends MacroInstruction {
+        static final WaitForever INSTANCE = new WaitForever();
+
+        @Override
+        void execute(MacroExecutor executor) {
+            executor.waitUntilStopped();
+        }
+    }
+
+    /**
+     * 原版命令：do /command
+     */
+    static final class ChatCommand extends MacroInstruction {
+        final String command;
+
+        ChatCommand(String command) {
+            this.command = command;
+        }
+
+        @Override
+        void execute(MacroExecutor executor) {
+            executor.executeMinecraftCommand(command);
+        }
+    }
+
+    /**
+     * 非阻塞的 Baritone 命令
+     */
+    static final class BaritoneCommand extends MacroInstruction {
+        final String command;
+
+        BaritoneCommand(String command) {
+            this.command = command;
+        }
+
+        @Override
+        void execute(MacroExecutor executor) {
+            executor.executeBaritoneCommand(command, false, null);
+        }
+    }
+
+    /**
+     * 阻塞的 Baritone 命令（mine、explore 等），等待执行完成
+     */
+    static final class BaritoneBlocking extends MacroInstruction {
+        final String command;
+
+        BaritoneBlocking(String command) {
+            this.command = command;
+        }
+
+        @Override
+        void execute(MacroExecutor executor) {
+            executor.executeBaritoneCommand(command, true, null);
+        }
+    }
+
+    /**
+     * 带坐标的 goto 命令，等待到达目标
+     */
+    static final class BaritoneGoto extends MacroInstruction {
+        final String command;
+        final int x, y, z;
+
+        BaritoneGoto(String command, int x, int y, int z) {
+            this.command = command;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        @Override
+        void execute(MacroExecutor executor) {
+            executor.executeBaritoneCommand(command, true, new int[]{x, y, z});
+        }
+    }
+
+    /**
+     * 无法识别的命令，执行时只输出警告
+     */
+    static final class Invalid extends MacroInstruction {
+        final String message;
+        final boolean toChat;
+
+        Invalid(String message, boolean toChat) {
+            this.message = message;
+            this.toChat = toChat;
+        }
+
+        @Override
+        void execute(MacroExecutor executor) {
+            executor.reportInvalid(message, toChat);
+        }
+    }
+}
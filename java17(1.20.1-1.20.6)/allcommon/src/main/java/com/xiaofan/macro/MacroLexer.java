@@ -0,0 +1,251 @@
+package com.xiaofan.macro;
+
+/**
+ * 宏文件词法分析器
+ * 手写的逐字符扫描器，替代每行重复编译正则表达式的做法
+ *
+ * 第一层：把一行原始文本清理（去注释、去空白）并归类为 {@link Kind}
+ * 第二层：{@link Cursor} 为 MacroParser 提供语句内部的字符级扫描
+ */
+final class MacroLexer {
+    /**
+     * 行类型
+     */
+    enum Kind {
+        MAIN,       // fan_main:
+        FUN,        // fun name="..."
+        IF,         // if ...
+        ELSE,       // else / else;
+        END,        // end / end;
+        STATEMENT   // 其余语句（do/wait/check/run 等）
+    }
+
+    /**
+     * 词法单元：一行有效的宏代码
+     */
+    static final class Line {
+        final Kind kind;
+        final String text;      // 已去除注释和首尾空白
+        final int lineNumber;   // 源文件中的行号（从 1 开始）
+
+        Line(Kind kind, String text, int lineNumber) {
+            this.kind = kind;
+            this.text = text;
+            this.lineNumber = lineNumber;
+        }
+    }
+
+    private MacroLexer() {
+    }
+
+    /**
+     * 对一行原始文本进行词法分析
+     * @param raw 原始文本
+     * @param lineNumber 行号（从 1 开始）
+     * @return 词法单元，空行或纯注释行返回 null
+     */
+    static Line lex(String raw, int lineNumber) {
+        int end = raw.indexOf("//");
+        if (end < 0) {
+            end = raw.length();
+        }
+        int start = 0;
+        while (start < end && raw.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && raw.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (start == end) {
+            return null;
+        }
+        String text = raw.substring(start, end);
+        return new Line(classify(text), text, lineNumber);
+    }
+
+    /**
+     * 根据行首关键字判断行类型
+     */
+    static Kind classify(String text) {
+        switch (text.charAt(0)) {
+            case 'f':
+                if (text.startsWith("fun ")) {
+                    return Kind.FUN;
+                }
+                if (text.startsWith("fan_main:")) {
+                    return Kind.MAIN;
+                }
+                break;
+            case 'i':
+                if (text.startsWith("if ")) {
+                    return Kind.IF;
+                }
+                break;
+            case 'e':
+                if (text.equals("else") || text.equals("else;")) {
+                    return Kind.ELSE;
+                }
+                if (text.equals("end") || text.equals("end;")) {
+                    return Kind.END;
+                }
+                break;
+            default:
+                break;
+        }
+        return Kind.STATEMENT;
+    }
+
+    /**
+     * 去掉语句末尾的分号并去除首尾空白
+     */
+    static String stripSemicolon(String content) {
+        content = content.trim();
+        if (content.endsWith(";")) {
+            content = content.substring(0, content.length() - 1).trim();
+        }
+        return content;
+    }
+
+    /**
+     * 语句内部的字符级扫描游标
+     * 所有方法在不匹配时都不移动位置（除 skipSpaces 外）
+     */
+    static final class Cursor {
+        private final String s;
+        private int pos;
+
+        Cursor(String s) {
+            this.s = s;
+        }
+
+        Cursor(String s, int pos) {
+            this.s = s;
+            this.pos = pos;
+        }
+
+        int position() {
+            return pos;
+        }
+
+        void reset(int position) {
+            this.pos = position;
+        }
+
+        boolean atEnd() {
+            return pos >= s.length();
+        }
+
+        /**
+         * 跳过空白，返回是否至少跳过了一个字符（对应正则 \s+）
+         */
+        boolean skipSpaces() {
+            int start = pos;
+            while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) {
+                pos++;
+            }
+            return pos > start;
+        }
+
+        /**
+         * 匹配关键字
+         */
+        boolean keyword(String word, boolean ignoreCase) {
+            if (s.regionMatches(ignoreCase, pos, word, 0, word.length())) {
+                pos += word.length();
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * 匹配单个字符，匹配前后自动跳过空白（对应正则 \s*c\s*）
+         */
+        boolean symbol(char c) {
+            int start = pos;
+            skipSpaces();
+            if (pos < s.length() && s.charAt(pos) == c) {
+                pos++;
+                skipSpaces();
+                return true;
+            }
+            pos = start;
+            return false;
+        }
+
+        /**
+         * 读取整数（可带负号），不是整数或溢出时返回 null
+         */
+        Long readLong(boolean allowNegative) {
+            int start = pos;
+            int i = pos;
+            if (allowNegative && i < s.length() && s.charAt(i) == '-') {
+                i++;
+            }
+            int digitsStart = i;
+            while (i < s.length() && s.charAt(i) >= '0' && s.charAt(i) <= '9') {
+                i++;
+            }
+            if (i == digitsStart) {
+                return null;
+            }
+            try {
+                long value = Long.parseLong(s.substring(start, i));
+                pos = i;
+                return value;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        /**
+         * 读取 int 范围内的整数
+         */
+        Integer readInt() {
+            int start = pos;
+            Long value = readLong(true);
+            if (value == null || value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+                pos = start;
+                return null;
+            }
+            return value.intValue();
+        }
+
+        /**
+         * 读取双引号包围的非空字符串（对应正则 "([^"]+)"）
+         */
+        String readQuoted() {
+            if (pos >= s.length() || s.charAt(pos) != '"') {
+                return null;
+            }
+            int close = s.indexOf('"', pos + 1);
+            if (close <= pos + 1) {
+                return null;
+            }
+            String value = s.substring(pos + 1, close);
+            pos = close + 1;
+            return value;
+        }
+
+        /**
+         * 读取直到指定字符之前的内容（不含该字符），找不到或内容为空时返回 null
+         */
+        String readUntil(char c) {
+            int idx = s.indexOf(c, pos);
+            if (idx <= pos) {
+                return null;
+            }
+            String value = s.substring(pos, idx);
+            pos = idx;
+            return value;
+        }
+
+        /**
+         * 读取剩余全部内容
+         */
+        String rest() {
+            String value = s.substring(Math.min(pos, s.length()));
+            pos = s.length();
+            return value;
+        }
+    }
+}
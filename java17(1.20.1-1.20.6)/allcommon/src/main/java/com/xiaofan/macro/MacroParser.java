@@ -1,22 +1,47 @@
 package com.xiaofan.macro;
 
+import com.xiaofan.BlockSearch;
+import com.xiaofan.api.BlockInfo;
 import com.xiaofan.api.ILogger;
+import com.xiaofan.api.PackedBlockPos;
 import com.xiaofan.api.VersionProvider;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.Reader;
 import java.nio.file.Files;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.function.Predicate;
 
 /**
  * 宏文件解析器
  * 解析宏文件并构建宏对象
  * 
+ * 逐行流式读取，按 fun / fan_main: 切分成块，每个块读完即解析，每一步都是线性扫描：
+ * 1. {@link MacroLexer} 去除注释和空行，并按行首关键字归类
+ * 2. {@link MacroBlockIndex} 用栈匹配块内所有 if / else / end，预先计算分支边界
+ * 3. 按索引构建语法树，语句内部用手写游标解析，不再对每行重复编译正则表达式
+ * 
  * 此代码已迁移到 allcommon，使用抽象接口，可在 1.20.1-1.20.6 版本间复用
  */
 public class MacroParser {
+    /**
+     * 语法版本，解析规则或语法树结构变化时递增，使 {@link MacroCache} 中的旧缓存失效
+     */
+    static final int GRAMMAR_VERSION = 2;
+    
+    private static final long FINGERPRINT_SEED = 0xcbf29ce484222325L;
+    private static final long FINGERPRINT_PRIME = 0x100000001b3L;
+    
+    private final List<MacroLexer.Line> lines;
+    private final MacroBlockIndex index;
+    
+    private MacroParser(List<MacroLexer.Line> lines) {
+        this.lines = lines;
+        this.index = MacroBlockIndex.build(lines);
+    }
+    
     private static ILogger getLogger() {
         return VersionProvider.getVersion().getLogger();
     }
@@ -25,313 +50,334 @@ public class MacroParser {
      * 解析宏文件
      */
     public static Macro parse(File file) throws IOException {
-        List<String> lines = Files.readAllLines(file.toPath());
-        Macro macro = new Macro();
-        macro.name = file.getName().replace(".txt", "");
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath())) {
+            return parse(file.getName().replace(".txt", ""), reader, null);
+        }
+    }
+    
+    /**
+     * 解析宏文本
+     * @param name 宏名称
+     * @param rawLines 宏文件的原始行
+     */
+    static Macro parse(String name, List<String> rawLines) {
+        return parse(name, rawLines, null);
+    }
+    
+    /**
+     * 增量解析宏文本
+     * @param name 宏名称
+     * @param rawLines 宏文件的原始行
+     * @param previous 同一文件上一次的解析结果，可为 null
+     */
+    static Macro parse(String name, List<String> rawLines, Macro previous) {
+        BlockStream stream = new BlockStream(previous);
+        for (String raw : rawLines) {
+            stream.accept(raw);
+        }
+        return stream.finish(name);
+    }
+    
+    /**
+     * 流式增量解析
+     * 逐行读取，边读边去除注释和空行，只缓存当前块的行，整个文件不会同时驻留内存
+     * @param name 宏名称
+     * @param reader 宏文本
+     * @param previous 同一文件上一次的解析结果，可为 null
+     */
+    static Macro parse(String name, Reader reader, Macro previous) throws IOException {
+        BufferedReader in = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        BlockStream stream = new BlockStream(previous);
+        String raw;
+        while ((raw = in.readLine()) != null) {
+            stream.accept(raw);
+        }
+        return stream.finish(name);
+    }
+    
+    /**
+     * 按块流式构建宏
+     * 
+     * 文件被 fan_main: 和 fun 行切分为若干段：函数段进入 functions，其余段进入主命令列表，
+     * 因此 fan_main: 同时会结束它前面的函数体。if 不能跨越块边界，
+     * 所以每个块可以在读完后立即单独解析，然后丢弃它的源码行
+     * 
+     * 与 previous 逐块比较指纹，文本未变化的函数块直接复用原 Function 对象
+     */
+    private static final class BlockStream {
+        private final Macro previous;
+        private final Macro macro = new Macro();
+        private List<MacroLexer.Line> block = new ArrayList<>();
+        private boolean leading = true;    // 当前块是否为第一个 fun / fan_main: 之前的部分
+        private int lineNumber = 0;
+        private int offset = 0;            // 当前块第一行在所有有效行中的下标
+        private int reused = 0;
         
-        // 移除注释和空行
-        List<String> cleanLines = new ArrayList<>();
-        for (String line : lines) {
-            String trimmed = line.trim();
-            // 移除行尾注释
-            int commentIndex = trimmed.indexOf("//");
-            if (commentIndex >= 0) {
-                trimmed = trimmed.substring(0, commentIndex).trim();
-            }
-            if (!trimmed.isEmpty()) {
-                cleanLines.add(trimmed);
-            }
+        BlockStream(Macro previous) {
+            this.previous = previous;
+            macro.mainFingerprint = FINGERPRINT_SEED;
         }
         
-        // 查找主函数入口 fan_main:
-        int mainIndex = -1;
-        for (int i = 0; i < cleanLines.size(); i++) {
-            if (cleanLines.get(i).equals("fan_main:") || cleanLines.get(i).startsWith("fan_main:")) {
-                mainIndex = i;
-                break;
+        /**
+         * 接收一行原始文本
+         */
+        void accept(String raw) {
+            MacroLexer.Line line = MacroLexer.lex(raw, ++lineNumber);
+            if (line == null) {
+                return;
             }
+            if (line.kind == MacroLexer.Kind.FUN || line.kind == MacroLexer.Kind.MAIN) {
+                flush();
+            }
+            block.add(line);
         }
         
-        if (mainIndex >= 0) {
-            // 找到主函数入口
-            // 第一步：先解析 fan_main: 之前的所有函数定义（如果有）
-            if (mainIndex > 0) {
-                parseMacroContent(cleanLines, macro, 0, mainIndex);
-            }
-            // 第二步：解析 fan_main: 之后的内容
-            // 先解析所有函数定义，再解析主函数命令
-            int mainStart = mainIndex + 1;
-            
-            // 先扫描并解析所有函数定义
-            int i = mainStart;
-            while (i < cleanLines.size()) {
-                String line = cleanLines.get(i).trim();
-                if (line.startsWith("fun ")) {
-                    Function func = parseFunction(cleanLines, i, cleanLines.size());
-                    if (func != null) {
-                        macro.functions.put(func.name, func);
+        /**
+         * 解析当前块并合并到宏中
+         */
+        private void flush() {
+            MacroParser parser = new MacroParser(block);
+            int size = block.size();
+            if (leading) {
+                macro.mainFingerprint = parser.fingerprint(macro.mainFingerprint, 0, size);
+                parser.parseRange(0, size, macro.commands);
+            } else {
+                MacroLexer.Line header = block.get(0);
+                Function func = header.kind == MacroLexer.Kind.FUN ? parseFunctionHeader(header.text) : null;
+                if (func != null) {
+                    long fingerprint = parser.fingerprint(FINGERPRINT_SEED, 0, size);
+                    macro.functionFingerprints.put(func.name, fingerprint);
+                    Function old = previous != null ? previous.functions.get(func.name) : null;
+                    Long oldFingerprint = previous != null ? previous.functionFingerprints.get(func.name) : null;
+                    if (old != null && oldFingerprint != null && oldFingerprint == fingerprint) {
+                        func = old;
+                        reused++;
+                    } else {
+                        if (MacroSettings.LAZY_FUNCTIONS) {
+                            func.pendingBody = new ArrayList<>(block.subList(1, size));
+                        } else {
+                            parser.parseRange(1, size, func.commands);
+                        }
                         getLogger().info("[宏解析] 解析到函数: {} (后台执行: {})", func.name, func.isBackground);
-                        i = func.endIndex;
-                        continue;
                     }
+                    func.startIndex = offset + 1;
+                    func.endIndex = offset + size;
+                    macro.functions.put(func.name, func);
+                } else {
+                    // fan_main: 或不合法的函数定义，后续内容属于主命令
+                    macro.mainFingerprint = parser.fingerprint(macro.mainFingerprint, 0, size);
+                    parser.parseRange(1, size, macro.commands);
                 }
-                i++;
             }
+            offset += size;
+            leading = false;
+            block = new ArrayList<>();
+        }
+        
+        /**
+         * 结束解析
+         */
+        Macro finish(String name) {
+            flush();
+            macro.name = name;
             
-            // 然后解析主函数命令（跳过函数定义）
-            Macro mainMacro = new Macro();
-            i = mainStart;
-            while (i < cleanLines.size()) {
-                String line = cleanLines.get(i).trim();
-                
-                // 跳过函数定义（已经在上面解析过了）
-                if (line.startsWith("fun ")) {
-                    Function func = parseFunction(cleanLines, i, cleanLines.size());
-                    if (func != null) {
-                        i = func.endIndex;
-                        continue;
-                    }
-                }
-                
-                // 解析主函数命令
-                if (line.startsWith("if ")) {
-                    IfStatement ifStmt = parseIfStatement(line);
-                    i++;
-                    
-                    List<MacroCommand> ifCommands = new ArrayList<>();
-                    List<MacroCommand> elseCommands = new ArrayList<>();
-                    boolean inElse = false;
-                    int depth = 1;
-                    
-                    while (i < cleanLines.size() && depth > 0) {
-                        String currentLine = cleanLines.get(i).trim();
-                        
-                        // 跳过函数定义
-                        if (currentLine.startsWith("fun ")) {
-                            Function func = parseFunction(cleanLines, i, cleanLines.size());
-                            if (func != null) {
-                                i = func.endIndex;
-                                continue;
-                            }
-                        }
-                        
-                        if (currentLine.startsWith("if ")) {
-                            depth++;
-                            int nestedEnd = findNestedEnd(cleanLines, i, cleanLines.size());
-                            Macro nestedMacro = new Macro();
-                            int nextIndex = parseMacroContent(cleanLines, nestedMacro, i, nestedEnd);
-                            if (inElse) {
-                                elseCommands.addAll(nestedMacro.commands);
-                            } else {
-                                ifCommands.addAll(nestedMacro.commands);
-                            }
-                            i = nextIndex;
-                            continue;
-                        } else if (currentLine.equals("else") || currentLine.equals("else;")) {
-                            if (depth == 1) {
-                                inElse = true;
-                                i++;
-                                continue;
-                            }
-                        } else if (currentLine.equals("end;") || currentLine.equals("end")) {
-                            depth--;
-                            if (depth == 0) {
-                                i++;
-                                break;
-                            }
-                        }
-                        
-                        if (depth > 0) {
-                            if (inElse && depth == 1) {
-                                MacroCommand cmd = parseCommand(currentLine);
-                                if (cmd != null) {
-                                    elseCommands.add(cmd);
-                                }
-                            } else if (!inElse && depth == 1) {
-                                MacroCommand cmd = parseCommand(currentLine);
-                                if (cmd != null) {
-                                    ifCommands.add(cmd);
-                                }
-                            }
-                        }
-                        i++;
-                    }
-                    
-                    ifStmt.ifCommands = ifCommands;
-                    ifStmt.elseCommands = elseCommands;
-                    mainMacro.commands.add(ifStmt);
-                    continue;
-                }
-                
-                MacroCommand cmd = parseCommand(line);
-                if (cmd != null) {
-                    mainMacro.commands.add(cmd);
+            if (previous != null) {
+                // 主命令分散在多个块中，只能在读完后比较；未变化时沿用原列表，保持对象不变
+                boolean sameMain = previous.mainFingerprint == macro.mainFingerprint;
+                if (sameMain) {
+                    macro.commands = previous.commands;
                 }
-                
-                i++;
+                getLogger().info("[宏解析] 增量解析：复用 {} 个函数{}，重新解析 {} 个函数",
+                    reused, sameMain ? "和主命令" : "", macro.functions.size() - reused);
             }
             
-            // 将主函数命令存储到 macro.mainCommands（如果存在）或 macro.commands
-            macro.commands.addAll(mainMacro.commands);
-        } else {
-            // 没有主函数入口，按原来的方式解析
-            parseMacroContent(cleanLines, macro, 0, cleanLines.size());
-        }
-        
-        getLogger().info("[宏解析] 解析完成，共 {} 个命令，{} 个函数", macro.commands.size(), macro.functions.size());
-        if (!macro.functions.isEmpty()) {
-            getLogger().info("[宏解析] 函数列表: {}", macro.functions.keySet());
+            getLogger().info("[宏解析] 解析完成，共 {} 个命令，{} 个函数", macro.commands.size(), macro.functions.size());
+            if (!macro.functions.isEmpty()) {
+                getLogger().info("[宏解析] 函数列表: {}", macro.functions.keySet());
+            }
+            if (!macro.commands.isEmpty()) {
+                getLogger().info("[宏解析] 命令类型: {}", macro.commands.stream()
+                    .map(cmd -> cmd.getClass().getSimpleName())
+                    .toList());
+            }
+            return macro;
         }
-        if (!macro.commands.isEmpty()) {
-            getLogger().info("[宏解析] 命令类型: {}", macro.commands.stream()
-                .map(cmd -> cmd.getClass().getSimpleName())
-                .toList());
+    }
+    
+    /**
+     * 解析延迟解析的函数体
+     * 函数体内不含 fun / fan_main: 行，单独建立块结构索引的结果与在整个文件中相同
+     */
+    static List<MacroCommand> parseFunctionBody(List<MacroLexer.Line> body) {
+        List<MacroCommand> commands = new ArrayList<>();
+        new MacroParser(body).parseRange(0, body.size(), commands);
+        return commands;
+    }
+    
+    /**
+     * 计算 [start, end) 范围内各行（已去除注释和空白）的 64 位 FNV-1a 指纹
+     */
+    private long fingerprint(long hash, int start, int end) {
+        for (int i = start; i < end; i++) {
+            String text = lines.get(i).text;
+            for (int j = 0; j < text.length(); j++) {
+                hash = (hash ^ text.charAt(j)) * FINGERPRINT_PRIME;
+            }
+            hash = (hash ^ '\n') * FINGERPRINT_PRIME;
         }
-        
-        return macro;
+        return hash;
     }
     
     /**
-     * 解析宏内容（递归解析 if-else 和函数）
+     * 解析 [start, end) 范围内的语句，范围内不含 fun / fan_main: 行
+     * 嵌套的 if 用显式栈处理，分支边界直接取自块结构索引
      */
-    private static int parseMacroContent(List<String> lines, Macro macro, int startIndex, int endIndex) {
-        int i = startIndex;
-        while (i < endIndex && i < lines.size()) {
-            String line = lines.get(i);
+    private void parseRange(int start, int end, List<MacroCommand> out) {
+        Deque<OpenIf> open = new ArrayDeque<>();
+        List<MacroCommand> current = out;
+        
+        for (int i = start; i < end; i++) {
+            MacroLexer.Line line = lines.get(i);
             
-            // 解析 if 语句
-            if (line.startsWith("if ")) {
-                IfStatement ifStmt = parseIfStatement(line);
-                i++; // 跳过 if 行
-                
-                // 解析 if 块
-                List<MacroCommand> ifCommands = new ArrayList<>();
-                List<MacroCommand> elseCommands = new ArrayList<>();
-                boolean inElse = false;
-                int depth = 1;
-                
-                while (i < endIndex && i < lines.size() && depth > 0) {
-                    String currentLine = lines.get(i).trim();
-                    
-                    if (currentLine.startsWith("if ")) {
-                        depth++;
-                        // 嵌套的 if，递归解析
-                        int nestedEnd = findNestedEnd(lines, i, endIndex);
-                        Macro nestedMacro = new Macro();
-                        int nextIndex = parseMacroContent(lines, nestedMacro, i, nestedEnd);
-                        // 将嵌套的宏命令添加到当前块
-                        if (inElse) {
-                            elseCommands.addAll(nestedMacro.commands);
-                        } else {
-                            ifCommands.addAll(nestedMacro.commands);
-                        }
-                        i = nextIndex;
-                        continue;
-                    } else if (currentLine.equals("else") || currentLine.equals("else;")) {
-                        if (depth == 1) {
-                            inElse = true;
-                            i++;
-                            continue;
-                        }
-                    } else if (currentLine.equals("end;") || currentLine.equals("end")) {
-                        depth--;
-                        if (depth == 0) {
-                            i++;
-                            break;
-                        }
-                    }
-                    
-                    if (depth > 0) {
-                        if (inElse && depth == 1) {
-                            // else 块中的命令
-                            MacroCommand cmd = parseCommand(currentLine);
-                            if (cmd != null) {
-                                elseCommands.add(cmd);
-                            }
-                        } else if (!inElse && depth == 1) {
-                            // if 块中的命令
-                            MacroCommand cmd = parseCommand(currentLine);
-                            if (cmd != null) {
-                                ifCommands.add(cmd);
-                            }
-                        }
-                    }
-                    i++;
-                }
-                
-                ifStmt.ifCommands = ifCommands;
-                ifStmt.elseCommands = elseCommands;
-                macro.commands.add(ifStmt);
+            if (!open.isEmpty() && open.peek().elseAt == i) {
+                current = open.peek().stmt.elseCommands;
                 continue;
             }
-            
-            // 解析函数定义
-            if (line.startsWith("fun ")) {
-                Function func = parseFunction(lines, i, endIndex);
-                if (func != null) {
-                    macro.functions.put(func.name, func);
-                    i = func.endIndex;
-                    continue;
-                }
+            if (!open.isEmpty() && open.peek().endAt == i) {
+                current = open.pop().parent;
+                continue;
             }
             
-            // 解析普通命令
-            MacroCommand cmd = parseCommand(line);
-            if (cmd != null) {
-                macro.commands.add(cmd);
+            switch (line.kind) {
+                case IF:
+                    IfStatement stmt = parseIfStatement(line.text);
+                    current.add(stmt);
+                    if (index.unterminated[i]) {
+                        getLogger().warn("[宏解析] 第 {} 行的 if 语句缺少 end", line.lineNumber);
+                    }
+                    open.push(new OpenIf(stmt, current, index.elseAt[i], index.endAt[i]));
+                    current = stmt.ifCommands;
+                    break;
+                case ELSE:
+                case END:
+                    // 多余的 else / end（同层的第二个 else 之后仍属于 else 分支），忽略
+                    break;
+                default:
+                    MacroCommand cmd = parseCommand(line.text);
+                    if (cmd != null) {
+                        current.add(cmd);
+                    }
+                    break;
             }
-            
-            i++;
         }
-        
-        return i;
     }
     
     /**
-     * 解析 if 语句
+     * 正在构建的 if 语句
      */
-    private static IfStatement parseIfStatement(String line) {
-        IfStatement stmt = new IfStatement();
+    private static final class OpenIf {
+        final IfStatement stmt;
+        final List<MacroCommand> parent;
+        final int elseAt;
+        final int endAt;
         
-        // 解析 if me at = (x,y,z)
-        Pattern pattern = Pattern.compile("if\\s+me\\s+at\\s*=\\s*\\(\\s*(-?\\d+)\\s*,\\s*(-?\\d+)\\s*,\\s*(-?\\d+)\\s*\\)");
-        Matcher matcher = pattern.matcher(line);
-        if (matcher.matches()) {
-            stmt.type = IfStatement.Type.POSITION;
-            stmt.x = Integer.parseInt(matcher.group(1));
-            stmt.y = Integer.parseInt(matcher.group(2));
-            stmt.z = Integer.parseInt(matcher.group(3));
-            return stmt;
+        OpenIf(IfStatement stmt, List<MacroCommand> parent, int elseAt, int endAt) {
+            this.stmt = stmt;
+            this.parent = parent;
+            this.elseAt = elseAt;
+            this.endAt = endAt;
         }
-        
-        // 解析 if time = 11000
-        pattern = Pattern.compile("if\\s+time\\s*=\\s*(\\d+)");
-        matcher = pattern.matcher(line);
-        if (matcher.matches()) {
-            stmt.type = IfStatement.Type.TIME;
-            stmt.time = Long.parseLong(matcher.group(1));
-            stmt.timeComparison = IfStatement.TimeComparison.EQUAL;
-            return stmt;
+    }
+    
+    /**
+     * 解析函数定义行: fun name="name" [type= &];
+     * @return 函数对象（尚未填充命令），不是合法的函数定义时返回 null
+     */
+    private static Function parseFunctionHeader(String text) {
+        MacroLexer.Cursor c = new MacroLexer.Cursor(text);
+        String name = null;
+        boolean background = false;
+        if (c.keyword("fun", false) && c.skipSpaces() && c.keyword("name", false) && c.symbol('=')) {
+            name = c.readQuoted();
         }
-        
-        // 解析 if time >= 11000
-        pattern = Pattern.compile("if\\s+time\\s*>=\\s*(\\d+)");
-        matcher = pattern.matcher(line);
-        if (matcher.matches()) {
-            stmt.type = IfStatement.Type.TIME;
-            stmt.time = Long.parseLong(matcher.group(1));
-            stmt.timeComparison = IfStatement.TimeComparison.GREATER_EQUAL;
-            return stmt;
+        if (name != null) {
+            c.skipSpaces();
+            int mark = c.position();
+            if (c.keyword("type", false) && c.symbol('=') && c.keyword("&", false)) {
+                background = true;
+            } else {
+                c.reset(mark);
+            }
+            c.skipSpaces();
+            c.keyword(";", false);
+        }
+        if (name == null || !c.atEnd()) {
+            return null;
         }
         
-        // 解析 if time <= 11000
-        pattern = Pattern.compile("if\\s+time\\s*<=\\s*(\\d+)");
-        matcher = pattern.matcher(line);
-        if (matcher.matches()) {
-            stmt.type = IfStatement.Type.TIME;
-            stmt.time = Long.parseLong(matcher.group(1));
-            stmt.timeComparison = IfStatement.TimeComparison.LESS_EQUAL;
-            return stmt;
+        Function func = new Function();
+        func.name = name;
+        func.isBackground = background;
+        return func;
+    }
+    
+    /**
+     * 解析 if 语句条件
+     * 语法: if me at = (x,y,z) | if time = N | if time >= N | if time <= N | if block near(name=chest, r=32)
+     */
+    private static IfStatement parseIfStatement(String line) {
+        IfStatement stmt = new IfStatement();
+        MacroLexer.Cursor c = new MacroLexer.Cursor(line);
+        
+        if (c.keyword("if", false) && c.skipSpaces()) {
+            int mark = c.position();
+            
+            // 解析 if me at = (x,y,z)
+            if (c.keyword("me", false) && c.skipSpaces() && c.keyword("at", false) && c.symbol('=')) {
+                int[] xyz = readCoordinates(c);
+                if (xyz != null && c.atEnd()) {
+                    stmt.type = IfStatement.Type.POSITION;
+                    stmt.x = xyz[0];
+                    stmt.y = xyz[1];
+                    stmt.z = xyz[2];
+                    return stmt;
+                }
+            }
+            
+            // 解析 if time = / >= / <= 11000
+            c.reset(mark);
+            if (c.keyword("time", false)) {
+                c.skipSpaces();
+                IfStatement.TimeComparison comparison = null;
+                if (c.keyword(">=", false)) {
+                    comparison = IfStatement.TimeComparison.GREATER_EQUAL;
+                } else if (c.keyword("<=", false)) {
+                    comparison = IfStatement.TimeComparison.LESS_EQUAL;
+                } else if (c.keyword("=", false)) {
+                    comparison = IfStatement.TimeComparison.EQUAL;
+                }
+                if (comparison != null) {
+                    c.skipSpaces();
+                    Long time = c.readLong(false);
+                    if (time != null && c.atEnd()) {
+                        stmt.type = IfStatement.Type.TIME;
+                        stmt.time = time;
+                        stmt.timeComparison = comparison;
+                        return stmt;
+                    }
+                }
+            }
+            
+            // 解析 if block near(name=chest, r=32)
+            c.reset(mark);
+            if (c.keyword("block", false) && c.skipSpaces() && c.keyword("near", false)) {
+                String params = readParenthesized(c);
+                if (params != null && c.atEnd() && parseBlockNearParameters(stmt, params)) {
+                    stmt.type = IfStatement.Type.BLOCK_NEAR;
+                    stmt.blockFilter = BlockSearch.getInstance().byName(stmt.blockName);
+                    return stmt;
+                }
+            }
         }
         
         getLogger().warn("[宏解析] 无法解析 if 语句: {}", line);
@@ -339,46 +385,56 @@ public class MacroParser {
     }
     
     /**
-     * 解析函数定义
+     * 解析 block near 参数: name = chest, r = 32（r 可省略，默认 16）
      */
-    private static Function parseFunction(List<String> lines, int startIndex, int endIndex) {
-        String funcLine = lines.get(startIndex).trim();
-        // fun name="name" type= &;
-        Pattern pattern = Pattern.compile("fun\\s+name\\s*=\\s*\"([^\"]+)\"\\s*(?:type\\s*=\\s*&)?\\s*;?");
-        Matcher matcher = pattern.matcher(funcLine);
-        if (!matcher.matches()) {
-            return null;
-        }
-        
-        Function func = new Function();
-        func.name = matcher.group(1);
-        func.isBackground = funcLine.contains("type=") && funcLine.contains("&");
-        func.startIndex = startIndex + 1;
-        
-        // 找到函数结束位置（下一个 fun 或文件结束）
-        int i = startIndex + 1;
-        int depth = 0;
-        while (i < endIndex && i < lines.size()) {
-            String currentLine = lines.get(i).trim();
-            if (currentLine.startsWith("fun ")) {
-                if (depth == 0) {
-                    break;
+    private static boolean parseBlockNearParameters(IfStatement stmt, String params) {
+        for (String[] param : splitParameters(params)) {
+            String key = param[0];
+            String value = param[1];
+            
+            if (key.equals("name")) {
+                stmt.blockName = value;
+            } else if (key.equals("r") || key.equals("radius")) {
+                try {
+                    stmt.radius = Integer.parseInt(value);
+                } catch (NumberFormatException e) {
+                    getLogger().warn("[宏解析] block near 半径格式错误: {}", value);
+                    return false;
+                }
+                if (stmt.radius < 1 || stmt.radius > BlockSearch.MAX_RADIUS) {
+                    getLogger().warn("[宏解析] block near 半径超出范围 (1-{}): {}", BlockSearch.MAX_RADIUS, stmt.radius);
+                    return false;
                 }
-            } else if (currentLine.startsWith("if ")) {
-                depth++;
-            } else if (currentLine.equals("end;") || currentLine.equals("end")) {
-                depth--;
             }
-            i++;
         }
-        func.endIndex = i;
-        
-        // 解析函数内容
-        Macro funcMacro = new Macro();
-        parseMacroContent(lines, funcMacro, func.startIndex, func.endIndex);
-        func.commands = funcMacro.commands;
         
-        return func;
+        if (stmt.blockName == null || stmt.blockName.isEmpty()) {
+            getLogger().warn("[宏解析] block near 缺少 name 参数");
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * 读取 (x,y,z) 坐标，游标应位于左括号处
+     */
+    private static int[] readCoordinates(MacroLexer.Cursor c) {
+        if (!c.symbol('(')) {
+            return null;
+        }
+        Integer x = c.readInt();
+        if (x == null || !c.symbol(',')) {
+            return null;
+        }
+        Integer y = c.readInt();
+        if (y == null || !c.symbol(',')) {
+            return null;
+        }
+        Integer z = c.readInt();
+        if (z == null || !c.symbol(')')) {
+            return null;
+        }
+        return new int[]{x, y, z};
     }
     
     /**
@@ -391,41 +447,21 @@ public class MacroParser {
         
         // check 命令
         if (line.startsWith("check ")) {
-            String content = line.substring(6).trim();
-            if (content.endsWith(";")) {
-                content = content.substring(0, content.length() - 1).trim();
-            }
-            
-            CheckCommand cmd = parseCheckCommand(content);
-            if (cmd != null) {
-                return cmd;
-            }
+            return parseCheckCommand(MacroLexer.stripSemicolon(line.substring(6)));
         }
         
         // wait 命令
         if (line.startsWith("wait")) {
-            String content = line.substring(4).trim();
-            if (content.endsWith(";")) {
-                content = content.substring(0, content.length() - 1).trim();
-            }
-            
             WaitCommand cmd = new WaitCommand();
-            cmd.content = content; // 可能是空（一直等待）或 "xs"、"xm"、"xh" 格式
+            cmd.content = MacroLexer.stripSemicolon(line.substring(4)); // 可能是空（一直等待）或 "xs"、"xm"、"xh" 格式
             return cmd;
         }
         
         // run 命令: run name = "回家"
         if (line.startsWith("run ")) {
-            String content = line.substring(4).trim();
-            if (content.endsWith(";")) {
-                content = content.substring(0, content.length() - 1).trim();
-            }
-            
-            // 解析 run name = "回家"
-            Pattern runPattern = Pattern.compile("name\\s*=\\s*\"([^\"]+)\"", Pattern.CASE_INSENSITIVE);
-            Matcher runMatcher = runPattern.matcher(content);
-            if (runMatcher.find()) {
-                String macroName = runMatcher.group(1);
+            String content = MacroLexer.stripSemicolon(line.substring(4));
+            String macroName = findNameParameter(content);
+            if (macroName != null) {
                 RunCommand cmd = new RunCommand();
                 cmd.macroName = macroName;
                 return cmd;
@@ -437,126 +473,87 @@ public class MacroParser {
         
         // do #command args;
         if (line.startsWith("do ")) {
-            String content = line.substring(3).trim();
-            if (content.endsWith(";")) {
-                content = content.substring(0, content.length() - 1).trim();
-            }
-            
             DoCommand cmd = new DoCommand();
-            cmd.content = content;
+            cmd.content = MacroLexer.stripSemicolon(line.substring(3));
             return cmd;
         }
         
         return null;
     }
     
+    /**
+     * 在内容中查找 name = "..."（不区分大小写）
+     */
+    private static String findNameParameter(String content) {
+        for (int i = 0; i + 4 <= content.length(); i++) {
+            if (content.regionMatches(true, i, "name", 0, 4)) {
+                MacroLexer.Cursor c = new MacroLexer.Cursor(content, i + 4);
+                if (c.symbol('=')) {
+                    String value = c.readQuoted();
+                    if (value != null) {
+                        return value;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+    
     /**
      * 解析 check 命令
      * 语法1: check me have (item = Pickaxe,type = diamond,quantity = 1), do #goto 0 0 0;
      * 语法2: check me nothave (item = raw_iron), do #goto 0 0 0;
+     *        item 也可以是物品标签，如 item = #minecraft:logs
      * 语法3: check me at = (0,0,0),do end;
      * 语法4: check time = 11000,do /home;
      */
     private static CheckCommand parseCheckCommand(String content) {
         CheckCommand cmd = new CheckCommand();
+        MacroLexer.Cursor c = new MacroLexer.Cursor(content);
         
         try {
-            // 解析语法1: check me have (...), do ...
-            Pattern havePattern = Pattern.compile("me\\s+have\\s*\\(([^)]+)\\)\\s*,\\s*do\\s+(.+)", Pattern.CASE_INSENSITIVE);
-            Matcher haveMatcher = havePattern.matcher(content);
-            if (haveMatcher.matches()) {
-                cmd.type = CheckCommand.Type.ITEM;
-                String params = haveMatcher.group(1);
-                cmd.action = haveMatcher.group(2).trim();
-                
-                // 解析参数: item = Pickaxe,type = diamond,quantity = 1
-                Pattern paramPattern = Pattern.compile("(\\w+)\\s*=\\s*([^,]+)");
-                Matcher paramMatcher = paramPattern.matcher(params);
-                while (paramMatcher.find()) {
-                    String key = paramMatcher.group(1).trim().toLowerCase();
-                    String value = paramMatcher.group(2).trim();
-                    
-                    if (key.equals("item")) {
-                        cmd.itemName = value;
-                    } else if (key.equals("type")) {
-                        cmd.itemType = value;
-                    } else if (key.equals("quantity")) {
-                        try {
-                            cmd.quantity = Integer.parseInt(value);
-                            if (cmd.quantity < 1 || cmd.quantity > 64) {
-                                getLogger().warn("[宏解析] check 命令 quantity 超出范围 (1-64): {}", cmd.quantity);
-                                return null;
-                            }
-                        } catch (NumberFormatException e) {
-                            getLogger().warn("[宏解析] check 命令 quantity 格式错误: {}", value);
-                            return null;
-                        }
+            if (c.keyword("me", true) && c.skipSpaces()) {
+                if (c.keyword("have", true)) {
+                    // 解析语法1: check me have (...), do ...
+                    String params = readParenthesized(c);
+                    String action = params != null ? readAction(c) : null;
+                    if (action != null) {
+                        cmd.type = CheckCommand.Type.ITEM;
+                        cmd.action = action;
+                        return parseHaveParameters(cmd, params);
                     }
-                }
-                
-                if (cmd.itemName == null) {
-                    getLogger().warn("[宏解析] check 命令缺少 item 参数");
-                    return null;
-                }
-                if (cmd.quantity == null) {
-                    cmd.quantity = 1; // 默认数量为1
-                }
-                
-                return cmd;
-            }
-            
-            // 解析语法2: check me nothave (item = raw_iron), do ...
-            Pattern notHavePattern = Pattern.compile("me\\s+nothave\\s*\\(([^)]+)\\)\\s*,\\s*do\\s+(.+)", Pattern.CASE_INSENSITIVE);
-            Matcher notHaveMatcher = notHavePattern.matcher(content);
-            if (notHaveMatcher.matches()) {
-                cmd.type = CheckCommand.Type.NOTHAVE;
-                String params = notHaveMatcher.group(1);
-                cmd.action = notHaveMatcher.group(2).trim();
-                
-                // 解析参数: item = raw_iron (nothave 只允许 item 参数)
-                Pattern paramPattern = Pattern.compile("(\\w+)\\s*=\\s*([^,]+)");
-                Matcher paramMatcher = paramPattern.matcher(params);
-                while (paramMatcher.find()) {
-                    String key = paramMatcher.group(1).trim().toLowerCase();
-                    String value = paramMatcher.group(2).trim();
-                    
-                    if (key.equals("item")) {
-                        cmd.itemName = value;
-                    } else {
-                        // nothave 只允许 item 参数，其他参数报错
-                        getLogger().warn("[宏解析] check nothave 命令只允许 item 参数，不允许: {}", key);
-                        return null;
+                } else if (c.keyword("nothave", true)) {
+                    // 解析语法2: check me nothave (item = raw_iron), do ...
+                    String params = readParenthesized(c);
+                    String action = params != null ? readAction(c) : null;
+                    if (action != null) {
+                        cmd.type = CheckCommand.Type.NOTHAVE;
+                        cmd.action = action;
+                        return parseNotHaveParameters(cmd, params);
+                    }
+                } else if (c.keyword("at", true) && c.symbol('=')) {
+                    // 解析语法3: check me at = (x,y,z),do ...
+                    int[] xyz = readCoordinates(c);
+                    String action = xyz != null ? readAction(c) : null;
+                    if (action != null) {
+                        cmd.type = CheckCommand.Type.POSITION;
+                        cmd.x = xyz[0];
+                        cmd.y = xyz[1];
+                        cmd.z = xyz[2];
+                        cmd.action = action;
+                        return cmd;
                     }
                 }
-                
-                if (cmd.itemName == null) {
-                    getLogger().warn("[宏解析] check nothave 命令缺少 item 参数");
-                    return null;
+            } else if (c.keyword("time", true) && c.symbol('=')) {
+                // 解析语法4: check time = 11000,do ...
+                Long time = c.readLong(false);
+                String action = time != null ? readAction(c) : null;
+                if (action != null) {
+                    cmd.type = CheckCommand.Type.TIME;
+                    cmd.time = time;
+                    cmd.action = action;
+                    return cmd;
                 }
-                
-                return cmd;
-            }
-            
-            // 解析语法3: check me at = (x,y,z),do ...
-            Pattern atPattern = Pattern.compile("me\\s+at\\s*=\\s*\\(\\s*(-?\\d+)\\s*,\\s*(-?\\d+)\\s*,\\s*(-?\\d+)\\s*\\)\\s*,\\s*do\\s+(.+)", Pattern.CASE_INSENSITIVE);
-            Matcher atMatcher = atPattern.matcher(content);
-            if (atMatcher.matches()) {
-                cmd.type = CheckCommand.Type.POSITION;
-                cmd.x = Integer.parseInt(atMatcher.group(1));
-                cmd.y = Integer.parseInt(atMatcher.group(2));
-                cmd.z = Integer.parseInt(atMatcher.group(3));
-                cmd.action = atMatcher.group(4).trim();
-                return cmd;
-            }
-            
-            // 解析语法4: check time = 11000,do ...
-            Pattern timePattern = Pattern.compile("time\\s*=\\s*(\\d+)\\s*,\\s*do\\s+(.+)", Pattern.CASE_INSENSITIVE);
-            Matcher timeMatcher = timePattern.matcher(content);
-            if (timeMatcher.matches()) {
-                cmd.type = CheckCommand.Type.TIME;
-                cmd.time = Long.parseLong(timeMatcher.group(1));
-                cmd.action = timeMatcher.group(2).trim();
-                return cmd;
             }
             
             getLogger().warn("[宏解析] check 命令格式错误: {}", content);
@@ -569,23 +566,132 @@ public class MacroParser {
     }
     
     /**
-     * 查找嵌套的 end
+     * 读取 (...) 中的参数文本
+     */
+    private static String readParenthesized(MacroLexer.Cursor c) {
+        c.skipSpaces();
+        if (!c.keyword("(", false)) {
+            return null;
+        }
+        String params = c.readUntil(')');
+        if (params == null || !c.keyword(")", false)) {
+            return null;
+        }
+        return params;
+    }
+    
+    /**
+     * 读取 ", do <动作>"，返回动作文本
      */
-    private static int findNestedEnd(List<String> lines, int startIndex, int endIndex) {
-        int depth = 1;
-        int i = startIndex + 1;
-        while (i < endIndex && i < lines.size() && depth > 0) {
-            String line = lines.get(i);
-            if (line.startsWith("if ")) {
-                depth++;
-            } else if (line.equals("end;") || line.equals("end")) {
-                depth--;
+    private static String readAction(MacroLexer.Cursor c) {
+        if (!c.symbol(',') || !c.keyword("do", true)) {
+            return null;
+        }
+        int mark = c.position();
+        if (!c.skipSpaces()) {
+            c.reset(mark);
+            return null;
+        }
+        String action = c.rest().trim();
+        return action.isEmpty() ? null : action;
+    }
+    
+    /**
+     * 拆分参数: item = Pickaxe,type = diamond,quantity = 1
+     * @return 每项为 [key(小写), value]
+     */
+    private static List<String[]> splitParameters(String params) {
+        List<String[]> result = new ArrayList<>();
+        int start = 0;
+        while (start <= params.length()) {
+            int comma = params.indexOf(',', start);
+            int segmentEnd = comma >= 0 ? comma : params.length();
+            int eq = params.indexOf('=', start);
+            if (eq >= 0 && eq < segmentEnd) {
+                // 键为等号前紧邻的单词字符
+                int keyEnd = eq;
+                while (keyEnd > start && Character.isWhitespace(params.charAt(keyEnd - 1))) {
+                    keyEnd--;
+                }
+                int keyStart = keyEnd;
+                while (keyStart > start && isWordChar(params.charAt(keyStart - 1))) {
+                    keyStart--;
+                }
+                if (keyStart < keyEnd) {
+                    String key = params.substring(keyStart, keyEnd).toLowerCase();
+                    String value = params.substring(eq + 1, segmentEnd).trim();
+                    result.add(new String[]{key, value});
+                }
             }
-            if (depth > 0) {
-                i++;
+            if (comma < 0) {
+                break;
+            }
+            start = comma + 1;
+        }
+        return result;
+    }
+    
+    private static boolean isWordChar(char ch) {
+        return ch == '_' || (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || (ch >= '0' && ch <= '9');
+    }
+    
+    /**
+     * 解析 have 参数: item = Pickaxe,type = diamond,quantity = 1
+     */
+    private static CheckCommand parseHaveParameters(CheckCommand cmd, String params) {
+        for (String[] param : splitParameters(params)) {
+            String key = param[0];
+            String value = param[1];
+            
+            if (key.equals("item")) {
+                cmd.itemName = value;
+            } else if (key.equals("type")) {
+                cmd.itemType = value;
+            } else if (key.equals("quantity")) {
+                try {
+                    cmd.quantity = Integer.parseInt(value);
+                    if (cmd.quantity < 1 || cmd.quantity > 64) {
+                        getLogger().warn("[宏解析] check 命令 quantity 超出范围 (1-64): {}", cmd.quantity);
+                        return null;
+                    }
+                } catch (NumberFormatException e) {
+                    getLogger().warn("[宏解析] check 命令 quantity 格式错误: {}", value);
+                    return null;
+                }
             }
         }
-        return i;
+        
+        if (cmd.itemName == null) {
+            getLogger().warn("[宏解析] check 命令缺少 item 参数");
+            return null;
+        }
+        if (cmd.quantity == null) {
+            cmd.quantity = 1; // 默认数量为1
+        }
+        
+        return cmd;
+    }
+    
+    /**
+     * 解析 nothave 参数: item = raw_iron (nothave 只允许 item 参数)
+     */
+    private static CheckCommand parseNotHaveParameters(CheckCommand cmd, String params) {
+        for (String[] param : splitParameters(params)) {
+            if (param[0].equals("item")) {
+                cmd.itemName = param[1];
+            } else {
+                // nothave 只允许 item 参数，其他参数报错
+                getLogger().warn("[宏解析] check nothave 命令只允许 item 参数，不允许: {}", param[0]);
+                return null;
+            }
+        }
+        
+        if (cmd.itemName == null) {
+            getLogger().warn("[宏解析] check nothave 命令缺少 item 参数");
+            return null;
+        }
+        
+        return cmd;
     }
 }
 
@@ -596,6 +702,10 @@ class Macro {
     String name;
     List<MacroCommand> commands = new ArrayList<>();
     Map<String, Function> functions = new HashMap<>();
+    
+    // 块指纹，用于增量解析
+    long mainFingerprint;
+    Map<String, Long> functionFingerprints = new HashMap<>();
 }
 
 /**
@@ -608,6 +718,25 @@ class Function {
     Map<String, Function> functions = new HashMap<>(); // 函数可以访问宏的所有函数定义（用于递归调用）
     int startIndex;
     int endIndex;
+    
+    // 延迟解析时保存的函数体源码行，解析完成后置为 null
+    volatile List<MacroLexer.Line> pendingBody;
+    
+    /**
+     * 获取函数命令，延迟解析的函数体在第一次访问时解析（线程安全，只解析一次）
+     */
+    List<MacroCommand> getCommands() {
+        if (pendingBody != null) {
+            synchronized (this) {
+                List<MacroLexer.Line> body = pendingBody;
+                if (body != null) {
+                    commands = MacroParser.parseFunctionBody(body);
+                    pendingBody = null;
+                }
+            }
+        }
+        return commands;
+    }
 }
 
 /**
@@ -622,10 +751,20 @@ interface MacroCommand {
  */
 class DoCommand implements MacroCommand {
     String content;
+    private volatile MacroInstruction instruction; // 编译结果，第一次执行时生成
+    
+    MacroInstruction instruction() {
+        MacroInstruction result = instruction;
+        if (result == null) {
+            result = MacroInstruction.compile(content);
+            instruction = result;
+        }
+        return result;
+    }
     
     @Override
     public void execute(MacroExecutor executor) {
-        executor.executeDoCommand(content);
+        executor.executeInstruction(instruction());
     }
 }
 
@@ -634,10 +773,20 @@ class DoCommand implements MacroCommand {
  */
 class WaitCommand implements MacroCommand {
     String content; // 空字符串表示一直等待，否则是 "xs"、"xm"、"xh" 格式
+    private volatile MacroInstruction instruction; // 编译结果，第一次执行时生成
+    
+    MacroInstruction instruction() {
+        MacroInstruction result = instruction;
+        if (result == null) {
+            result = MacroInstruction.compileWait(content);
+            instruction = result;
+        }
+        return result;
+    }
     
     @Override
     public void execute(MacroExecutor executor) {
-        executor.executeWaitCommand(content);
+        executor.executeInstruction(instruction());
     }
 }
 
@@ -666,6 +815,17 @@ class CheckCommand implements MacroCommand {
     // 时间检查参数
     long time;
     
+    private volatile MacroInstruction actionInstruction; // 动作的编译结果，第一次执行时生成
+    
+    MacroInstruction actionInstruction() {
+        MacroInstruction result = actionInstruction;
+        if (result == null) {
+            result = MacroInstruction.compileAction(action);
+            actionInstruction = result;
+        }
+        return result;
+    }
+    
     @Override
     public void execute(MacroExecutor executor) {
         executor.executeCheckCommand(this);
@@ -690,7 +850,8 @@ class RunCommand implements MacroCommand {
 class IfStatement implements MacroCommand {
     enum Type {
         POSITION,
-        TIME
+        TIME,
+        BLOCK_NEAR
     }
     
     enum TimeComparison {
@@ -699,13 +860,48 @@ class IfStatement implements MacroCommand {
         LESS_EQUAL
     }
     
+    static final int POSITION_TOLERANCE = 2;
+    static final long TIME_TOLERANCE = 50;
+    
     Type type;
     int x, y, z;
     long time;
     TimeComparison timeComparison = TimeComparison.EQUAL;
+    String blockName;
+    int radius = 16;
+    Predicate<BlockInfo> blockFilter;
     List<MacroCommand> ifCommands = new ArrayList<>();
     List<MacroCommand> elseCommands = new ArrayList<>();
     
+    /**
+     * 判断条件是否成立
+     * @param currentTime 一天内时间
+     * @param pos 玩家位置（压缩坐标），无法获取时为 PackedBlockPos.NONE
+     */
+    boolean test(long currentTime, long pos) {
+        if (type == Type.POSITION) {
+            return pos != PackedBlockPos.NONE
+                && Math.abs(PackedBlockPos.getX(pos) - x) <= POSITION_TOLERANCE
+                && Math.abs(PackedBlockPos.getY(pos) - y) <= POSITION_TOLERANCE
+                && Math.abs(PackedBlockPos.getZ(pos) - z) <= POSITION_TOLERANCE;
+        }
+        if (type == Type.TIME) {
+            switch (timeComparison) {
+                case EQUAL:
+                    return Math.abs(currentTime - time) <= TIME_TOLERANCE;
+                case GREATER_EQUAL:
+                    return currentTime >= (time - TIME_TOLERANCE);
+                case LESS_EQUAL:
+                    return currentTime <= (time + TIME_TOLERANCE);
+            }
+        }
+        if (type == Type.BLOCK_NEAR) {
+            // 不等待搜索，使用最近一次的结果（过期时在后台刷新）
+            return BlockSearch.getInstance().latestNearest(blockFilter, radius) != PackedBlockPos.NONE;
+        }
+        return false;
+    }
+    
     @Override
     public void execute(MacroExecutor executor) {
         // IfStatement 的执行逻辑需要访问版本接口，将在 MacroExecutor 中实现
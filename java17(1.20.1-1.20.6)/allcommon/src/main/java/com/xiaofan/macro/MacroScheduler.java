@@ -0,0 +1,364 @@
+package com.xiaofan.macro;
+
+import com.xiaofan.BlockSearch;
+import com.xiaofan.TimerWheel;
+import com.xiaofan.api.ILogger;
+import com.xiaofan.api.VersionProvider;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 协作式宏调度器（tick 调度模式）
+ * 每个正在执行的宏（以及后台函数）是一个 Fiber：程序计数器 + 帧栈组成的可恢复状态机，
+ * 由客户端 tick 在时间预算内轮流推进，不占用线程
+ *
+ * wait 变为共享时间轮上的定时器，等待中的 Fiber 不在运行队列里，到期或宏停止时才放回；
+ * 阻塞的 Baritone 命令和方块搜索异步执行，Fiber 同样移出运行队列，由返回的 future 完成时放回，
+ * 宏停止时取消还在执行的 Baritone 任务
+ * 循环宏的暂停与线程模式一致：每轮之间 500ms，顶层 if 语句之后 100ms；
+ * 条件响应模式下每轮结束后订阅本轮 if 条件，结果变化时再继续
+ */
+class MacroScheduler {
+    private static final long MILLIS_PER_TICK = 50;
+    private static final long LOOP_PAUSE_TICKS = 500 / MILLIS_PER_TICK;
+    private static final long IF_PAUSE_TICKS = 100 / MILLIS_PER_TICK;
+    private static final int MAX_FRAME_DEPTH = 256;
+
+    private final ConditionFeed conditionFeed;
+    private final Deque<Fiber> runQueue = new ArrayDeque<>();      // 只在 tick 线程访问
+    private final Queue<Fiber> spawned = new ConcurrentLinkedQueue<>();   // 新启动或被唤醒的 Fiber
+    private final AtomicInteger sleeping = new AtomicInteger();
+
+    MacroScheduler(ConditionFeed conditionFeed) {
+        this.conditionFeed = conditionFeed;
+    }
+
+    private static ILogger getLogger() {
+        return VersionProvider.getVersion().getLogger();
+    }
+
+    /**
+     * 启动宏（可在任意线程调用，下一个 tick 开始执行）
+     */
+    void startMacro(MacroExecutor executor, List<MacroCommand> commands, boolean loop) {
+        Fiber fiber = new Fiber(executor, null);
+        fiber.frames.push(new Frame(commands, loop, false, false, true));
+        spawned.add(fiber);
+    }
+
+    /**
+     * 推进所有 Fiber，由客户端 tick 调用
+     * 超出时间预算时停止，剩余的 Fiber 在下一个 tick 优先执行
+     */
+    void tick() {
+        Fiber fiber;
+        while ((fiber = spawned.poll()) != null) {
+            runQueue.add(fiber);
+        }
+
+        long deadline = System.nanoTime() + MacroSettings.TICK_BUDGET_MICROS * 1000;
+        int count = runQueue.size();
+        for (int i = 0; i < count && System.nanoTime() - deadline < 0; i++) {
+            fiber = runQueue.poll();
+            Progress progress = fiber.run(deadline);
+            if (progress == Progress.FINISHED) {
+                fiber.finish();
+            } else if (progress == Progress.YIELDED) {
+                runQueue.add(fiber);
+            }
+            // SLEEPING：由时间轮或停止监听放回 spawned
+        }
+    }
+
+    /**
+     * 当前活动的 Fiber 数量
+     */
+    int getFiberCount() {
+        return runQueue.size() + spawned.size() + sleeping.get();
+    }
+
+    private enum Progress {
+        FINISHED,   // 执行完毕或宏已停止
+        YIELDED,    // 超出时间预算，下个 tick 继续
+        SLEEPING    // 进入 wait 或等待异步任务，移出运行队列
+    }
+
+    /**
+     * 执行帧：一个命令列表及其程序计数器
+     */
+    private static final class Frame {
+        final List<MacroCommand> commands;
+        final boolean loop;        // 包含条件语句的宏 / 函数体循环执行
+        final boolean pauseAfter;  // 循环体中顶层 if 的分支，结束后暂停
+        final boolean branch;      // if 分支
+        final boolean topLevel;    // 宏的顶层命令，执行时输出日志
+        final Map<IfStatement, Boolean> conditions; // 条件响应模式下本轮 if 条件的结果
+        int pc;
+
+        Frame(List<MacroCommand> commands, boolean loop, boolean pauseAfter, boolean branch, boolean topLevel) {
+            this.commands = commands;
+            this.loop = loop;
+            this.pauseAfter = pauseAfter;
+            this.branch = branch;
+            this.topLevel = topLevel;
+            this.conditions = loop && MacroSettings.REACTIVE_CONDITIONS ? new LinkedHashMap<>() : null;
+        }
+    }
+
+    /**
+     * 协作式执行单元
+     */
+    private final class Fiber {
+        final MacroExecutor executor;
+        final String backgroundFunction; // 后台函数名，宏本身为 null
+        final Deque<Frame> frames = new ArrayDeque<>();
+        final AtomicBoolean asleep = new AtomicBoolean(false);
+        final Runnable wake = this::wake;
+        volatile TimerWheel.Timeout sleepTimer;
+        volatile ConditionFeed.Subscription subscription;
+        long sleepTicks;    // 本轮推进中请求的等待 tick 数，0 表示不等待
+        Map<IfStatement, Boolean> awaitConditions; // 本轮推进中请求订阅的条件
+        CompletableFuture<?> awaitFuture;           // 本轮推进中请求等待的异步任务
+        boolean cancelOnStop;                       // 宏停止时是否取消 awaitFuture
+        volatile CompletableFuture<?> blockedOn;
+        volatile boolean cancelBlocked;
+
+        Fiber(MacroExecutor executor, String backgroundFunction) {
+            this.executor = executor;
+            this.backgroundFunction = backgroundFunction;
+        }
+
+        /**
+         * 推进直到需要等待或超出时间预算
+         */
+        Progress run(long deadline) {
+            while (true) {
+                if (executor.isStopped()) {
+                    if (awaitFuture != null && cancelOnStop) {
+                        awaitFuture.cancel(true);
+                    }
+                    return Progress.FINISHED;
+                }
+                if (sleepTicks > 0) {
+                    sleep(sleepTicks);
+                    sleepTicks = 0;
+                    return Progress.SLEEPING;
+                }
+                if (awaitConditions != null) {
+                    sleepUntilChanged(awaitConditions);
+                    awaitConditions = null;
+                    return Progress.SLEEPING;
+                }
+                if (awaitFuture != null) {
+                    CompletableFuture<?> future = awaitFuture;
+                    awaitFuture = null;
+                    if (!future.isDone()) {
+                        sleepUntilDone(future, cancelOnStop);
+                        return Progress.SLEEPING;
+                    }
+                }
+                if (System.nanoTime() - deadline >= 0) {
+                    return Progress.YIELDED;
+                }
+
+                Frame frame = frames.peek();
+                if (frame == null) {
+                    return Progress.FINISHED;
+                }
+                if (frame.pc >= frame.commands.size()) {
+                    if (frame.loop) {
+                        frame.pc = 0;
+                        if (frame.conditions != null && !frame.conditions.isEmpty()) {
+                            awaitConditions = new LinkedHashMap<>(frame.conditions);
+                            frame.conditions.clear();
+                        } else {
+                            sleepTicks(LOOP_PAUSE_TICKS);
+                        }
+                    } else {
+                        frames.pop();
+                        if (frame.branch) {
+                            executor.logBranchFinished();
+                        }
+                        if (frame.pauseAfter) {
+                            sleepTicks(IF_PAUSE_TICKS);
+                        }
+                    }
+                    continue;
+                }
+
+                int index = frame.pc++;
+                MacroCommand cmd = frame.commands.get(index);
+                if (frame.topLevel) {
+                    executor.logCommand(index, cmd, frame.loop);
+                }
+                try {
+                    step(frame, cmd);
+                } catch (Exception e) {
+                    getLogger().error("[宏执行] 执行命令时出错", e);
+                }
+            }
+        }
+
+        private void step(Frame frame, MacroCommand cmd) {
+            if (cmd instanceof IfStatement stmt) {
+                if (stmt.type == IfStatement.Type.BLOCK_NEAR
+                        && !BlockSearch.getInstance().hasFreshResult(stmt.blockFilter, stmt.radius)) {
+                    // 方块搜索在后台进行，完成后重新执行这个 if；搜索结果是共享的，宏停止时不取消
+                    await(BlockSearch.getInstance().refresh(stmt.blockFilter, stmt.radius), false);
+                    frame.pc--;
+                    return;
+                }
+                List<MacroCommand> branch = executor.selectBranch(stmt);
+                if (frame.conditions != null) {
+                    frame.conditions.put(stmt, branch == stmt.ifCommands);
+                }
+                push(new Frame(branch, false, frame.loop && frame.conditions == null, true, false));
+            } else if (cmd instanceof CheckCommand check) {
+                MacroInstruction action = executor.evaluateCheck(check);
+                if (action != null) {
+                    execute(action);
+                }
+            } else if (cmd instanceof DoCommand doCommand) {
+                execute(doCommand.instruction());
+            } else if (cmd instanceof WaitCommand waitCommand) {
+                execute(waitCommand.instruction());
+            } else {
+                // run 等不会阻塞的命令直接执行
+                cmd.execute(executor);
+            }
+        }
+
+        private void execute(MacroInstruction instruction) {
+            if (executor.isStopped()) {
+                return;
+            }
+            if (instruction instanceof MacroInstruction.CallFunction call) {
+                Function func = executor.resolveFunction(call.name);
+                if (func == null) {
+                    return;
+                }
+                List<MacroCommand> body = func.getCommands();
+                Frame frame = new Frame(body, MacroExecutor.hasConditional(body), false, false, false);
+                if (func.isBackground) {
+                    getLogger().info("[宏执行] 函数 {} 在后台开始执行", func.name);
+                    Fiber fiber = new Fiber(executor, func.name);
+                    fiber.frames.push(frame);
+                    spawned.add(fiber);
+                } else {
+                    push(frame);
+                }
+            } else if (instruction instanceof MacroInstruction.Wait wait) {
+                getLogger().info("[宏执行] 执行 wait 命令，将阻塞 {}ms ({} {})", wait.millis, wait.value, wait.unit);
+                sleepTicks((wait.millis + MILLIS_PER_TICK - 1) / MILLIS_PER_TICK);
+            } else if (instruction instanceof MacroInstruction.WaitForever) {
+                getLogger().info("[宏执行] 执行 wait 命令，将一直阻塞直到宏结束");
+                sleepTicks = Long.MAX_VALUE;
+            } else if (instruction instanceof MacroInstruction.BaritoneBlocking blocking) {
+                await(executor.executeBaritoneAsync(blocking.command, null), true);
+            } else if (instruction instanceof MacroInstruction.BaritoneGoto move) {
+                await(executor.executeBaritoneAsync(move.command, new int[]{move.x, move.y, move.z}), true);
+            } else {
+                executor.executeInstruction(instruction);
+            }
+        }
+
+        private void push(Frame frame) {
+            if (frames.size() >= MAX_FRAME_DEPTH) {
+                getLogger().error("[宏执行] 函数调用层数超过 " + MAX_FRAME_DEPTH + "，停止宏");
+                executor.stop();
+                return;
+            }
+            frames.push(frame);
+        }
+
+        private void sleepTicks(long ticks) {
+            sleepTicks = ticks;
+        }
+
+        private void await(CompletableFuture<?> future, boolean cancel) {
+            awaitFuture = future;
+            cancelOnStop = cancel;
+        }
+
+        /**
+         * 移出运行队列，注册到期定时器（一直等待时不注册）和停止监听
+         */
+        private void sleep(long ticks) {
+            asleep.set(true);
+            sleeping.incrementAndGet();
+            if (ticks != Long.MAX_VALUE) {
+                sleepTimer = TimerWheel.getInstance().scheduleTicks(ticks, wake);
+            }
+            executor.addStopListener(wake);
+        }
+
+        /**
+         * 移出运行队列，订阅条件变化和停止监听
+         */
+        private void sleepUntilChanged(Map<IfStatement, Boolean> conditions) {
+            asleep.set(true);
+            sleeping.incrementAndGet();
+            subscription = conditionFeed.subscribe(conditions, wake);
+            executor.addStopListener(wake);
+        }
+
+        /**
+         * 移出运行队列，future 完成时放回，同时注册停止监听
+         * @param cancel 宏停止时是否取消 future
+         */
+        private void sleepUntilDone(CompletableFuture<?> future, boolean cancel) {
+            asleep.set(true);
+            sleeping.incrementAndGet();
+            blockedOn = future;
+            cancelBlocked = cancel;
+            future.whenComplete((result, error) -> wake());
+            executor.addStopListener(wake);
+        }
+
+        /**
+         * 到期、条件变化、异步任务完成或宏停止时放回队列（只生效一次）
+         */
+        private void wake() {
+            if (!asleep.compareAndSet(true, false)) {
+                return;
+            }
+            CompletableFuture<?> future = blockedOn;
+            if (future != null) {
+                blockedOn = null;
+                if (cancelBlocked && executor.isStopped()) {
+                    future.cancel(true);
+                }
+            }
+            TimerWheel.Timeout timer = sleepTimer;
+            if (timer != null) {
+                timer.cancel();
+                sleepTimer = null;
+            }
+            ConditionFeed.Subscription sub = subscription;
+            if (sub != null) {
+                sub.cancel();
+                subscription = null;
+            }
+            executor.removeStopListener(wake);
+            sleeping.decrementAndGet();
+            spawned.add(this);
+        }
+
+        void finish() {
+            if (backgroundFunction == null) {
+                executor.finish();
+            } else {
+                getLogger().info("[宏执行] 函数 {} 在后台执行完成", backgroundFunction);
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.xiaofan.macro;
+
+/**
+ * 宏系统可调参数
+ * 通过 JVM 系统属性配置（如 -Dplayerbot.macro.reloadDebounceMs=500），未设置时使用默认值
+ */
+public final class MacroSettings {
+    private static final String PREFIX = "playerbot.macro.";
+
+    /**
+     * 热重载防抖窗口（毫秒）：同一文件在窗口内的多次修改事件只触发一次重新加载
+     */
+    public static final long RELOAD_DEBOUNCE_MS = getLong("reloadDebounceMs", 300, 0, 60_000);
+
+    /**
+     * 延迟解析函数体：加载时只记录函数名和源码行，第一次调用函数时才解析
+     */
+    public static final boolean LAZY_FUNCTIONS = getBoolean("lazyFunctions", false);
+
+    /**
+     * tick 调度模式：宏作为可恢复的状态机在客户端 tick 中推进，不再每个宏占用一个线程
+     */
+    public static final boolean TICK_SCHEDULER = getBoolean("tickScheduler", false);
+
+    /**
+     * tick 调度模式下每个 tick 推进宏的时间预算（微秒）
+     */
+    public static final long TICK_BUDGET_MICROS = getLong("tickBudgetMicros", 2000, 100, 50_000);
+
+    /**
+     * 虚拟线程模式：JVM 支持时（Java 21+）宏和后台函数运行在虚拟线程上，不支持时回退到平台线程
+     */
+    public static final boolean VIRTUAL_THREADS = getBoolean("virtualThreads", false);
+
+    /**
+     * 条件响应模式：循环执行的宏在一轮结束后挂起，直到本轮顶层 if 条件（时间、位置）的结果发生变化才执行下一轮，
+     * 不再每 500ms 重新执行一轮
+     */
+    public static final boolean REACTIVE_CONDITIONS = getBoolean("reactiveConditions", false);
+
+    private MacroSettings() {
+    }
+
+    /**
+     * 读取 long 类型参数，超出范围或格式错误时使用默认值
+     */
+    static long getLong(String key, long defaultValue, long min, long max) {
+        String value = System.getProperty(PREFIX + key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            long parsed = Long.parseLong(value.trim());
+            return parsed < min || parsed > max ? defaultValue : parsed;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * 读取 boolean 类型参数
+     */
+    static boolean getBoolean(String key, boolean defaultValue) {
+        String value = System.getProperty(PREFIX + key);
+        return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+}
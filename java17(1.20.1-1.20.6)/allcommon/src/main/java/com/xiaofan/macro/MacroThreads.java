@@ -0,0 +1,73 @@
+package com.xiaofan.macro;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 宏执行线程
+ * 开启 playerbot.macro.virtualThreads 且 JVM 支持虚拟线程（Java 21+）时，宏和后台函数运行在虚拟线程上，
+ * 等待时只占用很少的内存，不再每个宏占用一个平台线程；否则沿用平台线程
+ *
+ * 项目以 Java 17 编译，虚拟线程 API 在运行时通过反射获取
+ */
+final class MacroThreads {
+    private static final ThreadFactory VIRTUAL_FACTORY = MacroSettings.VIRTUAL_THREADS ? lookupVirtualFactory() : null;
+
+    private MacroThreads() {
+    }
+
+    /**
+     * 是否使用虚拟线程
+     */
+    static boolean isVirtual() {
+        return VIRTUAL_FACTORY != null;
+    }
+
+    /**
+     * 创建执行宏的线程池
+     */
+    static ExecutorService newExecutor() {
+        if (VIRTUAL_FACTORY != null) {
+            try {
+                // Executors.newThreadPerTaskExecutor(ThreadFactory)，Java 21+
+                return (ExecutorService) Executors.class
+                    .getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, VIRTUAL_FACTORY);
+            } catch (ReflectiveOperationException e) {
+                // 不会发生：能创建虚拟线程工厂说明该方法存在
+            }
+        }
+        return Executors.newCachedThreadPool();
+    }
+
+    /**
+     * 启动一个线程（后台函数等）
+     */
+    static Thread start(String name, Runnable task) {
+        Thread thread;
+        if (VIRTUAL_FACTORY != null) {
+            thread = VIRTUAL_FACTORY.newThread(task);
+            thread.setName(name);
+        } else {
+            thread = new Thread(task, name);
+        }
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * 通过反射获取 Thread.ofVirtual().name("Macro-", 0).factory()
+     * @return 虚拟线程工厂，JVM 不支持时返回 null
+     */
+    private static ThreadFactory lookupVirtualFactory() {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "Macro-", 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
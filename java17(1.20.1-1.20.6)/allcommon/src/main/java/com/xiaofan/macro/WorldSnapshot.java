@@ -0,0 +1,114 @@
+package com.xiaofan.macro;
+
+import com.xiaofan.api.IMinecraftVersion;
+import com.xiaofan.api.IPlayerProvider;
+import com.xiaofan.api.IPlayerStatusChecker;
+import com.xiaofan.api.IWorldTimeProvider;
+import com.xiaofan.api.ItemInfo;
+import com.xiaofan.api.PackedBlockPos;
+
+/**
+ * 世界状态快照
+ * 每个客户端 tick 在客户端线程上采集一次（玩家位置、一天内时间、睡觉/死亡状态、背包），
+ * 通过 BaritoneTaskManager 发布。宏的条件判断都读取快照，不再从工作线程直接访问游戏对象
+ *
+ * 快照创建后不可修改；version 每次采集递增。背包与上一个快照相同时沿用上一个快照的背包索引
+ */
+final class WorldSnapshot {
+    private static final ItemInfo[] NO_ITEMS = new ItemInfo[0];
+    static final WorldSnapshot EMPTY = new WorldSnapshot(0, false, false, PackedBlockPos.NONE, 0, false, false, NO_ITEMS, InventoryIndex.EMPTY);
+
+    final long version;
+    final boolean playerPresent;
+    final boolean worldPresent;
+    final long position;        // 玩家位置（压缩坐标），玩家不存在时为 PackedBlockPos.NONE
+    final long dayTime;         // 一天内时间，世界不存在时为 0
+    final boolean sleeping;
+    final boolean dead;
+    final InventoryIndex inventory;
+    private final ItemInfo[] slots;     // 按槽位，空槽位为 null，用于和下一次采集比较
+
+    private WorldSnapshot(long version, boolean playerPresent, boolean worldPresent, long position,
+                          long dayTime, boolean sleeping, boolean dead, ItemInfo[] slots, InventoryIndex inventory) {
+        this.version = version;
+        this.playerPresent = playerPresent;
+        this.worldPresent = worldPresent;
+        this.position = position;
+        this.dayTime = dayTime;
+        this.sleeping = sleeping;
+        this.dead = dead;
+        this.slots = slots;
+        this.inventory = inventory;
+    }
+
+    /**
+     * 采集当前状态（在客户端线程上调用）
+     * @param previous 上一个快照
+     */
+    static WorldSnapshot capture(IMinecraftVersion mc, WorldSnapshot previous) {
+        return capture(mc, previous, false);
+    }
+
+    /**
+     * 采集当前状态（在客户端线程上调用）
+     * @param previous 上一个快照
+     * @param rebuildInventory 即使背包没有变化也重建背包索引（物品分类表重建后，旧索引中的标签已过时）
+     */
+    static WorldSnapshot capture(IMinecraftVersion mc, WorldSnapshot previous, boolean rebuildInventory) {
+        long version = previous.version + 1;
+        IPlayerProvider playerProvider = mc.getPlayerProvider();
+        IWorldTimeProvider worldTimeProvider = mc.getWorldTimeProvider();
+        IPlayerStatusChecker statusChecker = mc.getPlayerStatusChecker();
+
+        boolean worldPresent = worldTimeProvider.isWorldPresent();
+        long dayTime = worldPresent ? worldTimeProvider.getDayTime() : 0;
+        long position = playerProvider.isPlayerPresent() ? playerProvider.getPlayerPackedPosition() : PackedBlockPos.NONE;
+        if (position == PackedBlockPos.NONE) {
+            return new WorldSnapshot(version, false, worldPresent, PackedBlockPos.NONE, dayTime, false, false, NO_ITEMS, InventoryIndex.EMPTY);
+        }
+
+        ItemInfo[] slots = new ItemInfo[playerProvider.getInventorySize()];
+        for (int i = 0; i < slots.length; i++) {
+            ItemInfo itemInfo = playerProvider.getItemInSlot(i);
+            slots[i] = itemInfo == null || itemInfo.isEmpty() ? null : itemInfo;
+        }
+        InventoryIndex inventory;
+        if (!rebuildInventory && sameSlots(slots, previous.slots)) {
+            slots = previous.slots;
+            inventory = previous.inventory;
+        } else {
+            inventory = InventoryIndex.build(slots, mc.getItemRegistry());
+        }
+        return new WorldSnapshot(version, true, worldPresent, position, dayTime,
+            statusChecker.isSleeping(), statusChecker.isDeadOrDying(), slots, inventory);
+    }
+
+    /**
+     * 两次采集的各槽位物品和数量是否相同
+     */
+    private static boolean sameSlots(ItemInfo[] current, ItemInfo[] previous) {
+        if (current.length != previous.length) {
+            return false;
+        }
+        for (int i = 0; i < current.length; i++) {
+            ItemInfo a = current[i];
+            ItemInfo b = previous[i];
+            if (a == null || b == null) {
+                if (a != b) {
+                    return false;
+                }
+            } else if (a.getCount() != b.getCount() || !a.getItemKey().equals(b.getItemKey())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 玩家位置（用于日志）
+     * @return [x, y, z]，玩家不存在时返回 null
+     */
+    int[] positionArray() {
+        return PackedBlockPos.toArray(position);
+    }
+}
@@ -0,0 +1,48 @@
+package com.xiaofan;
+
+import com.xiaofan.api.PackedBlockPos;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 逐格找床的耗时：相邻的床（最好情况）、角落的床（最坏情况）和范围内没有床
+ */
+@Tag("benchmark")
+class AutoSleepControllerBenchmark {
+    private static final int R = AutoSleepController.SEARCH_RANGE;
+    private static final int OPS = 2_000;
+
+    private static double measure(CubeWorld world) {
+        return Bench.nanosPerOp(OPS, () -> AutoSleepController.scanNearbyBed(world.center, world));
+    }
+
+    @Test
+    void scanNearbyBed() {
+        long center = PackedBlockPos.pack(0, 64, 0);
+        CubeWorld world = new CubeWorld(center, R);
+
+        world.set(0, -1, 1, CubeWorld.BED);
+        Bench.report("scanNearbyBed 相邻的床", "%.0f ns/op", measure(world));
+
+        world.clear();
+        world.set(R, R, R, CubeWorld.BED);
+        Bench.report("scanNearbyBed 角落的床", "%.0f ns/op", measure(world));
+
+        world.clear();
+        Bench.report("scanNearbyBed 没有床", "%.0f ns/op", measure(world));
+    }
+
+    @Test
+    void scanNearbyBedAllocation() {
+        long center = PackedBlockPos.pack(0, 64, 0);
+        CubeWorld world = new CubeWorld(center, R);
+        world.set(R, R, R, CubeWorld.BED);
+
+        // 压缩坐标逐格查询，整个扫描不应分配对象
+        double bytes = Bench.bytesPerOp(OPS, () -> AutoSleepController.scanNearbyBed(center, world));
+        Bench.report("scanNearbyBed 角落的床 分配", "%.2f B/op", bytes);
+        assertTrue(bytes < 1, () -> "扫描分配了 " + bytes + " B/op");
+    }
+}
@@ -0,0 +1,65 @@
+package com.xiaofan;
+
+import com.xiaofan.api.PackedBlockPos;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 逐格找床：按距离从近到远扫描，返回的床和逐个比较得到的最近距离一致
+ */
+class AutoSleepControllerTest {
+    private static final int R = AutoSleepController.SEARCH_RANGE;
+
+    private static long distanceSq(long a, long b) {
+        long dx = PackedBlockPos.getX(a) - PackedBlockPos.getX(b);
+        long dy = PackedBlockPos.getY(a) - PackedBlockPos.getY(b);
+        long dz = PackedBlockPos.getZ(a) - PackedBlockPos.getZ(b);
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    @Test
+    void scanReturnsNearestBed() {
+        Random random = new Random(2024);
+        long center = PackedBlockPos.pack(100, 64, -200);
+        // 比搜索范围大一格，范围外的床不能被找到
+        CubeWorld world = new CubeWorld(center, R + 1);
+
+        for (int layout = 0; layout < 2000; layout++) {
+            world.clear();
+            long expected = Long.MAX_VALUE;
+            for (int i = random.nextInt(6); i > 0; i--) {
+                int dx = random.nextInt(2 * R + 3) - R - 1;
+                int dy = random.nextInt(2 * R + 3) - R - 1;
+                int dz = random.nextInt(2 * R + 3) - R - 1;
+                world.set(dx, dy, dz, CubeWorld.BED);
+                if (Math.abs(dx) <= R && Math.abs(dy) <= R && Math.abs(dz) <= R) {
+                    expected = Math.min(expected, (long) dx * dx + dy * dy + dz * dz);
+                }
+            }
+
+            long found = AutoSleepController.scanNearbyBed(center, world);
+            if (expected == Long.MAX_VALUE) {
+                assertEquals(PackedBlockPos.NONE, found, "布局 " + layout);
+            } else {
+                assertNotEquals(PackedBlockPos.NONE, found, "布局 " + layout);
+                assertTrue(world.getBlockState(found).isBed(), "布局 " + layout);
+                assertEquals(expected, distanceSq(found, center), "布局 " + layout);
+            }
+        }
+    }
+
+    @Test
+    void adjacentBedStopsScanEarly() {
+        long center = PackedBlockPos.pack(0, 70, 0);
+        CubeWorld world = new CubeWorld(center, R);
+        world.set(1, 0, 0, CubeWorld.BED);
+        world.set(R, R, R, CubeWorld.BED);
+
+        assertEquals(PackedBlockPos.offset(center, 1, 0, 0), AutoSleepController.scanNearbyBed(center, world));
+        // 中心和 6 个相邻格之内
+        assertTrue(world.lookups <= 7, () -> "查询了 " + world.lookups + " 格");
+    }
+}
@@ -0,0 +1,64 @@
+package com.xiaofan;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.LongSupplier;
+
+/**
+ * 基准测试的计时工具（用 -Pbenchmark 运行标记为 benchmark 的测试）
+ * 没有引入 JMH：预热若干轮后测量多轮，取最快一轮的平均耗时；结果写入 sink，避免被 JIT 消除
+ */
+public final class Bench {
+    private static volatile long sink;
+
+    private Bench() {
+    }
+
+    /**
+     * 每次操作的耗时
+     * @param ops 每轮执行的次数
+     * @return 最快一轮中每次操作的纳秒数
+     */
+    public static double nanosPerOp(int ops, LongSupplier op) {
+        double best = Double.MAX_VALUE;
+        for (int round = 0; round < 15; round++) {
+            long acc = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < ops; i++) {
+                acc += op.getAsLong();
+            }
+            long elapsed = System.nanoTime() - start;
+            sink += acc;
+            // 前 5 轮为预热
+            if (round >= 5) {
+                best = Math.min(best, (double) elapsed / ops);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 每次操作在当前线程上分配的字节数（预热后测量）
+     */
+    public static double bytesPerOp(int ops, LongSupplier op) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long acc = 0;
+        for (int i = 0; i < ops; i++) {
+            acc += op.getAsLong();
+        }
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ops; i++) {
+            acc += op.getAsLong();
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        sink += acc;
+        return (double) allocated / ops;
+    }
+
+    /**
+     * 输出一行结果
+     */
+    public static void report(String name, String format, Object... args) {
+        System.out.printf("[基准] %-40s %s%n", name, String.format(format, args));
+    }
+}
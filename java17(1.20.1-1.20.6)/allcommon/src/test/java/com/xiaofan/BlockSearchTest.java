@@ -0,0 +1,193 @@
+package com.xiaofan;
+
+import com.xiaofan.api.BlockInfo;
+import com.xiaofan.api.IBlockInteractor;
+import com.xiaofan.api.IPlayerProvider;
+import com.xiaofan.api.PackedBlockPos;
+import com.xiaofan.api.SectionSnapshot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 方块搜索：结果与逐个比较一致，只复制与搜索球相交且含目标方块的区块段，逐格查找不在客户端线程上进行，
+ * 未变化的区块段使用缓存
+ */
+class BlockSearchTest {
+    private static final BlockInfo CHEST = new BlockInfo(null, "minecraft:chest", "chest", false);
+
+    private final Map<Long, BlockInfo> world = new HashMap<>();
+    private final List<int[]> snapshots = new ArrayList<>();    // 请求过快照的区块段 [chunkX, sectionY, chunkZ]
+    private final Set<Thread> scanThreads = ConcurrentHashMap.newKeySet();
+    private long player;
+
+    @BeforeEach
+    void setUp() {
+        TestMinecraft mc = TestMinecraft.install();
+        mc.playerProvider = fakePlayer();
+        mc.blockInteractor = fakeWorld();
+    }
+
+    private IPlayerProvider fakePlayer() {
+        IPlayerProvider stub = TestMinecraft.stub(IPlayerProvider.class);
+        return (IPlayerProvider) Proxy.newProxyInstance(IPlayerProvider.class.getClassLoader(),
+            new Class<?>[]{IPlayerProvider.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getPlayerPackedPosition":
+                        return player;
+                    case "isOnMainThread":
+                        return true;
+                    default:
+                        return method.invoke(stub, args);
+                }
+            });
+    }
+
+    @SuppressWarnings("unchecked")
+    private IBlockInteractor fakeWorld() {
+        IBlockInteractor stub = TestMinecraft.stub(IBlockInteractor.class);
+        return (IBlockInteractor) Proxy.newProxyInstance(IBlockInteractor.class.getClassLoader(),
+            new Class<?>[]{IBlockInteractor.class}, (proxy, method, args) -> {
+                if (!method.getName().equals("snapshotSection")) {
+                    return method.invoke(stub, args);
+                }
+                return snapshotSection((int) args[0], (int) args[1], (int) args[2], (Predicate<BlockInfo>) args[3]);
+            });
+    }
+
+    /**
+     * 与版本实现一样：调色板（这里是区块段内的方块）不含目标方块时返回 EMPTY，否则复制区块段
+     */
+    private SectionSnapshot snapshotSection(int chunkX, int sectionY, int chunkZ, Predicate<BlockInfo> filter) {
+        snapshots.add(new int[]{chunkX, sectionY, chunkZ});
+        Map<Long, BlockInfo> copy = new HashMap<>();
+        for (Map.Entry<Long, BlockInfo> e : world.entrySet()) {
+            long pos = e.getKey();
+            if (PackedBlockPos.getX(pos) >> 4 == chunkX && PackedBlockPos.getY(pos) >> 4 == sectionY
+                && PackedBlockPos.getZ(pos) >> 4 == chunkZ) {
+                copy.put(pos, e.getValue());
+            }
+        }
+        if (copy.values().stream().noneMatch(filter)) {
+            return SectionSnapshot.EMPTY;
+        }
+        return (blockFilter, onMatch) -> {
+            scanThreads.add(Thread.currentThread());
+            copy.forEach((pos, block) -> {
+                if (blockFilter.test(block)) {
+                    onMatch.accept(pos);
+                }
+            });
+        };
+    }
+
+    private static long distanceSq(long a, long b) {
+        long dx = PackedBlockPos.getX(a) - PackedBlockPos.getX(b);
+        long dy = PackedBlockPos.getY(a) - PackedBlockPos.getY(b);
+        long dz = PackedBlockPos.getZ(a) - PackedBlockPos.getZ(b);
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /**
+     * 每次返回新的条件对象，不命中之前测试的缓存（不捕获变量的 lambda 是同一个对象）
+     */
+    private static Predicate<BlockInfo> isChest() {
+        return new Predicate<>() {
+            @Override
+            public boolean test(BlockInfo info) {
+                return info == CHEST;
+            }
+        };
+    }
+
+    private static long search(Predicate<BlockInfo> filter, int radius) throws Exception {
+        return BlockSearch.getInstance().findNearest(filter, radius).get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void nearestMatchesBruteForce() throws Exception {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            world.clear();
+            player = PackedBlockPos.pack(random.nextInt(200) - 100, random.nextInt(200) - 60, random.nextInt(200) - 100);
+            for (int i = random.nextInt(20); i > 0; i--) {
+                long pos = PackedBlockPos.pack(
+                    PackedBlockPos.getX(player) + random.nextInt(81) - 40,
+                    PackedBlockPos.getY(player) + random.nextInt(81) - 40,
+                    PackedBlockPos.getZ(player) + random.nextInt(81) - 40);
+                world.put(pos, CHEST);
+            }
+            int radius = random.nextInt(40);
+
+            long expectedDistance = Long.MAX_VALUE;
+            for (long pos : world.keySet()) {
+                long d = distanceSq(pos, player);
+                if (d <= (long) radius * radius) {
+                    expectedDistance = Math.min(expectedDistance, d);
+                }
+            }
+
+            long found = search(isChest(), radius);
+            if (expectedDistance == Long.MAX_VALUE) {
+                assertEquals(PackedBlockPos.NONE, found, "第 " + round + " 轮");
+            } else {
+                assertNotEquals(PackedBlockPos.NONE, found, "第 " + round + " 轮");
+                assertEquals(expectedDistance, distanceSq(found, player), "第 " + round + " 轮");
+            }
+        }
+    }
+
+    @Test
+    void readsOnlySectionsInsideSearchSphere() throws Exception {
+        player = PackedBlockPos.pack(8, 70, 8);
+        int radius = 20;
+        search(isChest(), radius);
+
+        assertFalse(snapshots.isEmpty());
+        for (int[] section : snapshots) {
+            int minY = section[1] << 4;
+            assertTrue(minY + 15 >= 70 - radius && minY <= 70 + radius, () -> "区块段 y=" + section[1]);
+        }
+        // 半径 20 只涉及 3 个区块段高度、5x5 区块列中与球相交的部分
+        assertTrue(snapshots.size() <= 5 * 5 * 3, () -> "读取了 " + snapshots.size() + " 个区块段");
+    }
+
+    @Test
+    void scansSnapshotsOffClientThread() throws Exception {
+        player = PackedBlockPos.pack(0, 64, 0);
+        long chest = PackedBlockPos.pack(-7, 60, 12);
+        world.put(chest, CHEST);
+
+        assertEquals(chest, search(isChest(), 32));
+        // 测试线程扮演客户端线程，只有含箱子的那个区块段被逐格查找，而且在后台线程上
+        assertFalse(scanThreads.isEmpty());
+        assertFalse(scanThreads.contains(Thread.currentThread()));
+    }
+
+    @Test
+    void unchangedSectionsAreCached() throws Exception {
+        player = PackedBlockPos.pack(0, 64, 0);
+        long chest = PackedBlockPos.pack(5, 66, -3);
+        world.put(chest, CHEST);
+        Predicate<BlockInfo> filter = isChest();
+
+        assertEquals(chest, search(filter, 16));
+        int firstSnapshots = snapshots.size();
+        assertTrue(firstSnapshots > 0);
+
+        assertEquals(chest, search(filter, 16));
+        assertEquals(firstSnapshots, snapshots.size(), "第二次搜索不应重新复制");
+    }
+}
@@ -0,0 +1,93 @@
+package com.xiaofan;
+
+import com.xiaofan.api.BlockInfo;
+import com.xiaofan.api.BlockRegion;
+import com.xiaofan.api.IBlockInteractor;
+import com.xiaofan.api.PackedBlockPos;
+import com.xiaofan.api.SectionSnapshot;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+import java.util.function.Predicate;
+
+/**
+ * 以某个中心为原点的立方体世界，立方体外都是空气
+ * 方块存放在数组里，查询本身几乎不耗时，基准测出的是调用方的开销
+ */
+final class CubeWorld implements IBlockInteractor {
+    static final BlockInfo AIR = new BlockInfo(null, "minecraft:air", "air", false);
+    static final BlockInfo BED = new BlockInfo(null, "minecraft:red_bed", "red_bed", true);
+
+    final long center;
+    final int range;
+    private final int side;
+    private final BlockInfo[] blocks;
+    int lookups;
+
+    CubeWorld(long center, int range) {
+        this.center = center;
+        this.range = range;
+        this.side = range * 2 + 1;
+        this.blocks = new BlockInfo[side * side * side];
+        clear();
+    }
+
+    void clear() {
+        Arrays.fill(blocks, AIR);
+    }
+
+    void set(int dx, int dy, int dz, BlockInfo block) {
+        blocks[index(dx, dy, dz)] = block;
+    }
+
+    private int index(int dx, int dy, int dz) {
+        return ((dx + range) * side + dy + range) * side + dz + range;
+    }
+
+    @Override
+    public BlockInfo getBlockState(int[] pos) {
+        return getBlockState(PackedBlockPos.fromArray(pos));
+    }
+
+    @Override
+    public BlockInfo getBlockState(long packedPos) {
+        lookups++;
+        int dx = PackedBlockPos.getX(packedPos) - PackedBlockPos.getX(center);
+        int dy = PackedBlockPos.getY(packedPos) - PackedBlockPos.getY(center);
+        int dz = PackedBlockPos.getZ(packedPos) - PackedBlockPos.getZ(center);
+        if (Math.abs(dx) > range || Math.abs(dy) > range || Math.abs(dz) > range) {
+            return AIR;
+        }
+        return blocks[index(dx, dy, dz)];
+    }
+
+    @Override
+    public BlockRegion getBlockRegion(long fromPos, long toPos, Predicate<BlockInfo> filter) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void findBlocks(long fromPos, long toPos, Predicate<BlockInfo> filter, LongConsumer onMatch) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public SectionSnapshot snapshotSection(int chunkX, int sectionY, int chunkZ, Predicate<BlockInfo> filter) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean isBed(BlockInfo blockInfo) {
+        return blockInfo.isBed();
+    }
+
+    @Override
+    public InteractionResult interactWithBlock(int[] pos) {
+        return InteractionResult.NOT_AVAILABLE;
+    }
+
+    @Override
+    public InteractionResult interactWithBlock(long packedPos) {
+        return InteractionResult.NOT_AVAILABLE;
+    }
+}
@@ -0,0 +1,218 @@
+package com.xiaofan;
+
+import com.xiaofan.api.*;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 测试用的版本实现
+ * 各接口默认为空实现（返回 0、false 或 null），测试按需替换对应字段后调用 install()
+ */
+public final class TestMinecraft implements IMinecraftVersion {
+    public final RecordingLogger logger = new RecordingLogger();
+    public IPlayerProvider playerProvider = stub(IPlayerProvider.class);
+    public IWorldTimeProvider worldTimeProvider = stub(IWorldTimeProvider.class);
+    public IItemRegistry itemRegistry = stub(IItemRegistry.class);
+    public ICommandExecutor commandExecutor = stub(ICommandExecutor.class);
+    public IPlayerStatusChecker playerStatusChecker = stub(IPlayerStatusChecker.class);
+    public IBlockInteractor blockInteractor = stub(IBlockInteractor.class);
+    public IGameDirectoryProvider gameDirectoryProvider = stub(IGameDirectoryProvider.class);
+    public ITickHandler tickHandler = stub(ITickHandler.class);
+    public IChunkEventHandler chunkEventHandler = stub(IChunkEventHandler.class);
+    public IBaritoneExecutor baritoneExecutor = stub(IBaritoneExecutor.class);
+    public IKeyInputHandler keyInputHandler = stub(IKeyInputHandler.class);
+    public IGuiRenderHandler guiRenderHandler = stub(IGuiRenderHandler.class);
+
+    /**
+     * 创建并注册到 VersionProvider
+     */
+    public static TestMinecraft install() {
+        TestMinecraft mc = new TestMinecraft();
+        VersionProvider.setVersion(mc);
+        return mc;
+    }
+
+    /**
+     * 所有方法都返回默认值的接口实现
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T stub(Class<T> type) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "stub " + type.getSimpleName();
+                default:
+                    break;
+            }
+            Class<?> returnType = method.getReturnType();
+            if (returnType == boolean.class) {
+                return false;
+            }
+            if (returnType == long.class) {
+                return 0L;
+            }
+            if (returnType == int.class) {
+                return 0;
+            }
+            if (returnType == short.class) {
+                return (short) 0;
+            }
+            if (returnType == double.class) {
+                return 0.0;
+            }
+            if (returnType == float.class) {
+                return 0.0f;
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public int getMajorVersion() {
+        return 1;
+    }
+
+    @Override
+    public int getMinorVersion() {
+        return 20;
+    }
+
+    @Override
+    public int getPatchVersion() {
+        return 1;
+    }
+
+    @Override
+    public String getVersionString() {
+        return "test";
+    }
+
+    @Override
+    public IPlayerProvider getPlayerProvider() {
+        return playerProvider;
+    }
+
+    @Override
+    public IWorldTimeProvider getWorldTimeProvider() {
+        return worldTimeProvider;
+    }
+
+    @Override
+    public IItemRegistry getItemRegistry() {
+        return itemRegistry;
+    }
+
+    @Override
+    public ICommandExecutor getCommandExecutor() {
+        return commandExecutor;
+    }
+
+    @Override
+    public IPlayerStatusChecker getPlayerStatusChecker() {
+        return playerStatusChecker;
+    }
+
+    @Override
+    public IBlockInteractor getBlockInteractor() {
+        return blockInteractor;
+    }
+
+    @Override
+    public IGameDirectoryProvider getGameDirectoryProvider() {
+        return gameDirectoryProvider;
+    }
+
+    @Override
+    public ILogger getLogger() {
+        return logger;
+    }
+
+    @Override
+    public ITickHandler getTickHandler() {
+        return tickHandler;
+    }
+
+    @Override
+    public IChunkEventHandler getChunkEventHandler() {
+        return chunkEventHandler;
+    }
+
+    @Override
+    public IBaritoneExecutor getBaritoneExecutor() {
+        return baritoneExecutor;
+    }
+
+    @Override
+    public IKeyInputHandler getKeyInputHandler() {
+        return keyInputHandler;
+    }
+
+    @Override
+    public IGuiRenderHandler getGuiRenderHandler() {
+        return guiRenderHandler;
+    }
+
+    /**
+     * 记录警告和错误的日志，不输出
+     */
+    public static final class RecordingLogger implements ILogger {
+        public final List<String> warnings = new CopyOnWriteArrayList<>();
+        public final List<String> errors = new CopyOnWriteArrayList<>();
+
+        private static String format(String format, Object... args) {
+            StringBuilder sb = new StringBuilder();
+            int from = 0;
+            for (Object arg : args) {
+                int at = format.indexOf("{}", from);
+                if (at < 0) {
+                    break;
+                }
+                sb.append(format, from, at).append(arg);
+                from = at + 2;
+            }
+            return sb.append(format.substring(from)).toString();
+        }
+
+        @Override
+        public void info(String message) {
+        }
+
+        @Override
+        public void info(String format, Object... args) {
+        }
+
+        @Override
+        public void warn(String message) {
+            warnings.add(message);
+        }
+
+        @Override
+        public void warn(String format, Object... args) {
+            warnings.add(format(format, args));
+        }
+
+        @Override
+        public void error(String message) {
+            errors.add(message);
+        }
+
+        @Override
+        public void error(String message, Throwable throwable) {
+            errors.add(message + ": " + throwable);
+        }
+
+        @Override
+        public void debug(String message) {
+        }
+
+        @Override
+        public void debug(String format, Object... args) {
+        }
+    }
+}
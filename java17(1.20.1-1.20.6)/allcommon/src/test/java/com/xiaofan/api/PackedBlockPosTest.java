@@ -0,0 +1,64 @@
+package com.xiaofan.api;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 压缩坐标与 Minecraft BlockPos.asLong 的位布局一致，并且可以无损还原
+ */
+class PackedBlockPosTest {
+    // 世界边界内的水平坐标（±30,000,000）
+    private static final int WORLD_BORDER = 30_000_000;
+
+    /**
+     * BlockPos.asLong 的公式：x 占高 26 位，z 占中间 26 位，y 占低 12 位
+     */
+    private static long asLong(int x, int y, int z) {
+        return ((long) x & 0x3FFFFFFL) << 38 | ((long) z & 0x3FFFFFFL) << 12 | (long) y & 0xFFFL;
+    }
+
+    private static void assertRoundTrip(int x, int y, int z) {
+        long packed = PackedBlockPos.pack(x, y, z);
+        assertEquals(asLong(x, y, z), packed, () -> "(" + x + ", " + y + ", " + z + ")");
+        assertEquals(x, PackedBlockPos.getX(packed));
+        assertEquals(y, PackedBlockPos.getY(packed));
+        assertEquals(z, PackedBlockPos.getZ(packed));
+        assertNotEquals(PackedBlockPos.NONE, packed);
+    }
+
+    @Test
+    void matchesBlockPosLayout() {
+        Random random = new Random(18);
+        for (int i = 0; i < 1_000_000; i++) {
+            assertRoundTrip(
+                random.nextInt(2 * WORLD_BORDER + 1) - WORLD_BORDER,
+                random.nextInt(PackedBlockPos.MAX_Y - PackedBlockPos.MIN_Y + 1) + PackedBlockPos.MIN_Y,
+                random.nextInt(2 * WORLD_BORDER + 1) - WORLD_BORDER);
+        }
+    }
+
+    @Test
+    void extremes() {
+        int[] horizontal = {-WORLD_BORDER, -1, 0, 1, WORLD_BORDER};
+        int[] vertical = {PackedBlockPos.MIN_Y, -64, -1, 0, 319, PackedBlockPos.MAX_Y};
+        for (int x : horizontal) {
+            for (int y : vertical) {
+                for (int z : horizontal) {
+                    assertRoundTrip(x, y, z);
+                }
+            }
+        }
+    }
+
+    @Test
+    void offsetAndArrays() {
+        long packed = PackedBlockPos.pack(-5, 70, 12);
+        assertEquals(PackedBlockPos.pack(-4, 68, 20), PackedBlockPos.offset(packed, 1, -2, 8));
+        assertEquals(packed, PackedBlockPos.fromArray(new int[]{-5, 70, 12}));
+        assertEquals(PackedBlockPos.NONE, PackedBlockPos.fromArray(null));
+        assertEquals(PackedBlockPos.NONE, PackedBlockPos.fromArray(new int[]{1, 2}));
+    }
+}
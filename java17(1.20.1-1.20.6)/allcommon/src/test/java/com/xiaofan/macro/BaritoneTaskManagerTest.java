@@ -0,0 +1,33 @@
+package com.xiaofan.macro;
+
+import com.xiaofan.TestMinecraft;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 运行列表按执行器对象移除：停止后的旧执行器晚于重新启动结束时，不能移除新的执行器
+ */
+class BaritoneTaskManagerTest {
+    @Test
+    void staleFinishDoesNotRemoveRestartedMacro() throws NotFanMacroFound {
+        TestMinecraft.install();
+        BaritoneTaskManager manager = BaritoneTaskManager.getInstance();
+        Macro macro = MacroParser.parse("restart", List.of("wait;"));
+        manager.loadMacro("restart", macro);
+
+        // 旧执行器已被 stopMacro 移出运行列表，但还没有走到 finish（tick 调度模式下要等下一个 tick）
+        MacroExecutor stale = new MacroExecutor("restart", macro);
+        stale.stop();
+        manager.startMacro("restart");
+        try {
+            stale.finish();
+            assertTrue(manager.isMacroRunning("restart"), "旧执行器结束时移除了重新启动的宏");
+        } finally {
+            manager.stopMacro("restart");
+        }
+        assertFalse(manager.isMacroRunning("restart"));
+    }
+}
@@ -0,0 +1,106 @@
+package com.xiaofan.macro;
+
+import com.xiaofan.TestMinecraft;
+import com.xiaofan.api.BaritoneResult;
+import com.xiaofan.api.IBaritoneExecutor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 等待阻塞的 Baritone 命令：任务结束时继续，宏停止时取消任务
+ */
+class BaritoneWaitTest {
+    private final AtomicBoolean blockingInterrupted = new AtomicBoolean(false);
+    private final CountDownLatch blockingEntered = new CountDownLatch(1);
+    private CompletableFuture<BaritoneResult> task;
+
+    @BeforeEach
+    void setUp() {
+        TestMinecraft mc = TestMinecraft.install();
+        mc.baritoneExecutor = fakeBaritone();
+    }
+
+    private IBaritoneExecutor fakeBaritone() {
+        IBaritoneExecutor stub = TestMinecraft.stub(IBaritoneExecutor.class);
+        return (IBaritoneExecutor) Proxy.newProxyInstance(IBaritoneExecutor.class.getClassLoader(),
+            new Class<?>[]{IBaritoneExecutor.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "isBaritoneLoaded":
+                    case "isBlockingCommand":
+                        return true;
+                    case "executeAsync":
+                        task = new CompletableFuture<>();
+                        return task;
+                    case "executeBlockingCommand":
+                        // 和版本实现一样：等待到任务结束，被中断时取消任务并返回
+                        blockingEntered.countDown();
+                        try {
+                            Thread.sleep(TimeUnit.MINUTES.toMillis(5));
+                        } catch (InterruptedException e) {
+                            blockingInterrupted.set(true);
+                            Thread.currentThread().interrupt();
+                        }
+                        return null;
+                    default:
+                        return method.invoke(stub, args);
+                }
+            });
+    }
+
+    private static MacroExecutor executor(String... lines) {
+        return new MacroExecutor("baritone", MacroParser.parse("baritone", List.of(lines)));
+    }
+
+    @Test
+    void fiberSleepsUntilTaskCompletes() {
+        MacroScheduler scheduler = new MacroScheduler(new ConditionFeed());
+        MacroExecutor executor = executor("do #mine diamond_ore;");
+        executor.startOn(scheduler);
+
+        scheduler.tick();
+        assertNotNull(task);
+        assertEquals(1, scheduler.getFiberCount());
+        scheduler.tick();
+        assertFalse(task.isDone());
+
+        task.complete(BaritoneResult.COMPLETED);
+        scheduler.tick();
+        assertEquals(0, scheduler.getFiberCount());
+    }
+
+    @Test
+    void stopCancelsPendingTaskInTickMode() {
+        MacroScheduler scheduler = new MacroScheduler(new ConditionFeed());
+        MacroExecutor executor = executor("do #goto 100 64 100;", "wait 1s;");
+        executor.startOn(scheduler);
+        scheduler.tick();
+        assertNotNull(task);
+
+        executor.stop();
+        assertTrue(task.isCancelled());
+        scheduler.tick();
+        assertEquals(0, scheduler.getFiberCount());
+    }
+
+    @Test
+    void stopInterruptsBlockingWaitInThreadMode() throws Exception {
+        MacroExecutor executor = executor("do #mine diamond_ore;", "wait 1s;");
+        Thread thread = new Thread(executor, "baritone-wait");
+        thread.start();
+        assertTrue(blockingEntered.await(5, TimeUnit.SECONDS));
+
+        executor.stop();
+        thread.join(TimeUnit.SECONDS.toMillis(1));
+        assertFalse(thread.isAlive());
+        assertTrue(blockingInterrupted.get());
+    }
+}
@@ -0,0 +1,62 @@
+package com.xiaofan.macro;
+
+import com.xiaofan.Bench;
+import com.xiaofan.TestMinecraft;
+import com.xiaofan.api.PackedBlockPos;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 每 tick 的条件判断在当前线程上分配的字节数（ThreadMXBean 统计）
+ * if 条件使用压缩坐标，判断本身不应分配对象
+ */
+@Tag("benchmark")
+class ConditionAllocationBenchmark {
+    private static final int OPS = 100_000;
+
+    private int next;
+
+    private static IfStatement parseIf(String line) {
+        Macro macro = MacroParser.parse("if", List.of(line, "wait 1s;", "end"));
+        return assertInstanceOf(IfStatement.class, macro.commands.get(0));
+    }
+
+    @Test
+    void conditionChecks() {
+        TestMinecraft.install();
+        IfStatement position = parseIf("if me at = (100,64,-200)");
+        IfStatement time = parseIf("if time >= 13000");
+        long[] positions = {PackedBlockPos.pack(101, 64, -199), PackedBlockPos.pack(0, 64, 0)};
+
+        double positionBytes = Bench.bytesPerOp(OPS, () -> position.test(12000, positions[next++ & 1]) ? 1 : 0);
+        double timeBytes = Bench.bytesPerOp(OPS, () -> time.test(12000, PackedBlockPos.NONE) ? 1 : 0);
+        Bench.report("IfStatement.test 位置", "%.2f B/op", positionBytes);
+        Bench.report("IfStatement.test 时间", "%.2f B/op", timeBytes);
+        assertTrue(positionBytes < 1, () -> "位置条件分配了 " + positionBytes + " B/op");
+        assertTrue(timeBytes < 1, () -> "时间条件分配了 " + timeBytes + " B/op");
+
+        // 订阅的条件不变化时，每 tick 的求值开销
+        ConditionFeed feed = new ConditionFeed();
+        Map<IfStatement, Boolean> baseline = new LinkedHashMap<>();
+        baseline.put(position, false);
+        baseline.put(time, false);
+        for (int i = 0; i < 100; i++) {
+            feed.subscribe(baseline, () -> fail("条件没有变化"));
+        }
+        double feedBytes = Bench.bytesPerOp(OPS / 100, () -> {
+            feed.tick(WorldSnapshot.EMPTY);
+            return feed.getSubscriptionCount();
+        });
+        double feedNanos = Bench.nanosPerOp(OPS / 100, () -> {
+            feed.tick(WorldSnapshot.EMPTY);
+            return feed.getSubscriptionCount();
+        });
+        Bench.report("ConditionFeed.tick 100 个订阅", "%.0f ns/op，%.2f B/op", feedNanos, feedBytes);
+    }
+}
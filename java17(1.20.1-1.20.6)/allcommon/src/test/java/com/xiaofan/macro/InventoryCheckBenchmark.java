@@ -0,0 +1,179 @@
+package com.xiaofan.macro;
+
+import com.xiaofan.Bench;
+import com.xiaofan.TestMinecraft;
+import com.xiaofan.api.IItemRegistry;
+import com.xiaofan.api.IPlayerProvider;
+import com.xiaofan.api.ItemClassification;
+import com.xiaofan.api.ItemInfo;
+import com.xiaofan.api.PackedBlockPos;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * check me have 物品条件：背包索引的一次哈希查找和原来逐个槽位比较名称的耗时，
+ * 以及每 tick 采集快照时判断背包未变化、背包变化后重建索引的耗时
+ */
+@Tag("benchmark")
+class InventoryCheckBenchmark {
+    private static final int CHECKS = 10_000;
+    private static final String[] NAMES = {
+        "cobblestone", "dirt", "oak_log", "iron_ingot", "coal", "torch", "bread", "diamond_pickaxe", "iron_axe",
+        "stone_shovel", "raw_iron", "oak_planks", "stick", "crafting_table", "furnace", "chest", "gravel", "sand"
+    };
+
+    private static final Object ITEM = new Object(); // 非空即可，空物品按空槽位处理
+
+    private final ItemInfo[] slots = new ItemInfo[36];
+    private int next;
+
+    /**
+     * 工具按名称判断，分类结果按名称缓存（和版本实现的分类表一样只计算一次）
+     */
+    private static final class FakeItemRegistry implements IItemRegistry {
+        private final Map<String, ItemClassification> table = new HashMap<>();
+
+        @Override
+        public String getItemKey(ItemInfo itemInfo) {
+            return itemInfo.getItemKey();
+        }
+
+        @Override
+        public String getItemName(String itemKey) {
+            return itemKey.substring(itemKey.indexOf(':') + 1);
+        }
+
+        @Override
+        public boolean isToolItem(ItemInfo itemInfo) {
+            String name = itemInfo.getItemName();
+            return name.endsWith("_pickaxe") || name.endsWith("_axe") || name.endsWith("_shovel");
+        }
+
+        @Override
+        public String getToolMaterial(ItemInfo itemInfo) {
+            String name = itemInfo.getItemName();
+            return isToolItem(itemInfo) ? name.substring(0, name.indexOf('_')) : null;
+        }
+
+        @Override
+        public void rebuildClassificationTable() {
+            table.clear();
+        }
+
+        @Override
+        public void registerTagsUpdated(Runnable onUpdated) {
+        }
+
+        @Override
+        public ItemClassification getClassification(ItemInfo itemInfo) {
+            return table.computeIfAbsent(itemInfo.getItemKey(), key -> isToolItem(itemInfo)
+                ? new ItemClassification(true, "tool", getToolMaterial(itemInfo), Collections.emptySet())
+                : ItemClassification.NONE);
+        }
+    }
+
+    private IPlayerProvider player() {
+        return new IPlayerProvider() {
+            @Override
+            public int[] getPlayerPosition() {
+                return new int[]{0, 64, 0};
+            }
+
+            @Override
+            public long getPlayerPackedPosition() {
+                return PackedBlockPos.pack(0, 64, 0);
+            }
+
+            @Override
+            public boolean isPlayerPresent() {
+                return true;
+            }
+
+            @Override
+            public int getInventorySize() {
+                return slots.length;
+            }
+
+            @Override
+            public ItemInfo getItemInSlot(int slot) {
+                return slots[slot];
+            }
+
+            @Override
+            public void sendSystemMessage(String message) {
+            }
+
+            @Override
+            public boolean isOnMainThread() {
+                return true;
+            }
+
+            @Override
+            public void executeOnMainThread(Runnable task) {
+                task.run();
+            }
+        };
+    }
+
+    /**
+     * 原来的做法：每次检查遍历所有槽位，逐个比较小写名称并查询是否为工具
+     */
+    private static int scanSlots(ItemInfo[] slots, IItemRegistry registry, String itemNameLower) {
+        int totalCount = 0;
+        for (ItemInfo itemInfo : slots) {
+            if (itemInfo == null) {
+                continue;
+            }
+            if (itemInfo.getItemName().toLowerCase().equals(itemNameLower) && !registry.isToolItem(itemInfo)) {
+                totalCount += itemInfo.getCount();
+            }
+        }
+        return totalCount;
+    }
+
+    private static int lookup(InventoryIndex index, String itemNameLower) {
+        InventoryIndex.Entry entry = index.get(itemNameLower);
+        return entry != null && !entry.tool ? entry.count : 0;
+    }
+
+    @Test
+    void haveCheck() {
+        for (int i = 0; i < slots.length; i++) {
+            String name = NAMES[i % NAMES.length];
+            slots[i] = new ItemInfo(ITEM, 1 + i % 64, "minecraft:" + name, name);
+        }
+        TestMinecraft mc = TestMinecraft.install();
+        mc.playerProvider = player();
+        FakeItemRegistry registry = new FakeItemRegistry();
+        mc.itemRegistry = registry;
+
+        WorldSnapshot snapshot = WorldSnapshot.capture(mc, WorldSnapshot.EMPTY);
+        // 查找的物品在背包末尾，没有的物品要扫描全部槽位
+        String[] queries = {"sand", "raw_iron", "emerald"};
+        assertEquals(54, lookup(snapshot.inventory, "sand"));
+        for (String query : queries) {
+            assertEquals(scanSlots(slots, registry, query), lookup(snapshot.inventory, query), query);
+        }
+
+        double scan = Bench.nanosPerOp(CHECKS, () -> scanSlots(slots, registry, queries[next++ % queries.length]));
+        double index = Bench.nanosPerOp(CHECKS, () -> lookup(snapshot.inventory, queries[next++ % queries.length]));
+        Bench.report("have 检查 逐个槽位", "%.0f ns/op，每秒 %d 次占用 %.3f ms", scan, CHECKS, scan * CHECKS / 1e6);
+        Bench.report("have 检查 背包索引", "%.0f ns/op，每秒 %d 次占用 %.3f ms", index, CHECKS, index * CHECKS / 1e6);
+
+        double unchanged = Bench.nanosPerOp(1_000, () -> WorldSnapshot.capture(mc, snapshot).version);
+        ItemInfo original = slots[0];
+        double rebuilt = Bench.nanosPerOp(1_000, () -> {
+            // 每次改变一个槽位的数量，背包索引需要重建
+            slots[0] = new ItemInfo(ITEM, original.getCount() + 1, original.getItemKey(), original.getItemName());
+            return WorldSnapshot.capture(mc, snapshot).version;
+        });
+        Bench.report("快照采集 背包未变化", "%.0f ns/op", unchanged);
+        Bench.report("快照采集 背包变化（重建索引）", "%.0f ns/op", rebuilt);
+    }
+}
@@ -0,0 +1,115 @@
+package com.xiaofan.macro;
+
+import com.xiaofan.BlockSearch;
+import com.xiaofan.TestMinecraft;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 语法树缓存的读写一致性
+ */
+class MacroCacheTest {
+    @TempDir
+    Path folder;
+
+    private TestMinecraft mc;
+
+    @BeforeEach
+    void setUp() {
+        mc = TestMinecraft.install();
+    }
+
+    private File writeMacro(String name, String content) throws IOException {
+        Path file = folder.resolve(name + ".txt");
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file.toFile();
+    }
+
+    @Test
+    void blockNearSurvivesCacheRoundTrip() throws IOException {
+        File file = writeMacro("chest", String.join("\n",
+            "if block near(name = chest, r = 32)",
+            "wait 1s;",
+            "else",
+            "if block near(name = minecraft:furnace)",
+            "wait 2s;",
+            "end",
+            "end"));
+
+        MacroCache cache = new MacroCache(folder.toFile());
+        Macro parsed = cache.load(file);
+        Macro cached = new MacroCache(folder.toFile()).load(file);
+        assertNotSame(parsed, cached);
+
+        IfStatement outer = assertInstanceOf(IfStatement.class, cached.commands.get(0));
+        assertEquals(IfStatement.Type.BLOCK_NEAR, outer.type);
+        assertEquals("chest", outer.blockName);
+        assertEquals(32, outer.radius);
+        assertSame(BlockSearch.getInstance().byName("chest"), outer.blockFilter);
+
+        IfStatement inner = assertInstanceOf(IfStatement.class, outer.elseCommands.get(0));
+        assertEquals("minecraft:furnace", inner.blockName);
+        assertEquals(16, inner.radius);
+        assertSame(BlockSearch.getInstance().byName("furnace"), inner.blockFilter);
+    }
+
+    @Test
+    void secondLoadIsServedFromCache() throws IOException {
+        File file = writeMacro("time", "if time >= 1000\nwait 1s;\nend");
+        new MacroCache(folder.toFile()).load(file);
+
+        MacroCache cache = new MacroCache(folder.toFile());
+        Macro macro = cache.load(file);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(0, cache.getMissCount());
+        IfStatement stmt = assertInstanceOf(IfStatement.class, macro.commands.get(0));
+        assertEquals(IfStatement.Type.TIME, stmt.type);
+        assertEquals(1000, stmt.time);
+        assertNull(stmt.blockFilter);
+    }
+
+    @Test
+    void largeCacheCanBeReplacedAndDeletedAfterHit() throws IOException {
+        // 缓存文件超过几十 KB，命中后同一个缓存文件仍要能被热重载替换和删除
+        File file = writeMacro("large", String.join("\n", SyntheticMacros.lines(2_000)));
+        new MacroCache(folder.toFile()).load(file);
+        MacroCache cache = new MacroCache(folder.toFile());
+        cache.load(file);
+        assertEquals(1, cache.getHitCount());
+        File cacheFile = folder.resolve(MacroCache.CACHE_FOLDER_NAME).resolve("large.bin").toFile();
+        assertTrue(cacheFile.length() > 16 * 1024, () -> "缓存文件只有 " + cacheFile.length() + " 字节");
+
+        Files.write(file.toPath(), String.join("\n", SyntheticMacros.lines(1_000)).getBytes(StandardCharsets.UTF_8));
+        cache.load(file);
+        assertEquals(1, cache.getMissCount());
+        MacroCache reopened = new MacroCache(folder.toFile());
+        reopened.load(file);
+        assertEquals(1, reopened.getHitCount(), "替换后的缓存应能命中");
+
+        cache.invalidate("large");
+        assertFalse(cacheFile.exists());
+        assertTrue(mc.logger.warnings.isEmpty(), mc.logger.warnings::toString);
+    }
+
+    @Test
+    void missIsCachedUnderHashOfParsedContent() throws IOException {
+        // 计算哈希之后文件又被修改：缓存按实际解析的内容保存，而不是按过时的哈希
+        File file = writeMacro("edited", "wait 1s;");
+        byte[] staleHash = MacroCache.contentHash(file.toPath());
+        Files.write(file.toPath(), "wait 2s;\nwait 3s;".getBytes(StandardCharsets.UTF_8));
+
+        MacroCache cache = new MacroCache(folder.toFile());
+        assertEquals(2, cache.load(file, staleHash, null).commands.size());
+        assertEquals(2, cache.load(file).commands.size());
+        assertEquals(1, cache.getHitCount());
+    }
+}
@@ -0,0 +1,107 @@
+package com.xiaofan.macro;
+
+import com.xiaofan.Bench;
+import com.xiaofan.TestMinecraft;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 加载 1,000 个宏文件：逐个加载和在有界 ForkJoinPool 上并行加载，分别在没有缓存和缓存全部命中时测量
+ * 任务管理器本身还会启动文件监听和 tick 事件，这里按 loadAllMacros 的方式直接驱动 MacroCache
+ */
+@Tag("benchmark")
+class MacroLoadBenchmark {
+    private static final int FILES = 1_000;
+
+    @TempDir
+    Path folder;
+    private int coldRuns;
+
+    private List<File> writeMacros() throws IOException {
+        List<String> lines = SyntheticMacros.lines(100);
+        byte[] content = String.join("\n", lines).getBytes(StandardCharsets.UTF_8);
+        List<File> files = new ArrayList<>(FILES);
+        for (int i = 0; i < FILES; i++) {
+            Path file = folder.resolve("macro" + i + ".txt");
+            Files.write(file, content);
+            files.add(file.toFile());
+        }
+        return files;
+    }
+
+    private static long loadSequential(MacroCache cache, List<File> files) {
+        long loaded = 0;
+        for (File file : files) {
+            try {
+                loaded += cache.load(file).commands.size() > 0 ? 1 : 0;
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return loaded;
+    }
+
+    private static long loadParallel(ForkJoinPool pool, MacroCache cache, List<File> files) {
+        List<Callable<Boolean>> tasks = new ArrayList<>(files.size());
+        for (File file : files) {
+            tasks.add(() -> cache.load(file).commands.size() > 0);
+        }
+        long loaded = 0;
+        try {
+            for (Future<Boolean> future : pool.invokeAll(tasks)) {
+                loaded += future.get() ? 1 : 0;
+            }
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        return loaded;
+    }
+
+    /**
+     * 缓存放在新的空目录里，每次都要解析并写入缓存
+     */
+    private MacroCache coldCache() {
+        File dir = folder.resolve("cold" + coldRuns++).toFile();
+        assertTrue(dir.mkdirs());
+        return new MacroCache(dir);
+    }
+
+    @Test
+    void loadThousandFiles() throws IOException {
+        TestMinecraft.install();
+        List<File> files = writeMacros();
+        ForkJoinPool pool = new ForkJoinPool(BaritoneTaskManager.LOAD_PARALLELISM);
+        try {
+            assertEquals(FILES, loadParallel(pool, coldCache(), files));
+
+            double coldSequential = Bench.nanosPerOp(1, () -> loadSequential(coldCache(), files));
+            double coldParallel = Bench.nanosPerOp(1, () -> loadParallel(pool, coldCache(), files));
+            MacroCache warm = new MacroCache(folder.toFile());
+            loadSequential(warm, files);
+            double warmSequential = Bench.nanosPerOp(1, () -> loadSequential(warm, files));
+            double warmParallel = Bench.nanosPerOp(1, () -> loadParallel(pool, warm, files));
+
+            String name = FILES + " 个文件";
+            Bench.report("加载 " + name + " 无缓存 逐个", "%.1f ms", coldSequential / 1e6);
+            Bench.report("加载 " + name + " 无缓存 并行(" + pool.getParallelism() + ")", "%.1f ms", coldParallel / 1e6);
+            Bench.report("加载 " + name + " 缓存命中 逐个", "%.1f ms", warmSequential / 1e6);
+            Bench.report("加载 " + name + " 缓存命中 并行(" + pool.getParallelism() + ")", "%.1f ms", warmParallel / 1e6);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.xiaofan.macro;
+
+import com.xiaofan.Bench;
+import com.xiaofan.TestMinecraft;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 解析合成的 10k 行宏：当前的词法分析 + 递归下降解析器和原来的逐行正则解析器（RegexMacroParser）对比
+ */
+@Tag("benchmark")
+class MacroParserBenchmark {
+    private static final int LINES = 10_000;
+    private static final int OPS = 5;
+
+    private static Map<String, List<String>> corpus() {
+        Map<String, List<String>> corpus = new LinkedHashMap<>();
+        corpus.put("混合", SyntheticMacros.lines(LINES));
+        corpus.put("平铺语句", SyntheticMacros.flat(LINES));
+        corpus.put("if 嵌套 8 层", SyntheticMacros.nested(LINES, 8));
+        corpus.put("小函数", SyntheticMacros.smallFunctions(LINES));
+        return corpus;
+    }
+
+    @Test
+    void parseTenThousandLines() {
+        TestMinecraft mc = TestMinecraft.install();
+        Map<String, List<String>> corpus = corpus();
+
+        for (Map.Entry<String, List<String>> shape : corpus.entrySet()) {
+            List<String> lines = shape.getValue();
+            Macro macro = MacroParser.parse("synthetic", lines);
+            assertTrue(mc.logger.warnings.isEmpty(), mc.logger.warnings::toString);
+            assertEquals(RegexMacroParser.parse("synthetic", lines).functions.size(), macro.functions.size(), shape.getKey());
+        }
+        // 混合宏：每个函数 16 行，其余都是主函数里的语句
+        List<String> mixed = corpus.get("混合");
+        Macro macro = MacroParser.parse("synthetic", mixed);
+        assertEquals(mixed.size() - macro.functions.size() * 16 - 1, macro.commands.size());
+
+        double total = 0;
+        double totalBaseline = 0;
+        for (Map.Entry<String, List<String>> shape : corpus.entrySet()) {
+            List<String> lines = shape.getValue();
+            double baseline = Bench.nanosPerOp(OPS, () -> RegexMacroParser.parse("synthetic", lines).functions.size());
+            double current = Bench.nanosPerOp(OPS, () -> MacroParser.parse("synthetic", lines).functions.size());
+            total += current;
+            totalBaseline += baseline;
+            Bench.report("MacroParser " + shape.getKey() + " " + lines.size() + " 行",
+                "正则 %.2f ms，当前 %.2f ms，%.1fx", baseline / 1e6, current / 1e6, baseline / current);
+        }
+        Bench.report("MacroParser 合计", "正则 %.2f ms，当前 %.2f ms，%.1fx",
+            totalBaseline / 1e6, total / 1e6, totalBaseline / total);
+    }
+}
@@ -0,0 +1,185 @@
+package com.xiaofan.macro;
+
+import com.xiaofan.TestMinecraft;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 宏解析器的块结构：深层嵌套和不配对的 else / end
+ */
+class MacroParserTest {
+    private TestMinecraft mc;
+
+    @BeforeEach
+    void setUp() {
+        mc = TestMinecraft.install();
+    }
+
+    private static List<String> nestedIfs(int depth) {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < depth; i++) {
+            lines.add("if time >= " + i);
+        }
+        lines.add("wait 1s;");
+        for (int i = 0; i < depth; i++) {
+            lines.add("end");
+        }
+        return lines;
+    }
+
+    private static void assertNested(List<MacroCommand> commands, int depth) {
+        for (int level = 0; level < depth; level++) {
+            assertEquals(1, commands.size(), "第 " + level + " 层");
+            IfStatement stmt = assertInstanceOf(IfStatement.class, commands.get(0));
+            assertEquals(level, stmt.time);
+            assertTrue(stmt.elseCommands.isEmpty());
+            commands = stmt.ifCommands;
+        }
+        assertEquals(1, commands.size());
+        assertEquals("1s", assertInstanceOf(WaitCommand.class, commands.get(0)).content);
+    }
+
+    private static String waitOf(MacroCommand cmd) {
+        return assertInstanceOf(WaitCommand.class, cmd).content;
+    }
+
+    @Test
+    void deepNestingParsesWithinBudget() {
+        List<String> lines = nestedIfs(500);
+        Macro macro = assertTimeoutPreemptively(Duration.ofSeconds(1), () -> MacroParser.parse("deep", lines));
+        assertNested(macro.commands, 500);
+        assertTrue(mc.logger.warnings.isEmpty(), mc.logger.warnings::toString);
+    }
+
+    @Test
+    void veryDeepNestingDoesNotUseCallStack() {
+        // 递归解析会在这个深度栈溢出
+        List<String> lines = nestedIfs(20_000);
+        Macro macro = assertTimeoutPreemptively(Duration.ofSeconds(5), () -> MacroParser.parse("deeper", lines));
+        assertNested(macro.commands, 20_000);
+    }
+
+    @Test
+    void deepNestingInsideFunction() {
+        List<String> lines = new ArrayList<>();
+        lines.add("fun name=\"deep\";");
+        lines.addAll(nestedIfs(500));
+        lines.add("fan_main:");
+        lines.add("do fun \"deep\";");
+        Macro macro = assertTimeoutPreemptively(Duration.ofSeconds(1), () -> MacroParser.parse("deep", lines));
+        assertNested(macro.functions.get("deep").getCommands(), 500);
+        assertEquals(1, macro.commands.size());
+    }
+
+    @Test
+    void extraEndIsIgnored() {
+        Macro macro = MacroParser.parse("extra", List.of(
+            "if time >= 1",
+            "wait 1s;",
+            "end",
+            "end",
+            "end;",
+            "wait 2s;"));
+        assertEquals(2, macro.commands.size());
+        IfStatement stmt = assertInstanceOf(IfStatement.class, macro.commands.get(0));
+        assertEquals(1, stmt.ifCommands.size());
+        assertEquals("2s", waitOf(macro.commands.get(1)));
+    }
+
+    @Test
+    void endBeforeAnyIfIsIgnored() {
+        Macro macro = MacroParser.parse("leading", List.of("end", "else", "wait 1s;"));
+        assertEquals(1, macro.commands.size());
+        assertEquals("1s", waitOf(macro.commands.get(0)));
+    }
+
+    @Test
+    void missingEndIsClosedAtFunctionBoundary() {
+        Macro macro = MacroParser.parse("open", List.of(
+            "if time >= 1",
+            "if time >= 2",
+            "wait 1s;",
+            "fun name=\"f\";",
+            "wait 2s;"));
+        assertEquals(1, macro.commands.size());
+        IfStatement outer = assertInstanceOf(IfStatement.class, macro.commands.get(0));
+        IfStatement inner = assertInstanceOf(IfStatement.class, outer.ifCommands.get(0));
+        assertEquals("1s", waitOf(inner.ifCommands.get(0)));
+
+        List<MacroCommand> body = macro.functions.get("f").getCommands();
+        assertEquals(1, body.size());
+        assertEquals("2s", waitOf(body.get(0)));
+        assertEquals(2, mc.logger.warnings.stream().filter(w -> w.contains("缺少 end")).count());
+    }
+
+    @Test
+    void missingEndAtEndOfFile() {
+        Macro macro = MacroParser.parse("open", List.of(
+            "if time >= 1",
+            "wait 1s;",
+            "else",
+            "wait 2s;"));
+        IfStatement stmt = assertInstanceOf(IfStatement.class, macro.commands.get(0));
+        assertEquals("1s", waitOf(stmt.ifCommands.get(0)));
+        assertEquals("2s", waitOf(stmt.elseCommands.get(0)));
+        assertEquals(1, mc.logger.warnings.stream().filter(w -> w.contains("第 1 行")).count());
+    }
+
+    @Test
+    void secondElseStaysInElseBranch() {
+        Macro macro = MacroParser.parse("else", List.of(
+            "if time >= 1",
+            "wait 1s;",
+            "else",
+            "wait 2s;",
+            "else",
+            "wait 3s;",
+            "end",
+            "wait 4s;"));
+        assertEquals(2, macro.commands.size());
+        IfStatement stmt = assertInstanceOf(IfStatement.class, macro.commands.get(0));
+        assertEquals(List.of("1s"), stmt.ifCommands.stream().map(MacroParserTest::waitOf).toList());
+        assertEquals(List.of("2s", "3s"), stmt.elseCommands.stream().map(MacroParserTest::waitOf).toList());
+        assertEquals("4s", waitOf(macro.commands.get(1)));
+    }
+
+    @Test
+    void elseBelongsToInnermostIf() {
+        Macro macro = MacroParser.parse("inner", List.of(
+            "if time >= 1",
+            "if time >= 2",
+            "wait 1s;",
+            "else",
+            "wait 2s;",
+            "end",
+            "wait 3s;",
+            "end"));
+        IfStatement outer = assertInstanceOf(IfStatement.class, macro.commands.get(0));
+        assertTrue(outer.elseCommands.isEmpty());
+        assertEquals(2, outer.ifCommands.size());
+        IfStatement inner = assertInstanceOf(IfStatement.class, outer.ifCommands.get(0));
+        assertEquals("2s", waitOf(inner.elseCommands.get(0)));
+        assertEquals("3s", waitOf(outer.ifCommands.get(1)));
+    }
+
+    @Test
+    void blockIndexMatchesEachLineOnce() {
+        List<MacroLexer.Line> lines = new ArrayList<>();
+        String[] source = {"if time >= 1", "else", "if time >= 2", "end", "end", "end", "fun name=\"f\";", "if time >= 3"};
+        for (int i = 0; i < source.length; i++) {
+            lines.add(MacroLexer.lex(source[i], i + 1));
+        }
+        MacroBlockIndex index = MacroBlockIndex.build(lines);
+        assertArrayEquals(new int[]{4, -1, 3, -1, -1, -1, 8, 8}, index.endAt);
+        assertArrayEquals(new int[]{1, -1, -1, -1, -1, -1, -1, -1}, index.elseAt);
+        assertFalse(index.unterminated[0]);
+        assertFalse(index.unterminated[2]);
+        assertTrue(index.unterminated[7]);
+    }
+}
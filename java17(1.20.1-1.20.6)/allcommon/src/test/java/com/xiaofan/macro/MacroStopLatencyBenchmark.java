@@ -0,0 +1,30 @@
+package com.xiaofan.macro;
+
+import com.xiaofan.Bench;
+import com.xiaofan.TestMinecraft;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+/**
+ * 线程模式下 stop() 到宏线程（和后台函数线程）退出的延迟分布，断言见 MacroStopLatencyTest
+ */
+@Tag("benchmark")
+class MacroStopLatencyBenchmark {
+    private static final int TRIALS = 50;
+
+    private static void report(String name, List<String> lines, String background) throws InterruptedException {
+        double[] latencies = MacroStopLatencyTest.stopLatencies(TRIALS, lines, background);
+        Bench.report("停止延迟 " + name, "中位数 %.2f ms，最大 %.2f ms",
+            latencies[TRIALS / 2], latencies[TRIALS - 1]);
+    }
+
+    @Test
+    void stopLatency() throws InterruptedException {
+        TestMinecraft.install();
+        report("wait 1h", List.of("wait 1h;"), null);
+        report("wait", List.of("wait;"), null);
+        report("后台函数 wait 1h", MacroStopLatencyTest.BACKGROUND_FUNCTION, "MacroFunction-bg");
+    }
+}
@@ -0,0 +1,109 @@
+package com.xiaofan.macro;
+
+import com.xiaofan.TestMinecraft;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 线程模式下 wait 挂起在停止信号上：stop() 之后宏线程和后台函数线程立即退出，
+ * 不再等到下一次轮询（原来每 100ms 检查一次）
+ */
+class MacroStopLatencyTest {
+    private static final int TRIALS = 10;
+    private static final long MAX_LATENCY_MILLIS = 50;
+    static final List<String> BACKGROUND_FUNCTION = List.of(
+        "fun name=\"bg\" type= &;",
+        "wait 1h;",
+        "fan_main:",
+        "do fun \"bg\";",
+        "wait;");
+
+    @BeforeEach
+    void setUp() {
+        TestMinecraft.install();
+    }
+
+    private static Thread waitUntilParked(Thread thread) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (thread.getState() != Thread.State.WAITING && thread.getState() != Thread.State.TIMED_WAITING) {
+            assertTrue(System.nanoTime() < deadline, "宏线程没有进入等待");
+            Thread.sleep(1);
+        }
+        return thread;
+    }
+
+    private static Thread findThread(String name) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (thread.getName().equals(name)) {
+                    return thread;
+                }
+            }
+            Thread.sleep(1);
+        }
+        return fail("没有找到线程 " + name);
+    }
+
+    /**
+     * 启动宏，等它挂起后停止，返回 stop() 到所有线程退出的毫秒数
+     * @param background 需要一起退出的后台函数线程名，可为 null
+     */
+    static double stopLatencyMillis(List<String> lines, String background) throws InterruptedException {
+        MacroExecutor executor = new MacroExecutor("latency", MacroParser.parse("latency", lines));
+        Thread thread = new Thread(executor, "latency");
+        thread.start();
+        Thread function = background == null ? null : waitUntilParked(findThread(background));
+        waitUntilParked(thread);
+
+        long start = System.nanoTime();
+        executor.stop();
+        thread.join(TimeUnit.SECONDS.toMillis(5));
+        if (function != null) {
+            function.join(TimeUnit.SECONDS.toMillis(5));
+            assertFalse(function.isAlive());
+        }
+        double elapsed = (System.nanoTime() - start) / 1e6;
+        assertFalse(thread.isAlive());
+        return elapsed;
+    }
+
+    /**
+     * 多次测量停止延迟
+     * @return 从小到大排序的毫秒数
+     */
+    static double[] stopLatencies(int trials, List<String> lines, String background) throws InterruptedException {
+        double[] latencies = new double[trials];
+        for (int i = 0; i < trials; i++) {
+            latencies[i] = stopLatencyMillis(lines, background);
+        }
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    private static void assertLatency(String name, List<String> lines, String background) throws InterruptedException {
+        double[] latencies = stopLatencies(TRIALS, lines, background);
+        assertTrue(latencies[TRIALS - 1] < MAX_LATENCY_MILLIS, () -> name + " 最大延迟 " + latencies[TRIALS - 1] + "ms");
+    }
+
+    @Test
+    void stopWakesTimedWait() throws InterruptedException {
+        assertLatency("wait 1h", List.of("wait 1h;"), null);
+    }
+
+    @Test
+    void stopWakesWaitForever() throws InterruptedException {
+        assertLatency("wait", List.of("wait;"), null);
+    }
+
+    @Test
+    void stopWakesBackgroundFunction() throws InterruptedException {
+        assertLatency("后台函数 wait 1h", BACKGROUND_FUNCTION, "MacroFunction-bg");
+    }
+}
@@ -0,0 +1,112 @@
+package com.xiaofan.macro;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基准测试用的合成宏
+ * lines 是函数、嵌套 if/else 和各种语句交替出现的混合宏，其余方法各生成一种极端形态
+ */
+final class SyntheticMacros {
+    private SyntheticMacros() {
+    }
+
+    /**
+     * 生成大约 lineCount 行的宏
+     */
+    static List<String> lines(int lineCount) {
+        List<String> lines = new ArrayList<>(lineCount + 32);
+        int block = 0;
+        while (lines.size() < lineCount) {
+            lines.add("fun name=\"f" + block + "\"" + (block % 4 == 0 ? " type= &;" : ";"));
+            lines.add("if time >= " + (block * 100 % 24000));
+            lines.add("    do #goto " + block + " 64 " + (-block) + ";");
+            lines.add("    if me at = (" + block + ",64," + block + ")");
+            lines.add("        check me have (item = diamond_pickaxe, quantity = 1), do #mine iron_ore;");
+            lines.add("        wait 2s;");
+            lines.add("    else");
+            lines.add("        check me nothave (item = #minecraft:logs), do /home;");
+            lines.add("    end");
+            lines.add("else");
+            lines.add("    if block near(name=chest, r=16)");
+            lines.add("        do #stop;");
+            lines.add("    end");
+            lines.add("    check time = 13000,do end;");
+            lines.add("end");
+            lines.add("wait 1m;");
+            block++;
+        }
+        lines.add("fan_main:");
+        for (int i = 0; i < block; i++) {
+            lines.add("do fun \"f" + i + "\";");
+        }
+        return lines;
+    }
+
+    /**
+     * 只有主函数里的平铺语句，没有 if 和函数
+     */
+    static List<String> flat(int lineCount) {
+        List<String> lines = new ArrayList<>(lineCount + 1);
+        lines.add("fan_main:");
+        for (int i = 0; lines.size() < lineCount; i++) {
+            switch (i % 5) {
+                case 0:
+                    lines.add("do #goto " + i + " 64 " + (-i) + ";");
+                    break;
+                case 1:
+                    lines.add("wait 2s;");
+                    break;
+                case 2:
+                    lines.add("check me have (item = diamond_pickaxe, quantity = 1), do #mine iron_ore;");
+                    break;
+                case 3:
+                    lines.add("check time = 13000,do /home;");
+                    break;
+                default:
+                    lines.add("run name = \"m" + i + "\";");
+                    break;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * 每个函数里 if 嵌套 depth 层
+     */
+    static List<String> nested(int lineCount, int depth) {
+        List<String> lines = new ArrayList<>(lineCount + depth * 3 + 2);
+        int block = 0;
+        while (lines.size() < lineCount) {
+            lines.add("fun name=\"n" + block + "\";");
+            for (int d = 0; d < depth; d++) {
+                String indent = "    ".repeat(d);
+                lines.add(indent + "if time >= " + (d * 1000));
+                lines.add(indent + "    do #goto " + block + " " + (64 + d) + " 0;");
+            }
+            for (int d = depth - 1; d >= 0; d--) {
+                lines.add("    ".repeat(d) + "end");
+            }
+            block++;
+        }
+        lines.add("fan_main:");
+        lines.add("do fun \"n0\";");
+        return lines;
+    }
+
+    /**
+     * 大量只有一两行的小函数
+     */
+    static List<String> smallFunctions(int lineCount) {
+        List<String> lines = new ArrayList<>(lineCount + 2);
+        int block = 0;
+        while (lines.size() < lineCount) {
+            lines.add("fun name=\"s" + block + "\";");
+            lines.add("do #goto " + block + " 64 0;");
+            block++;
+        }
+        lines.add("fan_main:");
+        lines.add("do fun \"s0\";");
+        return lines;
+    }
+}
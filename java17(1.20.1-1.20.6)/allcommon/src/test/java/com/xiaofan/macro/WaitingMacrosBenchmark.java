@@ -0,0 +1,148 @@
+package com.xiaofan.macro;
+
+import com.xiaofan.Bench;
+import com.xiaofan.TestMinecraft;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 同时有 5,000 个宏在 wait 时占用的线程和内存，以及全部停止所需的时间
+ * 线程模式按 playerbot.macro.virtualThreads 使用平台线程或虚拟线程（Java 21+），
+ * 用 gradle test -Pbenchmark -Dplayerbot.macro.virtualThreads=true 测量虚拟线程；tick 调度模式不占用线程
+ * tick 调度模式先运行，避免平台线程释放的内存抵消它的读数
+ */
+@Tag("benchmark")
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+class WaitingMacrosBenchmark {
+    private static final int MACROS = 5_000;
+
+    /**
+     * 进程常驻内存（Linux 上读取 /proc/self/status），读取不到时返回 -1
+     */
+    private static long residentKilobytes() {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc/self/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", ""));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // 不是 Linux
+        }
+        return -1;
+    }
+
+    private static long usedHeapKilobytes() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return (runtime.totalMemory() - runtime.freeMemory()) / 1024;
+    }
+
+    private static int liveThreads() {
+        return ManagementFactory.getThreadMXBean().getThreadCount();
+    }
+
+    private static List<MacroExecutor> executors() {
+        Macro macro = MacroParser.parse("waiting", List.of("wait;"));
+        List<MacroExecutor> executors = new ArrayList<>(MACROS);
+        for (int i = 0; i < MACROS; i++) {
+            executors.add(new MacroExecutor("waiting" + i, macro));
+        }
+        return executors;
+    }
+
+    /**
+     * 线程数、常驻内存和堆的一次读数
+     */
+    private static final class Usage {
+        final int threads = liveThreads();
+        final long rss = residentKilobytes();
+        final long heap = usedHeapKilobytes();
+    }
+
+    private static void report(String mode, Usage before, Usage waiting, double stopMillis) {
+        Bench.report(MACROS + " 个宏等待 " + mode, "线程 +%d，RSS +%s，堆 +%d KB，全部停止 %.1f ms",
+            waiting.threads - before.threads,
+            waiting.rss < 0 || before.rss < 0 ? "n/a" : (waiting.rss - before.rss) + " KB",
+            waiting.heap - before.heap, stopMillis);
+    }
+
+    @Test
+    @Order(2)
+    void threadMode() throws InterruptedException {
+        TestMinecraft.install();
+        List<MacroExecutor> executors = executors();
+        Usage before = new Usage();
+
+        List<Thread> threads = new ArrayList<>(MACROS);
+        for (MacroExecutor executor : executors) {
+            threads.add(MacroThreads.start("waiting", executor));
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        for (Thread thread : threads) {
+            while (thread.getState() != Thread.State.WAITING) {
+                assertTrue(System.nanoTime() < deadline, "宏线程没有全部进入等待");
+                Thread.sleep(1);
+            }
+        }
+
+        // 先记录等待时的占用，再测量停止
+        Usage waiting = new Usage();
+        long start = System.nanoTime();
+        for (MacroExecutor executor : executors) {
+            executor.stop();
+        }
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+            assertFalse(thread.isAlive());
+        }
+        double stopMillis = (System.nanoTime() - start) / 1e6;
+
+        report("线程模式（" + (MacroThreads.isVirtual() ? "虚拟线程" : "平台线程") + "）", before, waiting, stopMillis);
+    }
+
+    @Test
+    @Order(1)
+    void tickMode() {
+        TestMinecraft.install();
+        List<MacroExecutor> executors = executors();
+        Usage before = new Usage();
+
+        MacroScheduler scheduler = new MacroScheduler(new ConditionFeed());
+        for (MacroExecutor executor : executors) {
+            executor.startOn(scheduler);
+        }
+        // 每个 tick 有时间预算，推进到所有宏都进入 wait
+        for (int i = 0; i < 1_000; i++) {
+            scheduler.tick();
+        }
+        assertEquals(MACROS, scheduler.getFiberCount());
+
+        Usage waiting = new Usage();
+        long start = System.nanoTime();
+        for (MacroExecutor executor : executors) {
+            executor.stop();
+        }
+        // 停止后的 Fiber 在之后的 tick 里退出，同样受每 tick 的时间预算限制
+        int ticks = 0;
+        while (scheduler.getFiberCount() > 0) {
+            assertTrue(++ticks <= 1_000, "Fiber 没有全部退出");
+            scheduler.tick();
+        }
+        double stopMillis = (System.nanoTime() - start) / 1e6;
+        report("tick 调度模式（停止用了 " + ticks + " 个 tick）", before, waiting, stopMillis);
+    }
+}
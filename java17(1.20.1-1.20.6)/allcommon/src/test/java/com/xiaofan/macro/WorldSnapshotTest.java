@@ -0,0 +1,71 @@
+package com.xiaofan.macro;
+
+import com.xiaofan.TestMinecraft;
+import com.xiaofan.api.IItemRegistry;
+import com.xiaofan.api.IPlayerProvider;
+import com.xiaofan.api.ItemClassification;
+import com.xiaofan.api.ItemInfo;
+import com.xiaofan.api.PackedBlockPos;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 背包索引沿用与重建：背包不变时沿用上一个索引，标签更新后强制重建才能看到新标签
+ */
+class WorldSnapshotTest {
+    private final ItemInfo log = new ItemInfo(new Object(), 12, "minecraft:oak_log", "oak_log");
+    private Set<String> logTags = Collections.emptySet();
+
+    private TestMinecraft install() {
+        TestMinecraft mc = TestMinecraft.install();
+        IPlayerProvider player = TestMinecraft.stub(IPlayerProvider.class);
+        mc.playerProvider = (IPlayerProvider) Proxy.newProxyInstance(IPlayerProvider.class.getClassLoader(),
+            new Class<?>[]{IPlayerProvider.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "isPlayerPresent":
+                        return true;
+                    case "getPlayerPackedPosition":
+                        return PackedBlockPos.pack(0, 64, 0);
+                    case "getInventorySize":
+                        return 1;
+                    case "getItemInSlot":
+                        return log;
+                    default:
+                        return method.invoke(player, args);
+                }
+            });
+        IItemRegistry registry = TestMinecraft.stub(IItemRegistry.class);
+        mc.itemRegistry = (IItemRegistry) Proxy.newProxyInstance(IItemRegistry.class.getClassLoader(),
+            new Class<?>[]{IItemRegistry.class}, (proxy, method, args) -> method.getName().equals("getClassification")
+                ? new ItemClassification(false, null, null, logTags)
+                : method.invoke(registry, args));
+        return mc;
+    }
+
+    @Test
+    void unchangedInventoryReusesIndex() {
+        TestMinecraft mc = install();
+        WorldSnapshot first = WorldSnapshot.capture(mc, WorldSnapshot.EMPTY);
+        WorldSnapshot second = WorldSnapshot.capture(mc, first);
+        assertSame(first.inventory, second.inventory);
+        assertEquals(12, second.inventory.get("oak_log").count);
+    }
+
+    @Test
+    void tagsUpdateRebuildsUnchangedInventory() {
+        TestMinecraft mc = install();
+        // 进入服务器时标签还没有同步
+        WorldSnapshot beforeTags = WorldSnapshot.capture(mc, WorldSnapshot.EMPTY);
+        assertEquals(0, beforeTags.inventory.countTag("minecraft:logs"));
+
+        logTags = Set.of("minecraft:logs");
+        assertEquals(0, WorldSnapshot.capture(mc, beforeTags).inventory.countTag("minecraft:logs"), "背包不变时沿用旧索引");
+        WorldSnapshot afterTags = WorldSnapshot.capture(mc, beforeTags, true);
+        assertEquals(12, afterTags.inventory.countTag("minecraft:logs"));
+    }
+}
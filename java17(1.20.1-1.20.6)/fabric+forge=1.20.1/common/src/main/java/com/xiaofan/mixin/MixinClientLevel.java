@@ -0,0 +1,21 @@
+package com.xiaofan.mixin;
+
+import com.xiaofan.version.ChunkEventHandlerImpl;
+import net.minecraft.client.multiplayer.ClientLevel;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.block.state.BlockState;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+/**
+ * 客户端世界方块变化通知（服务器同步的方块更新和本地预测的方块变化都会经过 sendBlockUpdated）
+ */
+@Mixin(ClientLevel.class)
+public class MixinClientLevel {
+    @Inject(at = @At("HEAD"), method = "sendBlockUpdated(Lnet/minecraft/core/BlockPos;Lnet/minecraft/world/level/block/state/BlockState;Lnet/minecraft/world/level/block/state/BlockState;I)V")
+    private void onBlockUpdated(BlockPos pos, BlockState oldState, BlockState newState, int flags, CallbackInfo info) {
+        ChunkEventHandlerImpl.onBlockChanged(pos, oldState, newState);
+    }
+}
@@ -2,33 +2,47 @@ package com.xiaofan.version;
 
 import baritone.api.BaritoneAPI;
 import baritone.api.IBaritone;
+import com.xiaofan.api.BaritoneCommandResult;
+import com.xiaofan.api.BaritoneResult;
 import com.xiaofan.api.IBaritoneExecutor;
 import net.minecraft.client.Minecraft;
 import net.minecraft.core.BlockPos;
 
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 /**
  * 1.20.1 版本的 Baritone 执行器实现
  */
 public class BaritoneExecutorImpl implements IBaritoneExecutor {
+    private static final long MAX_WAIT_MILLIS = 300000;     // 最大等待5分钟，超过后结果为 TIMEOUT
+    private static final long CHECK_INTERVAL_MILLIS = 500;  // 备用停止检测的间隔
+    private static final int TOLERANCE = 3;                 // 距离 goto 目标多少格以内算到达
+    private static final long DISPATCH_TIMEOUT_SECONDS = 5; // 从其他线程执行命令时等待主线程的最长时间
+    
     @Override
-    public boolean executeCommand(String command) {
+    public BaritoneCommandResult executeCommand(String command) {
         Minecraft mc = Minecraft.getInstance();
-        if (mc == null || mc.player == null || mc.getConnection() == null) {
-            return false;
+        if (mc == null) {
+            return BaritoneCommandResult.failure(BaritoneCommandResult.Status.NOT_AVAILABLE, "Minecraft 未初始化");
+        }
+        if (mc.isSameThread()) {
+            return dispatch(command);
         }
         
+        // 命令管理器只能在主游戏线程上使用
         try {
-            IBaritone baritone = BaritoneAPI.getProvider().getPrimaryBaritone();
-            if (baritone == null) {
-                return false;
-            }
-            
-            // 通过聊天消息发送 Baritone 命令
-            String chatCommand = "#" + command;
-            mc.getConnection().sendChat(chatCommand);
-            return true;
-        } catch (Exception e) {
-            return false;
+            return mc.submit(() -> dispatch(command)).get(DISPATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return BaritoneCommandResult.failure(BaritoneCommandResult.Status.ERROR, "等待主线程时被中断");
+        } catch (TimeoutException e) {
+            return BaritoneCommandResult.failure(BaritoneCommandResult.Status.ERROR, "等待主线程超时");
+        } catch (ExecutionException e) {
+            return BaritoneCommandResult.failure(BaritoneCommandResult.Status.ERROR, String.valueOf(e.getCause()));
         }
     }
     
@@ -58,98 +72,144 @@ public class BaritoneExecutorImpl implements IBaritoneExecutor {
                 return;
             }
             
-            // 在主游戏线程中执行命令
-            if (mc.isSameThread()) {
-                executeCommandInternal(command);
-            } else {
-                final String cmdFinal = command;
-                mc.execute(() -> executeCommandInternal(cmdFinal));
-                
-                try {
-                    Thread.sleep(100);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    return;
-                }
-            }
+            CompletableFuture<BaritoneResult> future = executeAsync(command);
             
-            // 等待命令执行完成
-            if (targetPos != null && targetPos.length >= 3) {
-                BlockPos target = new BlockPos(targetPos[0], targetPos[1], targetPos[2]);
-                waitForPathfinding(baritone, target);
-            } else {
-                // 非 goto 命令，等待一小段时间
-                try {
-                    Thread.sleep(1000);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
+            // 在主游戏线程上无法等待后续 tick 的事件，发送后直接返回
+            if (mc.isSameThread()) {
+                return;
             }
             
+            // 等待 Baritone 的路径事件通知任务结束
+            waitForCompletion(BaritoneTaskTracker.of(baritone), future, targetPos == null || targetPos.length < 3 ? null
+                : new BlockPos(targetPos[0], targetPos[1], targetPos[2]));
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
     
-    private void executeCommandInternal(String command) {
+    @Override
+    public CompletableFuture<BaritoneResult> executeAsync(String command) {
         Minecraft mc = Minecraft.getInstance();
-        if (mc != null && mc.player != null && mc.getConnection() != null) {
-            String chatCommand = "#" + command;
-            mc.getConnection().sendChat(chatCommand);
+        if (mc == null || mc.player == null) {
+            return CompletableFuture.completedFuture(BaritoneResult.FAILED);
+        }
+        
+        IBaritone baritone;
+        try {
+            baritone = BaritoneAPI.getProvider().getPrimaryBaritone();
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(BaritoneResult.FAILED);
+        }
+        if (baritone == null) {
+            return CompletableFuture.completedFuture(BaritoneResult.FAILED);
         }
+        
+        BaritoneTaskTracker tracker = BaritoneTaskTracker.of(baritone);
+        BaritoneTaskTracker.Task task = new BaritoneTaskTracker.Task();
+        CompletableFuture<BaritoneResult> future = task.future;
+        future.completeOnTimeout(BaritoneResult.TIMEOUT, MAX_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        
+        // 取消时执行 stop 命令；任务已经被新命令替换或已经结束时不执行
+        future.whenComplete((result, error) -> {
+            if (future.isCancelled()) {
+                mc.execute(() -> {
+                    if (tracker.forget(task)) {
+                        dispatch("stop");
+                    }
+                });
+            }
+        });
+        
+        // 在主游戏线程中开始跟踪并执行命令
+        mc.execute(() -> {
+            if (future.isDone()) {
+                return;
+            }
+            tracker.begin(task);
+            if (!dispatch(command).isSuccess()) {
+                tracker.forget(task);
+                future.complete(BaritoneResult.FAILED);
+            }
+        });
+        return future;
     }
     
-    private void waitForPathfinding(IBaritone baritone, BlockPos targetPos) {
+    /**
+     * 在主游戏线程上把命令直接交给 Baritone 的命令管理器
+     * 不经过聊天栏，Baritone 没有拦截时也不会把命令发到服务器
+     */
+    private BaritoneCommandResult dispatch(String command) {
         Minecraft mc = Minecraft.getInstance();
-        if (mc == null || mc.player == null) {
-            return;
+        if (mc.player == null) {
+            return BaritoneCommandResult.failure(BaritoneCommandResult.Status.NOT_AVAILABLE, "玩家未进入世界");
         }
         
-        int maxWaitTime = 300000; // 最大等待5分钟
-        int checkInterval = 500; // 每500ms检查一次
-        int waited = 0;
+        try {
+            IBaritone baritone = BaritoneAPI.getProvider().getPrimaryBaritone();
+            if (baritone == null) {
+                return BaritoneCommandResult.failure(BaritoneCommandResult.Status.NOT_AVAILABLE, "Baritone 未加载");
+            }
+            
+            BaritoneTaskTracker.of(baritone).onCommand(command);
+            if (!baritone.getCommandManager().execute(command)) {
+                return BaritoneCommandResult.failure(BaritoneCommandResult.Status.UNKNOWN_COMMAND, command);
+            }
+            return BaritoneCommandResult.success();
+        } catch (Exception e) {
+            return BaritoneCommandResult.failure(BaritoneCommandResult.Status.ERROR, e.toString());
+        }
+    }
+    
+    /**
+     * 等待任务结束
+     * 结束由 BaritoneTaskTracker 根据 Baritone 事件判断，通常在任务真正结束后的一个 tick 内返回；
+     * 超过最长等待时间时 future 以 TIMEOUT 结束。
+     * 原来的停止检测只作为备用：事件没有到达时，玩家位置连续不变且 Baritone 没有在寻路或计算路径，
+     * 或者已经在 goto 目标附近，也认为任务结束。等待的线程被中断时取消任务
+     */
+    private void waitForCompletion(BaritoneTaskTracker tracker, CompletableFuture<BaritoneResult> future, BlockPos targetPos) {
+        Minecraft mc = Minecraft.getInstance();
         BlockPos lastPos = null;
         int stableCount = 0;
-        final int TOLERANCE = 3;
         
-        while (waited < maxWaitTime) {
+        while (true) {
             try {
-                BlockPos currentPos = mc.player.blockPosition();
-                
-                if (targetPos != null) {
-                    double distance = Math.sqrt(
-                        Math.pow(currentPos.getX() - targetPos.getX(), 2) +
-                        Math.pow(currentPos.getY() - targetPos.getY(), 2) +
-                        Math.pow(currentPos.getZ() - targetPos.getZ(), 2)
-                    );
-                    
-                    if (distance <= TOLERANCE) {
-                        Thread.sleep(1000);
-                        if (mc.player.blockPosition().distSqr(targetPos) <= TOLERANCE * TOLERANCE) {
-                            break;
-                        }
-                    }
-                }
-                
-                if (lastPos != null && currentPos.equals(lastPos)) {
-                    stableCount++;
-                    if (stableCount >= 4) {
-                        break;
-                    }
-                } else {
-                    stableCount = 0;
-                }
-                
-                lastPos = currentPos;
-                Thread.sleep(checkInterval);
-                waited += checkInterval;
-                
+                future.get(CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                return;
+            } catch (TimeoutException e) {
+                // 继续检查
             } catch (InterruptedException e) {
+                // 宏停止：取消任务，由 executeAsync 执行 stop
+                future.cancel(true);
                 Thread.currentThread().interrupt();
-                break;
-            } catch (Exception e) {
-                break;
+                return;
+            } catch (ExecutionException | CancellationException e) {
+                return;
+            }
+            
+            if (mc.player == null) {
+                return;
+            }
+            if (tracker.isBusy()) {
+                lastPos = null;
+                stableCount = 0;
+                continue;
+            }
+            BlockPos currentPos = mc.player.blockPosition();
+            if (targetPos != null && currentPos.distSqr(targetPos) <= TOLERANCE * TOLERANCE) {
+                future.complete(BaritoneResult.COMPLETED);
+                return;
+            }
+            if (currentPos.equals(lastPos)) {
+                stableCount++;
+                if (stableCount >= 4) {
+                    future.complete(BaritoneResult.COMPLETED);
+                    return;
+                }
+            } else {
+                stableCount = 0;
             }
+            lastPos = currentPos;
         }
     }
     
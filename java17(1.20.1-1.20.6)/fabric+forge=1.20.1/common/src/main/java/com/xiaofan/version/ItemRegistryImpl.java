@@ -1,16 +1,36 @@
 package com.xiaofan.version;
 
+import com.xiaofan.ClientTagsHandler;
 import com.xiaofan.api.IItemRegistry;
+import com.xiaofan.api.ItemClassification;
 import com.xiaofan.api.ItemInfo;
 import net.minecraft.core.registries.BuiltInRegistries;
 import net.minecraft.world.item.DiggerItem;
 import net.minecraft.world.item.Item;
 import net.minecraft.world.item.SwordItem;
 
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
 /**
  * 1.20.1 版本的物品注册表实现
  */
 public class ItemRegistryImpl implements IItemRegistry {
+    private static final String[] TOOL_KEYWORDS = {"pickaxe", "axe", "shovel", "hoe", "sword"};
+    // 常见的工具材质（按优先级）
+    private static final String[] MATERIALS = {"netherite", "diamond", "golden", "gold", "iron", "stone", "wooden", "wood"};
+    
+    private static final List<Runnable> tagsUpdatedCallbacks = new CopyOnWriteArrayList<>();
+    private static boolean tagsEventRegistered = false;
+    
+    // 物品分类表，标签更新时重建；表中没有的物品在查询时即时计算
+    private volatile Map<Item, ItemClassification> classifications = Collections.emptyMap();
+    
     @Override
     public String getItemKey(ItemInfo itemInfo) {
         if (itemInfo == null || itemInfo.getItemObject() == null) {
@@ -38,35 +58,7 @@ public class ItemRegistryImpl implements IItemRegistry {
     
     @Override
     public boolean isToolItem(ItemInfo itemInfo) {
-        if (itemInfo == null || itemInfo.getItemObject() == null) {
-            return false;
-        }
-        try {
-            Item item = (Item) itemInfo.getItemObject();
-            
-            // 检查是否是工具类物品
-            if (item instanceof DiggerItem || item instanceof SwordItem) {
-                return true;
-            }
-            
-            // 通过物品名称判断
-            String itemKey = getItemKey(itemInfo);
-            if (itemKey == null) {
-                return false;
-            }
-            String itemName = getItemName(itemKey).toLowerCase();
-            
-            String[] toolKeywords = {"pickaxe", "axe", "shovel", "hoe", "sword"};
-            for (String keyword : toolKeywords) {
-                if (itemName.contains(keyword)) {
-                    return true;
-                }
-            }
-            
-            return false;
-        } catch (ClassCastException e) {
-            return false;
-        }
+        return getClassification(itemInfo).isTool();
     }
     
     @Override
@@ -74,18 +66,88 @@ public class ItemRegistryImpl implements IItemRegistry {
         if (itemInfo == null) {
             return null;
         }
+        if (itemInfo.getItemObject() instanceof Item) {
+            return getClassification(itemInfo).getMaterial();
+        }
         
         String itemName = itemInfo.getItemName();
-        if (itemName == null) {
-            return null;
+        return itemName == null ? null : findMaterial(itemName.toLowerCase());
+    }
+    
+    @Override
+    public void rebuildClassificationTable() {
+        Map<Item, ItemClassification> table = new IdentityHashMap<>();
+        for (Item item : BuiltInRegistries.ITEM) {
+            table.put(item, classify(item));
+        }
+        classifications = table;
+    }
+    
+    @Override
+    public void registerTagsUpdated(Runnable onUpdated) {
+        tagsUpdatedCallbacks.add(onUpdated);
+        ensureTagsEventRegistered();
+    }
+    
+    /**
+     * 首次注册标签监听器时设置平台事件监听
+     */
+    private static synchronized void ensureTagsEventRegistered() {
+        if (tagsEventRegistered) {
+            return;
+        }
+        ClientTagsHandler.registerTagsUpdated(ItemRegistryImpl::fireTagsUpdated);
+        tagsEventRegistered = true;
+    }
+    
+    private static void fireTagsUpdated() {
+        for (Runnable callback : tagsUpdatedCallbacks) {
+            try {
+                callback.run();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+    
+    @Override
+    public ItemClassification getClassification(ItemInfo itemInfo) {
+        if (itemInfo == null || !(itemInfo.getItemObject() instanceof Item item)) {
+            return ItemClassification.NONE;
         }
+        ItemClassification classification = classifications.get(item);
+        return classification != null ? classification : classify(item);
+    }
+    
+    /**
+     * 计算物品分类
+     */
+    private static ItemClassification classify(Item item) {
+        String itemName = BuiltInRegistries.ITEM.getKey(item).getPath().toLowerCase();
         
-        String itemNameLower = itemName.toLowerCase();
+        // 通过物品名称判断工具种类
+        String toolKind = null;
+        for (String keyword : TOOL_KEYWORDS) {
+            if (itemName.contains(keyword)) {
+                toolKind = keyword;
+                break;
+            }
+        }
+        boolean tool = item instanceof DiggerItem || item instanceof SwordItem || toolKind != null;
         
-        // 常见的工具材质（按优先级）
-        String[] materials = {"netherite", "diamond", "golden", "gold", "iron", "stone", "wooden", "wood"};
+        @SuppressWarnings("deprecation")
+        Set<String> tags = item.builtInRegistryHolder().tags()
+            .map(tag -> tag.location().toString())
+            .collect(Collectors.toUnmodifiableSet());
         
-        for (String material : materials) {
+        return new ItemClassification(tool, toolKind, findMaterial(itemName), tags);
+    }
+    
+    /**
+     * 从物品名称识别材质
+     */
+    private static String findMaterial(String itemNameLower) {
+        for (String material : MATERIALS) {
             if (itemNameLower.contains(material)) {
                 // 标准化材质名称
                 if (material.equals("gold")) {
@@ -96,7 +158,6 @@ public class ItemRegistryImpl implements IItemRegistry {
                 return material;
             }
         }
-        
         return null;
     }
 }
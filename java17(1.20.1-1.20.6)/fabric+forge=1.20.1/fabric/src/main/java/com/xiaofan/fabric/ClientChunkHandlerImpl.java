@@ -0,0 +1,19 @@
+package com.xiaofan.fabric;
+
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientChunkEvents;
+import net.minecraft.world.level.chunk.LevelChunk;
+
+import java.util.function.Consumer;
+
+/**
+ * Fabric 平台的客户端区块事件处理器实现
+ */
+public class ClientChunkHandlerImpl {
+    /**
+     * 注册客户端区块加载/卸载回调
+     */
+    public static void registerChunkEvents(Consumer<LevelChunk> onLoad, Consumer<LevelChunk> onUnload) {
+        ClientChunkEvents.CHUNK_LOAD.register((level, chunk) -> onLoad.accept(chunk));
+        ClientChunkEvents.CHUNK_UNLOAD.register((level, chunk) -> onUnload.accept(chunk));
+    }
+}
@@ -0,0 +1,43 @@
+package com.xiaofan.forge;
+
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.event.level.ChunkEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import java.util.function.Consumer;
+
+/**
+ * Forge 平台的客户端区块事件处理器实现
+ */
+@Mod.EventBusSubscriber(value = Dist.CLIENT, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public class ClientChunkHandlerImpl {
+    private static volatile Consumer<LevelChunk> loadCallback;
+    private static volatile Consumer<LevelChunk> unloadCallback;
+    
+    /**
+     * 注册客户端区块加载/卸载回调
+     */
+    public static void registerChunkEvents(Consumer<LevelChunk> onLoad, Consumer<LevelChunk> onUnload) {
+        loadCallback = onLoad;
+        unloadCallback = onUnload;
+    }
+    
+    @SubscribeEvent
+    public static void onChunkLoad(ChunkEvent.Load event) {
+        // ChunkEvent 在服务端世界也会触发，只转发客户端世界的区块
+        Consumer<LevelChunk> callback = loadCallback;
+        if (callback != null && event.getLevel().isClientSide() && event.getChunk() instanceof LevelChunk chunk) {
+            callback.accept(chunk);
+        }
+    }
+    
+    @SubscribeEvent
+    public static void onChunkUnload(ChunkEvent.Unload event) {
+        Consumer<LevelChunk> callback = unloadCallback;
+        if (callback != null && event.getLevel().isClientSide() && event.getChunk() instanceof LevelChunk chunk) {
+            callback.accept(chunk);
+        }
+    }
+}
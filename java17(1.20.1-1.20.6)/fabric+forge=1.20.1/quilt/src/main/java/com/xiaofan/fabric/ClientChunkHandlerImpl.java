@@ -0,0 +1,21 @@
+package com.xiaofan.fabric;
+
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientChunkEvents;
+import net.minecraft.world.level.chunk.LevelChunk;
+
+import java.util.function.Consumer;
+
+/**
+ * Quilt 平台的客户端区块事件处理器实现
+ * Quilt 兼容 Fabric API，所以使用相同的实现
+ * 注意：由于 Quilt 使用 architectury-fabric，所以实现类需要放在 fabric 包下
+ */
+public class ClientChunkHandlerImpl {
+    /**
+     * 注册客户端区块加载/卸载回调
+     */
+    public static void registerChunkEvents(Consumer<LevelChunk> onLoad, Consumer<LevelChunk> onUnload) {
+        ClientChunkEvents.CHUNK_LOAD.register((level, chunk) -> onLoad.accept(chunk));
+        ClientChunkEvents.CHUNK_UNLOAD.register((level, chunk) -> onUnload.accept(chunk));
+    }
+}
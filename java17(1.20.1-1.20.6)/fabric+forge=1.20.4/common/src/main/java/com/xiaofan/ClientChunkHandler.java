@@ -0,0 +1,21 @@
+package com.xiaofan;
+
+import dev.architectury.injectables.annotations.ExpectPlatform;
+import net.minecraft.world.level.chunk.LevelChunk;
+
+import java.util.function.Consumer;
+
+/**
+ * 客户端区块事件平台抽象
+ * 用于在多平台（Fabric、Forge、Quilt）上注册客户端区块加载/卸载事件
+ */
+public class ClientChunkHandler {
+    /**
+     * 注册客户端区块加载/卸载监听器
+     * 在各个平台实现中注册相应的事件，只转发客户端世界的区块
+     */
+    @ExpectPlatform
+    public static void registerChunkEvents(Consumer<LevelChunk> onLoad, Consumer<LevelChunk> onUnload) {
+        throw new AssertionError();
+    }
+}
@@ -0,0 +1,18 @@
+package com.xiaofan;
+
+import dev.architectury.injectables.annotations.ExpectPlatform;
+
+/**
+ * 客户端标签更新平台抽象
+ * 用于在多平台（Fabric、Forge、Quilt）上注册客户端收到标签后的回调
+ */
+public class ClientTagsHandler {
+    /**
+     * 注册客户端标签更新监听器
+     * 进入服务器时标签在登录之后才同步，/reload 后会重新同步；只转发客户端收到的标签，回调在客户端主线程上调用
+     */
+    @ExpectPlatform
+    public static void registerTagsUpdated(Runnable onUpdated) {
+        throw new AssertionError();
+    }
+}
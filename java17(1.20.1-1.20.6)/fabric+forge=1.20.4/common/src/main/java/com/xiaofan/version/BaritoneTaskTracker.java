@@ -0,0 +1,191 @@
+package com.xiaofan.version;
+
+import baritone.api.BaritoneAPI;
+import baritone.api.IBaritone;
+import baritone.api.behavior.IPathingBehavior;
+import baritone.api.event.events.ChatEvent;
+import baritone.api.event.events.PathEvent;
+import baritone.api.event.events.TickEvent;
+import baritone.api.event.listener.AbstractGameEventListener;
+import com.xiaofan.api.BaritoneResult;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Baritone 任务完成监听
+ * 注册到 Baritone 的事件总线，根据路径事件和进程状态判断当前命令启动的任务何时结束，
+ * 结果通过 CompletableFuture 通知（见 BaritoneResult）。执行 stop 等命令（玩家在聊天栏输入或通过执行器）时，
+ * 当前任务在 Baritone 停下后结果为 CANCELLED；玩家在聊天栏输入其他 Baritone 命令（查询和设置类命令除外）时，
+ * 当前任务被新命令替换，结果立即为 CANCELLED
+ *
+ * 事件回调都在客户端线程上执行，begin 也必须在客户端线程上调用
+ */
+final class BaritoneTaskTracker implements AbstractGameEventListener {
+    // 发送命令后这么多 tick 内 Baritone 仍未开始工作，认为命令没有启动任何任务
+    private static final int START_GRACE_TICKS = 20;
+    
+    private static final Set<String> STOP_COMMANDS = Set.of("stop", "cancel", "forcecancel");
+    // 不会启动新任务的命令，玩家输入时不影响当前任务
+    private static final Set<String> NON_TASK_COMMANDS = Set.of(
+        "help", "set", "setting", "settings", "version", "proc", "eta", "render", "gc", "reloadall", "saveall");
+    
+    private static BaritoneTaskTracker instance;
+    
+    private final IBaritone baritone;
+    private Task current;
+    
+    private BaritoneTaskTracker(IBaritone baritone) {
+        this.baritone = baritone;
+    }
+    
+    /**
+     * 获取指定 Baritone 的监听器，第一次调用时注册到它的事件总线
+     */
+    static synchronized BaritoneTaskTracker of(IBaritone baritone) {
+        if (instance == null || instance.baritone != baritone) {
+            instance = new BaritoneTaskTracker(baritone);
+            baritone.getGameEventHandler().registerEventListener(instance);
+        }
+        return instance;
+    }
+    
+    /**
+     * 开始跟踪一个任务（在发送命令之前调用）
+     * 之前的任务还没有结束时结果为 CANCELLED，Baritone 会用新命令替换它
+     */
+    void begin(Task task) {
+        if (current != null) {
+            current.future.complete(BaritoneResult.CANCELLED);
+        }
+        current = task;
+    }
+    
+    /**
+     * 停止跟踪指定任务
+     * @return 该任务是否是当前任务（是时调用者应停止 Baritone）
+     */
+    boolean forget(Task task) {
+        if (current != task) {
+            return false;
+        }
+        current = null;
+        return true;
+    }
+    
+    /**
+     * 通过命令管理器执行的命令（在客户端线程上调用）
+     * @param command 命令内容（不包含 # 前缀）
+     */
+    void onCommand(String command) {
+        Task task = current;
+        if (task != null && STOP_COMMANDS.contains(commandName(command))) {
+            task.cancelled = true;
+        }
+    }
+    
+    /**
+     * 玩家在聊天栏输入的 Baritone 命令
+     * 执行器发送的命令不经过聊天栏，只有玩家输入的命令会在这里替换当前任务
+     */
+    @Override
+    public void onSendChatMessage(ChatEvent event) {
+        String message = event.getMessage().trim();
+        String prefix = BaritoneAPI.getSettings().prefix.value;
+        if (!message.startsWith(prefix)) {
+            return;
+        }
+        String command = message.substring(prefix.length());
+        String name = commandName(command);
+        if (STOP_COMMANDS.contains(name)) {
+            onCommand(command);
+        } else if (current != null && !name.isEmpty() && !NON_TASK_COMMANDS.contains(name)) {
+            finish(BaritoneResult.CANCELLED);
+        }
+    }
+    
+    /**
+     * 命令名（第一个词，小写）
+     */
+    private static String commandName(String command) {
+        String trimmed = command.trim().toLowerCase();
+        int space = trimmed.indexOf(' ');
+        return space < 0 ? trimmed : trimmed.substring(0, space);
+    }
+    
+    @Override
+    public void onPathEvent(PathEvent event) {
+        Task task = current;
+        if (task == null) {
+            return;
+        }
+        switch (event) {
+            case CALC_FAILED:
+            case NEXT_CALC_FAILED:
+                task.failed = true;
+                break;
+            case CALC_FINISHED_NOW_EXECUTING:
+            case AT_GOAL:
+                task.started = true;
+                task.failed = false;
+                break;
+            default:
+                break;
+        }
+    }
+    
+    @Override
+    public void onPostTick(TickEvent event) {
+        Task task = current;
+        if (task == null) {
+            return;
+        }
+        if (task.future.isDone()) {
+            current = null;
+            return;
+        }
+        if (event.getType() == TickEvent.Type.OUT) {
+            finish(BaritoneResult.FAILED);
+            return;
+        }
+        
+        task.ticks++;
+        if (isBusy()) {
+            task.started = true;
+            return;
+        }
+        if (task.cancelled) {
+            finish(BaritoneResult.CANCELLED);
+        } else if (task.started) {
+            finish(task.failed ? BaritoneResult.FAILED : BaritoneResult.COMPLETED);
+        } else if (task.ticks >= START_GRACE_TICKS) {
+            finish(BaritoneResult.FAILED);
+        }
+    }
+    
+    /**
+     * Baritone 是否还有进程在控制，或者还在执行、计算路径
+     */
+    boolean isBusy() {
+        IPathingBehavior pathing = baritone.getPathingBehavior();
+        return baritone.getPathingControlManager().mostRecentInControl().isPresent()
+            || pathing.isPathing()
+            || pathing.getInProgress().isPresent();
+    }
+    
+    private void finish(BaritoneResult result) {
+        current.future.complete(result);
+        current = null;
+    }
+    
+    /**
+     * 一次命令对应的任务
+     */
+    static final class Task {
+        final CompletableFuture<BaritoneResult> future = new CompletableFuture<>();
+        private int ticks;
+        private boolean started;
+        private boolean failed;
+        private boolean cancelled;
+    }
+}
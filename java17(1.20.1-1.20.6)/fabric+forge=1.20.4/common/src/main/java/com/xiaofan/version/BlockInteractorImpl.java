@@ -1,8 +1,11 @@
 package com.xiaofan.version;
 
 import com.xiaofan.api.BlockInfo;
+import com.xiaofan.api.BlockRegion;
 import com.xiaofan.api.IBlockInteractor;
+import com.xiaofan.api.SectionSnapshot;
 import net.minecraft.client.Minecraft;
+import net.minecraft.client.multiplayer.ClientLevel;
 import net.minecraft.client.player.LocalPlayer;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction;
@@ -12,45 +15,281 @@ import net.minecraft.world.InteractionHand;
 import net.minecraft.world.level.block.BedBlock;
 import net.minecraft.world.level.block.Block;
 import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.chunk.PalettedContainer;
 import net.minecraft.world.phys.BlockHitResult;
 import net.minecraft.world.phys.Vec3;
 
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongConsumer;
+import java.util.function.Predicate;
+
 /**
  * 1.20.1 版本的方块交互器实现
  */
 public class BlockInteractorImpl implements IBlockInteractor {
+    // 每种方块一个 BlockInfo，注册表键和名称只计算一次
+    private static final Map<Block, BlockInfo> blockInfos = new ConcurrentHashMap<>();
+    
+    // 每个线程复用一个可变坐标，逐格读取方块时不分配 BlockPos
+    private final ThreadLocal<BlockPos.MutableBlockPos> cursor = ThreadLocal.withInitial(BlockPos.MutableBlockPos::new);
+    
     @Override
     public BlockInfo getBlockState(int[] pos) {
+        if (pos == null || pos.length < 3) {
+            return null;
+        }
+        return getBlockState(BlockPos.asLong(pos[0], pos[1], pos[2]));
+    }
+    
+    @Override
+    public BlockInfo getBlockState(long packedPos) {
         Minecraft mc = Minecraft.getInstance();
-        if (mc == null || mc.level == null || pos == null || pos.length < 3) {
+        if (mc == null || mc.level == null) {
             return null;
         }
         
-        BlockPos blockPos = new BlockPos(pos[0], pos[1], pos[2]);
-        BlockState state = mc.level.getBlockState(blockPos);
-        Block block = state.getBlock();
+        BlockState state = mc.level.getBlockState(cursor.get().set(packedPos));
+        return blockInfo(state.getBlock());
+    }
+    
+    @Override
+    public BlockRegion getBlockRegion(long fromPos, long toPos, Predicate<BlockInfo> filter) {
+        Minecraft mc = Minecraft.getInstance();
+        if (mc == null || mc.level == null) {
+            return null;
+        }
+        if (!mc.isSameThread()) {
+            // 只切换一次线程，整个区域在主线程上读完
+            return mc.submit(() -> readRegion(mc.level, fromPos, toPos, filter)).join();
+        }
+        return readRegion(mc.level, fromPos, toPos, filter);
+    }
+    
+    /**
+     * 按区块段读取区域（在主线程上调用）
+     */
+    private BlockRegion readRegion(ClientLevel level, long fromPos, long toPos, Predicate<BlockInfo> filter) {
+        if (level == null) {
+            return null;
+        }
         
-        String blockKey = BuiltInRegistries.BLOCK.getKey(block).toString();
-        String blockName = blockKey.substring(blockKey.indexOf(':') + 1);
+        // y 方向裁剪到建筑高度内
+        int minX = Math.min(BlockPos.getX(fromPos), BlockPos.getX(toPos));
+        int minY = Math.max(Math.min(BlockPos.getY(fromPos), BlockPos.getY(toPos)), level.getMinBuildHeight());
+        int minZ = Math.min(BlockPos.getZ(fromPos), BlockPos.getZ(toPos));
+        int maxX = Math.max(BlockPos.getX(fromPos), BlockPos.getX(toPos));
+        int maxY = Math.min(Math.max(BlockPos.getY(fromPos), BlockPos.getY(toPos)), level.getMaxBuildHeight() - 1);
+        int maxZ = Math.max(BlockPos.getZ(fromPos), BlockPos.getZ(toPos));
+        int sizeX = maxX - minX + 1;
+        int sizeY = Math.max(0, maxY - minY + 1);
+        int sizeZ = maxZ - minZ + 1;
+        if ((long) sizeX * sizeY * sizeZ > MAX_REGION_VOLUME) {
+            return null;
+        }
+        
+        short[] ids = new short[sizeX * sizeY * sizeZ];
+        List<BlockInfo> palette = new ArrayList<>();
+        palette.add(null); // 0 表示未读取
+        Map<Block, Integer> paletteIds = new IdentityHashMap<>();
+        Predicate<BlockState> sectionFilter = filter == null ? null : state -> filter.test(blockInfo(state.getBlock()));
         
-        return new BlockInfo(block, blockKey, blockName);
+        for (int chunkX = minX >> 4; chunkX <= maxX >> 4; chunkX++) {
+            for (int chunkZ = minZ >> 4; chunkZ <= maxZ >> 4; chunkZ++) {
+                LevelChunk chunk = level.getChunkSource().getChunk(chunkX, chunkZ, false);
+                if (chunk == null) {
+                    continue;
+                }
+                LevelChunkSection[] sections = chunk.getSections();
+                int x0 = Math.max(minX, chunkX << 4);
+                int x1 = Math.min(maxX, (chunkX << 4) + 15);
+                int z0 = Math.max(minZ, chunkZ << 4);
+                int z1 = Math.min(maxZ, (chunkZ << 4) + 15);
+                
+                for (int sectionY = minY >> 4; sizeY > 0 && sectionY <= maxY >> 4; sectionY++) {
+                    LevelChunkSection section = sections[level.getSectionIndexFromSectionY(sectionY)];
+                    // 区块段的调色板里没有要找的方块，整段跳过
+                    if (sectionFilter != null && !section.maybeHas(sectionFilter)) {
+                        continue;
+                    }
+                    int y0 = Math.max(minY, sectionY << 4);
+                    int y1 = Math.min(maxY, (sectionY << 4) + 15);
+                    
+                    Block lastBlock = null;
+                    short lastId = 0;
+                    for (int y = y0; y <= y1; y++) {
+                        for (int z = z0; z <= z1; z++) {
+                            int index = ((y - minY) * sizeZ + (z - minZ)) * sizeX + (x0 - minX);
+                            for (int x = x0; x <= x1; x++, index++) {
+                                Block block = section.getBlockState(x & 15, y & 15, z & 15).getBlock();
+                                if (block != lastBlock) {
+                                    Integer id = paletteIds.get(block);
+                                    if (id == null) {
+                                        id = palette.size();
+                                        palette.add(blockInfo(block));
+                                        paletteIds.put(block, id);
+                                    }
+                                    lastBlock = block;
+                                    lastId = (short) (int) id;
+                                }
+                                ids[index] = lastId;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        
+        return new BlockRegion(minX, minY, minZ, sizeX, sizeY, sizeZ, palette.toArray(new BlockInfo[0]), ids);
     }
     
     @Override
-    public boolean isBed(BlockInfo blockInfo) {
-        if (blockInfo == null || blockInfo.getBlockObject() == null) {
-            return false;
+    public void findBlocks(long fromPos, long toPos, Predicate<BlockInfo> filter, LongConsumer onMatch) {
+        Minecraft mc = Minecraft.getInstance();
+        if (mc == null || mc.level == null) {
+            return;
         }
-        try {
-            Block block = (Block) blockInfo.getBlockObject();
-            return block instanceof BedBlock;
-        } catch (ClassCastException e) {
-            return false;
+        if (!mc.isSameThread()) {
+            mc.submit(() -> scanRegion(mc.level, fromPos, toPos, filter, onMatch)).join();
+            return;
         }
+        scanRegion(mc.level, fromPos, toPos, filter, onMatch);
+    }
+    
+    /**
+     * 按区块段查找满足条件的方块（在主线程上调用）
+     */
+    private void scanRegion(ClientLevel level, long fromPos, long toPos, Predicate<BlockInfo> filter, LongConsumer onMatch) {
+        if (level == null) {
+            return;
+        }
+        
+        int minX = Math.min(BlockPos.getX(fromPos), BlockPos.getX(toPos));
+        int minZ = Math.min(BlockPos.getZ(fromPos), BlockPos.getZ(toPos));
+        int maxX = Math.max(BlockPos.getX(fromPos), BlockPos.getX(toPos));
+        int maxZ = Math.max(BlockPos.getZ(fromPos), BlockPos.getZ(toPos));
+        int fromY = Math.max(Math.min(BlockPos.getY(fromPos), BlockPos.getY(toPos)), level.getMinBuildHeight());
+        int toY = Math.min(Math.max(BlockPos.getY(fromPos), BlockPos.getY(toPos)), level.getMaxBuildHeight() - 1);
+        Predicate<BlockState> sectionFilter = state -> filter.test(blockInfo(state.getBlock()));
+        
+        for (int chunkX = minX >> 4; chunkX <= maxX >> 4; chunkX++) {
+            for (int chunkZ = minZ >> 4; chunkZ <= maxZ >> 4; chunkZ++) {
+                LevelChunk chunk = level.getChunkSource().getChunk(chunkX, chunkZ, false);
+                if (chunk == null) {
+                    continue;
+                }
+                LevelChunkSection[] sections = chunk.getSections();
+                int x0 = Math.max(minX, chunkX << 4);
+                int x1 = Math.min(maxX, (chunkX << 4) + 15);
+                int z0 = Math.max(minZ, chunkZ << 4);
+                int z1 = Math.min(maxZ, (chunkZ << 4) + 15);
+                
+                for (int sectionY = fromY >> 4; sectionY <= toY >> 4; sectionY++) {
+                    LevelChunkSection section = sections[level.getSectionIndexFromSectionY(sectionY)];
+                    if (!section.maybeHas(sectionFilter)) {
+                        continue;
+                    }
+                    int y0 = Math.max(fromY, sectionY << 4);
+                    int y1 = Math.min(toY, (sectionY << 4) + 15);
+                    
+                    Block lastBlock = null;
+                    boolean lastMatch = false;
+                    for (int y = y0; y <= y1; y++) {
+                        for (int z = z0; z <= z1; z++) {
+                            for (int x = x0; x <= x1; x++) {
+                                Block block = section.getBlockState(x & 15, y & 15, z & 15).getBlock();
+                                if (block != lastBlock) {
+                                    lastBlock = block;
+                                    lastMatch = filter.test(blockInfo(block));
+                                }
+                                if (lastMatch) {
+                                    onMatch.accept(BlockPos.asLong(x, y, z));
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+    
+    @Override
+    public SectionSnapshot snapshotSection(int chunkX, int sectionY, int chunkZ, Predicate<BlockInfo> filter) {
+        Minecraft mc = Minecraft.getInstance();
+        ClientLevel level = mc == null ? null : mc.level;
+        if (level == null || sectionY < level.getMinSection() || sectionY >= level.getMaxSection()) {
+            return null;
+        }
+        LevelChunk chunk = level.getChunkSource().getChunk(chunkX, chunkZ, false);
+        if (chunk == null) {
+            return null;
+        }
+        
+        LevelChunkSection section = chunk.getSections()[level.getSectionIndexFromSectionY(sectionY)];
+        if (!section.maybeHas(state -> filter.test(blockInfo(state.getBlock())))) {
+            return SectionSnapshot.EMPTY;
+        }
+        // 只复制调色板和打包的下标数组，逐格查找留给后台线程
+        PalettedContainer<BlockState> states = section.getStates().copy();
+        int originX = chunkX << 4;
+        int originY = sectionY << 4;
+        int originZ = chunkZ << 4;
+        return (blockFilter, onMatch) -> {
+            Block lastBlock = null;
+            boolean lastMatch = false;
+            for (int y = 0; y < 16; y++) {
+                for (int z = 0; z < 16; z++) {
+                    for (int x = 0; x < 16; x++) {
+                        Block block = states.get(x, y, z).getBlock();
+                        if (block != lastBlock) {
+                            lastBlock = block;
+                            lastMatch = blockFilter.test(blockInfo(block));
+                        }
+                        if (lastMatch) {
+                            onMatch.accept(BlockPos.asLong(originX + x, originY + y, originZ + z));
+                        }
+                    }
+                }
+            }
+        };
+    }
+    
+    /**
+     * 方块对应的 BlockInfo（缓存）
+     */
+    static BlockInfo blockInfo(Block block) {
+        return blockInfos.computeIfAbsent(block, BlockInteractorImpl::describe);
+    }
+    
+    /**
+     * 创建方块的 BlockInfo（每种方块只调用一次）
+     */
+    private static BlockInfo describe(Block block) {
+        String blockKey = BuiltInRegistries.BLOCK.getKey(block).toString();
+        String blockName = blockKey.substring(blockKey.indexOf(':') + 1);
+        return new BlockInfo(block, blockKey, blockName, block instanceof BedBlock);
+    }
+    
+    @Override
+    public boolean isBed(BlockInfo blockInfo) {
+        return blockInfo != null && blockInfo.isBed();
     }
     
     @Override
     public IBlockInteractor.InteractionResult interactWithBlock(int[] pos) {
+        if (pos == null || pos.length < 3) {
+            return IBlockInteractor.InteractionResult.NOT_AVAILABLE;
+        }
+        return interactWithBlock(BlockPos.asLong(pos[0], pos[1], pos[2]));
+    }
+    
+    @Override
+    public IBlockInteractor.InteractionResult interactWithBlock(long packedPos) {
         Minecraft mc = Minecraft.getInstance();
         if (mc == null || mc.level == null || mc.player == null || mc.gameMode == null) {
             return IBlockInteractor.InteractionResult.NOT_AVAILABLE;
@@ -62,11 +301,7 @@ public class BlockInteractorImpl implements IBlockInteractor {
         
         LocalPlayer player = (LocalPlayer) mc.player;
         
-        if (pos == null || pos.length < 3) {
-            return IBlockInteractor.InteractionResult.NOT_AVAILABLE;
-        }
-        
-        BlockPos blockPos = new BlockPos(pos[0], pos[1], pos[2]);
+        BlockPos blockPos = BlockPos.of(packedPos);
         BlockState bedState = mc.level.getBlockState(blockPos);
         Block block = bedState.getBlock();
         
@@ -0,0 +1,83 @@
+package com.xiaofan.version;
+
+import com.xiaofan.ClientChunkHandler;
+import com.xiaofan.api.BlockInfo;
+import com.xiaofan.api.IChunkEventHandler;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 1.20.1 版本的区块事件处理器实现
+ */
+public class ChunkEventHandlerImpl implements IChunkEventHandler {
+    private static final List<ChunkListener> loadCallbacks = new CopyOnWriteArrayList<>();
+    private static final List<ChunkListener> unloadCallbacks = new CopyOnWriteArrayList<>();
+    private static final List<BlockChangeListener> blockChangeCallbacks = new CopyOnWriteArrayList<>();
+    private static boolean initialized = false;
+    
+    @Override
+    public void registerChunkLoad(ChunkListener onLoad) {
+        loadCallbacks.add(onLoad);
+        ensureInitialized();
+    }
+    
+    @Override
+    public void registerChunkUnload(ChunkListener onUnload) {
+        unloadCallbacks.add(onUnload);
+        ensureInitialized();
+    }
+    
+    @Override
+    public void registerBlockChange(BlockChangeListener onChange) {
+        blockChangeCallbacks.add(onChange);
+    }
+    
+    /**
+     * 首次注册区块监听器时设置平台事件监听
+     */
+    private static synchronized void ensureInitialized() {
+        if (initialized) {
+            return;
+        }
+        ClientChunkHandler.registerChunkEvents(
+            chunk -> fireChunk(loadCallbacks, chunk),
+            chunk -> fireChunk(unloadCallbacks, chunk));
+        initialized = true;
+    }
+    
+    private static void fireChunk(List<ChunkListener> callbacks, LevelChunk chunk) {
+        ChunkPos pos = chunk.getPos();
+        for (ChunkListener callback : callbacks) {
+            try {
+                callback.onChunk(pos.x, pos.z);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+    
+    /**
+     * 客户端世界方块变化（由 MixinClientLevel 调用）
+     */
+    public static void onBlockChanged(BlockPos pos, BlockState oldState, BlockState newState) {
+        if (blockChangeCallbacks.isEmpty() || oldState.getBlock() == newState.getBlock()) {
+            return;
+        }
+        
+        BlockInfo oldBlock = BlockInteractorImpl.blockInfo(oldState.getBlock());
+        BlockInfo newBlock = BlockInteractorImpl.blockInfo(newState.getBlock());
+        long packedPos = pos.asLong();
+        for (BlockChangeListener callback : blockChangeCallbacks) {
+            try {
+                callback.onBlockChange(packedPos, oldBlock, newBlock);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -16,6 +16,7 @@ public class MinecraftVersionImpl implements IMinecraftVersion {
     private final IBlockInteractor blockInteractor = new BlockInteractorImpl();
     private final IGameDirectoryProvider gameDirectoryProvider = new GameDirectoryProviderImpl();
     private final ITickHandler tickHandler = new TickHandlerImpl();
+    private final IChunkEventHandler chunkEventHandler = new ChunkEventHandlerImpl();
     private final IBaritoneExecutor baritoneExecutor = new BaritoneExecutorImpl();
     private final IKeyInputHandler keyInputHandler = new KeyInputHandlerImpl();
     private final IGuiRenderHandler guiRenderHandler = new GuiRenderHandlerImpl();
@@ -85,6 +86,11 @@ public class MinecraftVersionImpl implements IMinecraftVersion {
         return tickHandler;
     }
     
+    @Override
+    public IChunkEventHandler getChunkEventHandler() {
+        return chunkEventHandler;
+    }
+    
     @Override
     public IBaritoneExecutor getBaritoneExecutor() {
         return baritoneExecutor;
@@ -2,6 +2,7 @@ package com.xiaofan.version;
 
 import com.xiaofan.api.IPlayerProvider;
 import com.xiaofan.api.ItemInfo;
+import com.xiaofan.api.PackedBlockPos;
 import net.minecraft.client.Minecraft;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.registries.BuiltInRegistries;
@@ -22,6 +23,15 @@ public class PlayerProviderImpl implements IPlayerProvider {
         return new int[]{pos.getX(), pos.getY(), pos.getZ()};
     }
     
+    @Override
+    public long getPlayerPackedPosition() {
+        Minecraft mc = Minecraft.getInstance();
+        if (mc == null || mc.player == null) {
+            return PackedBlockPos.NONE;
+        }
+        return mc.player.blockPosition().asLong();
+    }
+    
     @Override
     public boolean isPlayerPresent() {
         Minecraft mc = Minecraft.getInstance();
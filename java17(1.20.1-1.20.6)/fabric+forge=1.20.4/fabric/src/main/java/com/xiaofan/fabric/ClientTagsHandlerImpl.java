@@ -0,0 +1,20 @@
+package com.xiaofan.fabric;
+
+import net.fabricmc.fabric.api.event.lifecycle.v1.CommonLifecycleEvents;
+
+/**
+ * Fabric 平台的客户端标签更新事件实现
+ */
+public class ClientTagsHandlerImpl {
+    /**
+     * 注册客户端标签更新回调
+     */
+    public static void registerTagsUpdated(Runnable onUpdated) {
+        // 单人游戏中服务端加载数据包时也会触发，只转发客户端收到的标签
+        CommonLifecycleEvents.TAGS_LOADED.register((registries, client) -> {
+            if (client) {
+                onUpdated.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,30 @@
+package com.xiaofan.forge;
+
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.event.TagsUpdatedEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+/**
+ * Forge 平台的客户端标签更新事件实现
+ */
+@Mod.EventBusSubscriber(value = Dist.CLIENT, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public class ClientTagsHandlerImpl {
+    private static volatile Runnable updatedCallback;
+    
+    /**
+     * 注册客户端标签更新回调
+     */
+    public static void registerTagsUpdated(Runnable onUpdated) {
+        updatedCallback = onUpdated;
+    }
+    
+    @SubscribeEvent
+    public static void onTagsUpdated(TagsUpdatedEvent event) {
+        // 单人游戏中服务端加载数据包时也会触发，只转发客户端收到的标签
+        Runnable callback = updatedCallback;
+        if (callback != null && event.getUpdateCause() == TagsUpdatedEvent.UpdateCause.CLIENT_PACKET_RECEIVED) {
+            callback.run();
+        }
+    }
+}